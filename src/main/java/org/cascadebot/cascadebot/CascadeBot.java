@@ -25,10 +25,22 @@ import net.dv8tion.jda.core.exceptions.ErrorResponseException;
 import net.dv8tion.jda.core.requests.RestAction;
 import okhttp3.OkHttpClient;
 import org.apache.commons.lang3.StringUtils;
+import org.cascadebot.cascadebot.commandmeta.CommandExecutor;
 import org.cascadebot.cascadebot.commandmeta.CommandManager;
+import org.cascadebot.cascadebot.commandmeta.CommandRateLimiter;
 import org.cascadebot.cascadebot.data.Config;
 import org.cascadebot.cascadebot.data.database.DatabaseManager;
+import org.cascadebot.cascadebot.data.managers.GuildChangeStreamManager;
 import org.cascadebot.cascadebot.data.managers.GuildDataManager;
+import org.cascadebot.cascadebot.data.managers.GuildSnapshotManager;
+import org.cascadebot.cascadebot.data.managers.PrefixManager;
+import org.cascadebot.cascadebot.data.repository.IGuildDataRepository;
+import org.cascadebot.cascadebot.data.repository.IPlaylistRepository;
+import org.cascadebot.cascadebot.data.repository.MemoryGuildDataRepository;
+import org.cascadebot.cascadebot.data.repository.MemoryPlaylistRepository;
+import org.cascadebot.cascadebot.data.repository.MongoGuildDataRepository;
+import org.cascadebot.cascadebot.data.repository.MongoPlaylistRepository;
+import org.cascadebot.cascadebot.data.repository.StorageBackend;
 import org.cascadebot.cascadebot.events.ButtonEventListener;
 import org.cascadebot.cascadebot.events.CommandListener;
 import org.cascadebot.cascadebot.events.GeneralEventListener;
@@ -49,6 +61,7 @@ import org.slf4j.MDC;
 import javax.annotation.Nonnull;
 import javax.security.auth.login.LoginException;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Scanner;
 import java.util.concurrent.TimeUnit;
@@ -64,7 +77,11 @@ public class CascadeBot {
     private long startupTime;
     private ShardManager shardManager;
     private CommandManager commandManager;
+    private CommandExecutor commandExecutor;
+    private CommandRateLimiter commandRateLimiter;
     private DatabaseManager databaseManager;
+    private IGuildDataRepository guildDataRepository;
+    private IPlaylistRepository playlistRepository;
     private PermissionsManager permissionsManager;
     private ModerationManager moderationManager;
     private OkHttpClient httpClient;
@@ -155,16 +172,40 @@ public class CascadeBot {
             builder.setPrettyPrinting();
         }
 
-        if (Config.INS.getConnectionString() != null) {
-            databaseManager = new DatabaseManager(Config.INS.getConnectionString());
+        if (Config.INS.getStorageBackend() == StorageBackend.MEMORY) {
+            String directory = Config.INS.getStorageDirectory();
+            guildDataRepository = new MemoryGuildDataRepository(directory.isBlank() ? null : Paths.get(directory, "guilds.bson"));
+            playlistRepository = new MemoryPlaylistRepository(directory.isBlank() ? null : Paths.get(directory, "playlists.bson"));
         } else {
-            databaseManager = new DatabaseManager(
-                    Config.INS.getUsername(),
-                    Config.INS.getPassword(),
-                    Config.INS.getDatabase(),
-                    Config.INS.getHosts(),
-                    Config.INS.isSsl()
-            );
+            if (Config.INS.getConnectionString() != null) {
+                databaseManager = new DatabaseManager(Config.INS.getConnectionString());
+            } else {
+                databaseManager = new DatabaseManager(
+                        Config.INS.getUsername(),
+                        Config.INS.getPassword(),
+                        Config.INS.getDatabase(),
+                        Config.INS.getHosts(),
+                        Config.INS.isSsl()
+                );
+            }
+            guildDataRepository = new MongoGuildDataRepository(databaseManager);
+            playlistRepository = new MongoPlaylistRepository(databaseManager);
+        }
+
+        if (Config.INS.isGuildChangeStreamEnabled()) {
+            if (databaseManager != null) {
+                GuildChangeStreamManager.start(databaseManager);
+            } else {
+                LOGGER.warn("Guild data changes can only be watched when using the mongo storage backend!");
+            }
+        }
+
+        if (Config.INS.isGuildSnapshotEnabled()) {
+            try {
+                GuildSnapshotManager.load(Paths.get(Config.INS.getGuildSnapshotFile()));
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Failed to load the guild snapshot, guilds will be loaded from the database", e);
+            }
         }
 
         musicHandler = new MusicHandler(this);
@@ -173,6 +214,19 @@ public class CascadeBot {
         eventWaiter = new EventWaiter();
         gson = builder.create();
 
+        commandExecutor = new CommandExecutor(
+                Config.INS.getCommandThreads(),
+                Config.INS.getCommandQueueLimit(),
+                Config.INS.getCommandGuildQueueLimit(),
+                Config.INS.getCommandGuildParallelism()
+        );
+        commandRateLimiter = new CommandRateLimiter(
+                Config.INS.getUserRateLimit(),
+                Config.INS.getGuildRateLimit(),
+                Config.INS.getCommandRateLimit(),
+                Config.INS.getModuleRateLimits()
+        );
+
         try {
             DefaultShardManagerBuilder defaultShardManagerBuilder = new DefaultShardManagerBuilder()
                     .addEventListeners(new CommandListener())
@@ -212,6 +266,8 @@ public class CascadeBot {
         moderationManager = new ModerationManager();
 
         Metrics.INS.cacheMetrics.addCache("guild", GuildDataManager.getGuilds());
+        Metrics.INS.cacheMetrics.addCache("permission_decisions", permissionsManager.getDecisionCache());
+        Metrics.INS.cacheMetrics.addCache("guild_prefix", PrefixManager.getPrefixes());
 
         Thread.setDefaultUncaughtExceptionHandler(((t, e) -> LOGGER.error("Uncaught exception in thread " + t, MDCException.from(e))));
         Thread.currentThread()
@@ -236,6 +292,35 @@ public class CascadeBot {
                 musicHandler.purgeDisconnectedPlayers();
             }
         }.start(TimeUnit.MINUTES.toMillis(5), TimeUnit.MINUTES.toMillis(15));
+
+        long flushInterval = TimeUnit.SECONDS.toMillis(Math.max(1, Config.INS.getGuildSaveFlushInterval()));
+        new Task("flush-guild-saves") {
+            @Override
+            protected void execute() {
+                GuildDataManager.flush();
+            }
+        }.start(flushInterval, flushInterval);
+
+        if (Config.INS.isGuildSnapshotEnabled()) {
+            long snapshotInterval = TimeUnit.MINUTES.toMillis(Math.max(1, Config.INS.getGuildSnapshotInterval()));
+            new Task("guild-snapshot") {
+                @Override
+                protected void execute() {
+                    try {
+                        GuildSnapshotManager.write(Paths.get(Config.INS.getGuildSnapshotFile()));
+                    } catch (IOException e) {
+                        LOGGER.warn("Failed to write the guild snapshot", e);
+                    }
+                }
+            }.start(snapshotInterval, snapshotInterval);
+        }
+
+        new Task("reweigh-guilds") {
+            @Override
+            protected void execute() {
+                GuildDataManager.reweighChangedGuilds();
+            }
+        }.start(TimeUnit.MINUTES.toMillis(1), TimeUnit.MINUTES.toMillis(1));
     }
 
 
@@ -276,10 +361,32 @@ public class CascadeBot {
         return commandManager;
     }
 
+    public CommandExecutor getCommandExecutor() {
+        return commandExecutor;
+    }
+
+    public CommandRateLimiter getCommandRateLimiter() {
+        return commandRateLimiter;
+    }
+
+    /**
+     * Gets the database manager, which is null if the bot isn't storing its data in the database. Most things should
+     * use {@link #getGuildDataRepository()} or {@link #getPlaylistRepository()} instead.
+     *
+     * @return The database manager.
+     */
     public DatabaseManager getDatabaseManager() {
         return databaseManager;
     }
 
+    public IGuildDataRepository getGuildDataRepository() {
+        return guildDataRepository;
+    }
+
+    public IPlaylistRepository getPlaylistRepository() {
+        return playlistRepository;
+    }
+
     public PermissionsManager getPermissionsManager() {
         return permissionsManager;
     }
@@ -7,12 +7,17 @@ package org.cascadebot.cascadebot;
 
 import lombok.experimental.UtilityClass;
 import org.cascadebot.cascadebot.commands.developer.EvalCommand;
+import org.cascadebot.cascadebot.data.Config;
+import org.cascadebot.cascadebot.data.managers.GuildChangeStreamManager;
 import org.cascadebot.cascadebot.data.managers.GuildDataManager;
-import org.cascadebot.cascadebot.events.CommandListener;
+import org.cascadebot.cascadebot.data.managers.GuildSnapshotManager;
 import org.cascadebot.cascadebot.tasks.Task;
 import org.cascadebot.shared.ExitCodes;
 import org.cascadebot.shared.SharedConstants;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 @UtilityClass
@@ -56,10 +61,25 @@ public class ShutdownHandler {
     private static void shutdown() {
         CascadeBot.LOGGER.info("Bot shutting down gracefully!");
         long startTime = System.currentTimeMillis(); // Ensures all data is saved before exiting
-        GuildDataManager.getGuilds().asMap().forEach(GuildDataManager::replaceSync);
-        CascadeBot.LOGGER.info("Took " + (System.currentTimeMillis() - startTime) + "ms to save!");
+        GuildChangeStreamManager.stop();
+        GuildDataManager.queueAll();
+        boolean saved = GuildDataManager.flushAll(Config.INS.getGuildShutdownConcurrency(), Config.INS.getGuildShutdownDeadline(), TimeUnit.SECONDS);
+        if (saved) {
+            CascadeBot.LOGGER.info("Took " + (System.currentTimeMillis() - startTime) + "ms to save!");
+        } else {
+            CascadeBot.LOGGER.error("Not all guilds could be saved! Took " + (System.currentTimeMillis() - startTime) + "ms");
+        }
+        if (Config.INS.isGuildSnapshotEnabled()) {
+            try {
+                GuildSnapshotManager.write(Paths.get(Config.INS.getGuildSnapshotFile()));
+            } catch (IOException | RuntimeException e) {
+                CascadeBot.LOGGER.warn("Failed to write the guild snapshot", e);
+            }
+        }
+        CascadeBot.INS.getGuildDataRepository().close();
+        CascadeBot.INS.getPlaylistRepository().close();
         EvalCommand.shutdownEvalPool();
-        CommandListener.shutdownCommandPool();
+        CascadeBot.INS.getCommandExecutor().shutdown();
         Task.shutdownTaskPool();
         CascadeBot.INS.getShardManager().shutdown();
     }
@@ -175,7 +175,7 @@ public class CommandContext {
     public String getUsage(ICommandExecutable command, String parent) {
         Set<Argument> arguments = new HashSet<>(command.getUndefinedArguments());
         if (command instanceof ICommandMain) {
-            for (ICommandExecutable subCommand : ((ICommandMain) command).getSubCommands()) {
+            for (ICommandExecutable subCommand : CascadeBot.INS.getCommandManager().getSubCommands((ICommandMain) command)) {
                 arguments.add(Argument.of(subCommand.command(), subCommand.description(), subCommand.getUndefinedArguments()));
             }
         }
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.commandmeta;
+
+import org.cascadebot.cascadebot.CascadeBot;
+import org.cascadebot.cascadebot.metrics.Metrics;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs commands on a fixed number of threads while keeping guilds from starving each other.
+ * <p>
+ * Each guild has its own queue of commands. A guild can only have a limited number of commands running at once
+ * and after each command its queue goes to the back of the line, so the threads are shared round-robin between
+ * guilds that have commands waiting. Commands are rejected once either the guild's queue or the overall queue is full.
+ * A guild's queue is removed once it has no commands waiting or running, so the limits always apply to one queue.
+ */
+public class CommandExecutor {
+
+    private final ThreadPoolExecutor pool;
+    private final ConcurrentHashMap<Long, GuildQueue> guildQueues = new ConcurrentHashMap<>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final int queueLimit;
+    private final int guildQueueLimit;
+    private final int guildParallelism;
+
+    public CommandExecutor(int threads, int queueLimit, int guildQueueLimit, int guildParallelism) {
+        ThreadGroup threadGroup = new ThreadGroup("Command Threads");
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                r -> new Thread(threadGroup, r, "Command Pool-" + threadCounter.incrementAndGet()));
+        this.queueLimit = queueLimit;
+        this.guildQueueLimit = guildQueueLimit;
+        this.guildParallelism = guildParallelism;
+    }
+
+    /**
+     * Queues a command to be run for a guild.
+     *
+     * @param guildId The ID of the guild the command was run in.
+     * @param command The command to run.
+     * @return Whether the command was queued. If this is false the command was rejected and will never run.
+     */
+    public boolean submit(long guildId, Runnable command) {
+        if (pool.isShutdown()) {
+            return reject("shutdown");
+        }
+        if (queued.incrementAndGet() > queueLimit) {
+            queued.decrementAndGet();
+            return reject("queue_full");
+        }
+
+        boolean[] reserved = new boolean[1];
+        // The place is reserved while the map entry is locked, so the queue can't be removed as idle in the meantime
+        GuildQueue guildQueue = guildQueues.compute(guildId, (id, existing) -> {
+            GuildQueue queue = existing == null ? new GuildQueue(id) : existing;
+            if (queue.size.incrementAndGet() > guildQueueLimit) {
+                queue.size.decrementAndGet();
+                return existing;
+            }
+            reserved[0] = true;
+            return queue;
+        });
+        if (!reserved[0]) {
+            queued.decrementAndGet();
+            return reject("guild_queue_full");
+        }
+
+        Metrics.INS.commandQueueDepth.inc();
+        guildQueue.commands.add(new QueuedCommand(command, System.nanoTime()));
+        schedule(guildQueue);
+        return true;
+    }
+
+    private boolean reject(String reason) {
+        Metrics.INS.commandsRejected.labels(reason).inc();
+        return false;
+    }
+
+    private void schedule(GuildQueue guildQueue) {
+        while (true) {
+            int running = guildQueue.running.get();
+            if (running >= guildParallelism) {
+                // One of the running commands will pick this up once it has finished
+                return;
+            }
+            if (guildQueue.running.compareAndSet(running, running + 1)) {
+                execute(guildQueue);
+                return;
+            }
+        }
+    }
+
+    private void execute(GuildQueue guildQueue) {
+        try {
+            pool.execute(() -> runNext(guildQueue));
+        } catch (RejectedExecutionException e) {
+            // The pool is shutting down so anything left in the queue won't be run
+            guildQueue.running.decrementAndGet();
+        }
+    }
+
+    private void runNext(GuildQueue guildQueue) {
+        QueuedCommand command = guildQueue.commands.poll();
+        if (command == null) {
+            finish(guildQueue);
+            return;
+        }
+
+        guildQueue.size.decrementAndGet();
+        queued.decrementAndGet();
+        Metrics.INS.commandQueueDepth.dec();
+        Metrics.INS.commandQueueWaitTime.observe((System.nanoTime() - command.queuedAt) / 1e9);
+
+        try {
+            command.runnable.run();
+        } catch (Exception e) {
+            CascadeBot.LOGGER.error("Uncaught exception while running a command", e);
+        } finally {
+            if (guildQueue.commands.isEmpty()) {
+                finish(guildQueue);
+            } else {
+                // Go to the back of the line so other guilds get a turn
+                execute(guildQueue);
+            }
+        }
+    }
+
+    private void finish(GuildQueue guildQueue) {
+        guildQueue.running.decrementAndGet();
+        // A command could have been added after the check but before the decrement
+        if (!guildQueue.commands.isEmpty()) {
+            schedule(guildQueue);
+            return;
+        }
+        // Submitting reserves a place while holding the entry, so an idle queue here can't have a command on the way
+        guildQueues.computeIfPresent(guildQueue.guildId, (id, queue) ->
+                queue == guildQueue && queue.size.get() == 0 && queue.running.get() == 0 ? null : queue);
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private static class GuildQueue {
+
+        private final long guildId;
+        private final Queue<QueuedCommand> commands = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicInteger running = new AtomicInteger();
+
+        private GuildQueue(long guildId) {
+            this.guildId = guildId;
+        }
+
+    }
+
+    private static class QueuedCommand {
+
+        private final Runnable runnable;
+        private final long queuedAt;
+
+        private QueuedCommand(Runnable runnable, long queuedAt) {
+            this.runnable = runnable;
+            this.queuedAt = queuedAt;
+        }
+
+    }
+
+}
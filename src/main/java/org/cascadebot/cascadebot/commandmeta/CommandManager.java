@@ -15,7 +15,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class CommandManager {
@@ -25,6 +32,14 @@ public class CommandManager {
     @Getter
     private List<ICommandMain> commands;
 
+    // Sub-commands for each command class, keyed by their lower-cased name
+    private Map<Class<?>, Map<String, ICommandExecutable>> subCommands = Map.of();
+
+    // Commands keyed by their lower-cased default name, which is also their ID in the stored guild data
+    private Map<String, ICommandMain> commandsByDefault = Map.of();
+
+    private final Function<GuildData, Map<String, ICommandMain>> indexBuilder = this::buildCommandIndex;
+
     public CommandManager() {
         long start = System.currentTimeMillis();
         try {
@@ -40,21 +55,74 @@ public class CommandManager {
             }
             LOGGER.info("Loaded {} commands in {}ms.", commands.size(), (System.currentTimeMillis() - start));
             this.commands = List.copyOf(commands);
+            this.subCommands = buildSubCommandRegistry(this.commands);
+            Map<String, ICommandMain> commandsByDefault = new HashMap<>();
+            for (ICommandMain command : this.commands) {
+                commandsByDefault.putIfAbsent(command.command().toLowerCase(Locale.ROOT), command);
+            }
+            this.commandsByDefault = Map.copyOf(commandsByDefault);
         } catch (Exception e) {
             LOGGER.error("Could not load commands!", e);
             ShutdownHandler.exitWithError();
         }
     }
 
+    private static Map<Class<?>, Map<String, ICommandExecutable>> buildSubCommandRegistry(List<ICommandMain> commands) {
+        Map<Class<?>, Map<String, ICommandExecutable>> registry = new HashMap<>();
+        for (ICommandMain command : commands) {
+            Set<ICommandExecutable> commandSubCommands = command.getSubCommands();
+            if (commandSubCommands.isEmpty()) continue;
+            Map<String, ICommandExecutable> byName = new HashMap<>();
+            for (ICommandExecutable subCommand : commandSubCommands) {
+                ICommandExecutable existing = byName.putIfAbsent(subCommand.command().toLowerCase(Locale.ROOT), subCommand);
+                if (existing != null) {
+                    LOGGER.warn("Command {} has more than one sub-command called {}!", command.getClass().getSimpleName(), subCommand.command());
+                }
+            }
+            registry.put(command.getClass(), Map.copyOf(byName));
+        }
+        return Map.copyOf(registry);
+    }
+
+    /**
+     * Gets the sub-commands of a command. Unlike {@link ICommandMain#getSubCommands()} these are created once when the
+     * commands are loaded, so the same instances are returned every time.
+     *
+     * @param command The command to get the sub-commands for.
+     * @return The sub-commands of the command.
+     */
+    public Collection<ICommandExecutable> getSubCommands(ICommandMain command) {
+        return subCommands.getOrDefault(command.getClass(), Map.of()).values();
+    }
+
+    /**
+     * Gets a sub-command of a command by name, ignoring case.
+     *
+     * @param command    The parent command.
+     * @param subCommand The name of the sub-command.
+     * @return The sub-command or null if the command doesn't have a sub-command with that name.
+     */
+    public ICommandExecutable getSubCommand(ICommandMain command, String subCommand) {
+        Map<String, ICommandExecutable> commandSubCommands = subCommands.get(command.getClass());
+        if (commandSubCommands == null) return null;
+        return commandSubCommands.get(subCommand.toLowerCase(Locale.ROOT));
+    }
+
     public ICommandMain getCommand(String command, User user, GuildData data) {
-        for (ICommandMain cmd : commands) {
-            if (data.getCommandName(cmd).equalsIgnoreCase(command)) {
-                return cmd;
-            } else if (data.getCommandAliases(cmd).contains(command)) {
-                return cmd;
+        // toLowerCase returns the same instance if there is nothing to change, so the common case doesn't allocate
+        return data.getCommandIndex(indexBuilder).get(command.toLowerCase(Locale.ROOT));
+    }
+
+    private Map<String, ICommandMain> buildCommandIndex(GuildData data) {
+        Map<String, ICommandMain> index = new HashMap<>();
+        // Commands are added in load order and existing triggers aren't replaced so the first command to claim a trigger keeps it
+        for (ICommandMain command : commands) {
+            index.putIfAbsent(data.getCommandName(command).toLowerCase(Locale.ROOT), command);
+            for (String alias : data.getCommandAliases(command)) {
+                index.putIfAbsent(alias.toLowerCase(Locale.ROOT), command);
             }
         }
-        return null;
+        return Collections.unmodifiableMap(index);
     }
 
     public List<ICommandMain> getCommandsByModule(Module type) {
@@ -62,7 +130,7 @@ public class CommandManager {
     }
 
     public ICommandMain getCommandByDefault(String defaultCommand) {
-        return commands.stream().filter(command -> command.command().equalsIgnoreCase(defaultCommand)).findFirst().orElse(null);
+        return commandsByDefault.get(defaultCommand.toLowerCase(Locale.ROOT));
     }
 
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.commandmeta;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.cascadebot.cascadebot.metrics.Metrics;
+import org.cascadebot.cascadebot.utils.TokenBucket;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how quickly commands can be run. Each command has to take a token from the bucket for the user, the guild
+ * and the user's bucket for that command, so a single user or guild can't flood the command executor.
+ */
+public class CommandRateLimiter {
+
+    private final RateLimit userLimit;
+    private final RateLimit guildLimit;
+    private final RateLimit commandLimit;
+    private final Map<Module, RateLimit> moduleLimits;
+
+    private final Cache<Long, TokenBucket> userBuckets;
+    private final Cache<Long, TokenBucket> guildBuckets;
+    private final Cache<CommandKey, TokenBucket> commandBuckets;
+
+    /**
+     * @param userLimit    The limit for each user across all guilds.
+     * @param guildLimit   The limit for each guild.
+     * @param commandLimit The limit for each user running a single command.
+     * @param moduleLimits Overrides for the command limit for commands in specific modules.
+     */
+    public CommandRateLimiter(RateLimit userLimit, RateLimit guildLimit, RateLimit commandLimit, Map<Module, RateLimit> moduleLimits) {
+        this.userLimit = userLimit;
+        this.guildLimit = guildLimit;
+        this.commandLimit = commandLimit;
+        this.moduleLimits = moduleLimits;
+
+        this.userBuckets = buildCache(userLimit.getPeriod());
+        this.guildBuckets = buildCache(guildLimit.getPeriod());
+        long commandPeriod = commandLimit.getPeriod();
+        for (RateLimit limit : moduleLimits.values()) {
+            commandPeriod = Math.max(commandPeriod, limit.getPeriod());
+        }
+        this.commandBuckets = buildCache(commandPeriod);
+    }
+
+    private static <K> Cache<K, TokenBucket> buildCache(long period) {
+        // Once a bucket hasn't been used for a whole period it is full again, so there's no point in keeping it
+        return Caffeine.newBuilder()
+                .expireAfterAccess(Math.max(1, period), TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Tries to take a token for running a command.
+     *
+     * @param guildId The ID of the guild the command is being run in.
+     * @param userId  The ID of the user running the command.
+     * @param command The command being run.
+     * @return Whether the command is allowed to run.
+     */
+    public boolean tryAcquire(long guildId, long userId, ICommandMain command) {
+        RateLimit limit = moduleLimits.getOrDefault(command.getModule(), commandLimit);
+        TokenBucket commandBucket = getBucket(commandBuckets, new CommandKey(userId, command.getClass()), limit);
+        if (commandBucket != null && !commandBucket.tryAcquire()) {
+            Metrics.INS.commandsRateLimited.labels("command").inc();
+            return false;
+        }
+        TokenBucket userBucket = getBucket(userBuckets, userId, userLimit);
+        if (userBucket != null && !userBucket.tryAcquire()) {
+            // A command that doesn't run shouldn't use up any of the other limits
+            release(commandBucket);
+            Metrics.INS.commandsRateLimited.labels("user").inc();
+            return false;
+        }
+        TokenBucket guildBucket = getBucket(guildBuckets, guildId, guildLimit);
+        if (guildBucket != null && !guildBucket.tryAcquire()) {
+            release(commandBucket);
+            release(userBucket);
+            Metrics.INS.commandsRateLimited.labels("guild").inc();
+            return false;
+        }
+        return true;
+    }
+
+    // Gets the bucket for a key, or null if the limit is disabled
+    private static <K> TokenBucket getBucket(Cache<K, TokenBucket> buckets, K key, RateLimit limit) {
+        if (!limit.isEnabled()) return null;
+        return buckets.get(key, k -> new TokenBucket(limit.getCapacity(), limit.getPeriod(), TimeUnit.SECONDS));
+    }
+
+    private static void release(TokenBucket bucket) {
+        if (bucket != null) bucket.release();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class RateLimit {
+
+        /**
+         * The number of commands that can be run in a burst. A capacity of 0 or less disables the limit.
+         */
+        private final int capacity;
+        /**
+         * The number of seconds it takes for the full capacity to be restored.
+         */
+        private final long period;
+
+        public boolean isEnabled() {
+            return capacity > 0 && period > 0;
+        }
+
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static class CommandKey {
+
+        private final long userId;
+        private final Class<?> command;
+
+    }
+
+}
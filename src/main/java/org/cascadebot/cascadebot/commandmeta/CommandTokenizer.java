@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.commandmeta;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a raw command message into its trigger and arguments.
+ * <p>
+ * This replaces the old chain of regex replacements and splits with two linear passes. The prefix has already been
+ * matched by the caller, so the first pass starts after it. It normalises the message, collapsing runs of spaces and
+ * dropping a quote that is directly followed by another quote, and finds the end of the trigger. The second pass only
+ * covers the arguments and splits them. It can't be folded into the first because an opening quote only groups the
+ * arguments if a quote comes after it, and that isn't known until the whole message has been read. Single quotes in
+ * the arguments are replaced with double quotes so both can be used for quoting.
+ */
+public final class CommandTokenizer {
+
+    private static final String[] NO_ARGS = new String[0];
+
+    private CommandTokenizer() {
+    }
+
+    /**
+     * Tokenizes a message that starts with a command prefix.
+     *
+     * @param message The raw content of the message.
+     * @param offset  The index the command starts at, i.e. the length of the prefix that was matched.
+     * @param trim    Whether whitespace should be trimmed from the start and end of the command. This is used
+     *                for mention prefixes where there is usually a space between the mention and the command.
+     * @return The trigger and arguments of the command.
+     */
+    public static Tokens tokenize(String message, int offset, boolean trim) {
+        int end = message.length();
+        if (trim) {
+            while (offset < end && message.charAt(offset) <= ' ') offset++;
+            while (end > offset && message.charAt(end - 1) <= ' ') end--;
+        }
+
+        char[] buffer = new char[end - offset];
+        int length = 0;
+        int triggerEnd = -1;
+        int lastQuote = -1;
+        for (int i = offset; i < end; i++) {
+            char c = message.charAt(i);
+            if (c == ' ') {
+                // Only keep the first space of a run of spaces
+                if (i > 0 && message.charAt(i - 1) == ' ') continue;
+                if (triggerEnd == -1) triggerEnd = length;
+            } else if (isQuote(c)) {
+                // Only keep the last quote of a run of quotes
+                if (i + 1 < message.length() && isQuote(message.charAt(i + 1))) continue;
+                lastQuote = length;
+                // Allow ' and " to be treated equally in the arguments #quoteshavefeelingstoo
+                if (triggerEnd != -1) c = '"';
+            }
+            buffer[length++] = c;
+        }
+
+        if (triggerEnd == -1) {
+            return new Tokens(new String(buffer, 0, length), NO_ARGS);
+        }
+
+        int argsStart = triggerEnd;
+        int argsEnd = length;
+        while (argsStart < argsEnd && buffer[argsStart] <= ' ') argsStart++;
+        while (argsEnd > argsStart && buffer[argsEnd - 1] <= ' ') argsEnd--;
+
+        return new Tokens(new String(buffer, 0, triggerEnd), split(buffer, argsStart, argsEnd, lastQuote));
+    }
+
+    /**
+     * Splits an argument string on spaces, keeping quoted sections together. Unlike {@link #tokenize(String, int, boolean)}
+     * runs of spaces and quotes in the input are not collapsed.
+     *
+     * @param input The argument string to split.
+     * @return The split arguments.
+     */
+    public static String[] splitArgs(String input) {
+        char[] buffer = input.toCharArray();
+        int lastQuote = -1;
+        for (int i = 0; i < buffer.length; i++) {
+            if (isQuote(buffer[i])) {
+                buffer[i] = '"';
+                lastQuote = i;
+            }
+        }
+        return split(buffer, 0, buffer.length, lastQuote);
+    }
+
+    private static String[] split(char[] buffer, int start, int end, int lastQuote) {
+        if (start >= end) return NO_ARGS;
+
+        boolean inQuotes = false; // Whether the current position is surrounded by quotes or not
+        int splitFrom = start; // We initially start the first split from the start to the first space
+        List<String> args = new ArrayList<>();
+        for (int pos = start; pos < end; pos++) {
+            char charAtPos = buffer[pos];
+            if (charAtPos == ' ') {
+                // If there is a quote to close this
+                if (inQuotes && lastQuote > pos) {
+                    continue;
+                }
+                int splitTo = pos;
+                if (pos > start && buffer[pos - 1] == '"') {
+                    splitTo = pos - 1; // If we are splitting after a quote, don't include the quote in the split
+                }
+                args.add(substring(buffer, splitFrom, splitTo));
+                splitFrom = pos + 1; // Set the next split start to be after
+            } else if (pos == end - 1) {
+                // If the end character is a quote, we want to "split" before the quote to no include it.
+                int splitTo = charAtPos == '"' ? pos : end;
+                args.add(substring(buffer, splitFrom, splitTo));
+                // End of string so do nothing else
+            } else if (charAtPos == '"') {
+                if (!inQuotes && (pos == start || buffer[pos - 1] == ' ')) {
+                    splitFrom += 1; // Start the split after the first quote
+                }
+                inQuotes = !inQuotes;
+            }
+        }
+        return args.toArray(String[]::new);
+    }
+
+    private static String substring(char[] buffer, int from, int to) {
+        // An unclosed quote followed by a space would give a negative length here, so treat it as empty
+        return to <= from ? "" : new String(buffer, from, to - from);
+    }
+
+    private static boolean isQuote(char c) {
+        return c == '"' || c == '\'';
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Tokens {
+
+        private final String trigger;
+        private final String[] args;
+
+    }
+
+}
@@ -6,6 +6,7 @@
 package org.cascadebot.cascadebot.commandmeta;
 
 import net.dv8tion.jda.core.entities.Member;
+import org.cascadebot.cascadebot.CascadeBot;
 import org.cascadebot.cascadebot.data.objects.Flag;
 import org.cascadebot.cascadebot.permissions.CascadePermission;
 
@@ -42,7 +43,7 @@ public interface ICommandExecutable {
     default Set<Argument> getArguments() {
         Set<Argument> arguments = new HashSet<>(this.getUndefinedArguments());
         if (this instanceof ICommandMain) {
-            for (ICommandExecutable subCommand : ((ICommandMain) this).getSubCommands()) {
+            for (ICommandExecutable subCommand : CascadeBot.INS.getCommandManager().getSubCommands((ICommandMain) this)) {
                 arguments.add(Argument.of(subCommand.command(), subCommand.description(), subCommand.getUndefinedArguments()));
             }
         }
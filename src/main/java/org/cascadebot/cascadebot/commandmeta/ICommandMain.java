@@ -19,6 +19,12 @@ public interface ICommandMain extends ICommandExecutable {
         return Set.of();
     }
 
+    /**
+     * Creates the sub-commands of this command. This is only used to build the registry when the commands are loaded,
+     * everything else should use {@link CommandManager#getSubCommands(ICommandMain)} so the same instances are used.
+     *
+     * @return New instances of the sub-commands.
+     */
     default Set<ICommandExecutable> getSubCommands() { return Set.of(); }
 
 }
@@ -9,6 +9,7 @@ import net.dv8tion.jda.core.entities.Member;
 import org.cascadebot.cascadebot.commandmeta.CommandContext;
 import org.cascadebot.cascadebot.commandmeta.ICommandCore;
 import org.cascadebot.cascadebot.data.Config;
+import org.cascadebot.cascadebot.data.managers.PrefixManager;
 
 public class PrefixCommand implements ICommandCore {
 
@@ -20,6 +21,7 @@ public class PrefixCommand implements ICommandCore {
             if (newPrefix.equals("reset")) {
                 if (context.hasPermission("prefix.reset")) {
                     context.getSettings().setPrefix(Config.INS.getDefaultPrefix());
+                    PrefixManager.update(context.getGuild().getIdLong(), context.getSettings());
                     context.getTypedMessaging().replyInfo("The prefix has been reset to: `%s`", Config.INS.getDefaultPrefix());
                 } else {
                     context.getUIMessaging().sendPermissionError("prefix.reset");
@@ -37,6 +39,7 @@ public class PrefixCommand implements ICommandCore {
                 return;
             }
             context.getSettings().setPrefix(newPrefix);
+            PrefixManager.update(context.getGuild().getIdLong(), context.getSettings());
             context.getTypedMessaging().replyInfo("The new prefix is: `%s`", newPrefix);
         } else {
             context.getTypedMessaging().replyInfo("The current server prefix is `%s`", context.getSettings().getPrefix());
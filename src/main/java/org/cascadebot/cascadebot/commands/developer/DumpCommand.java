@@ -39,7 +39,7 @@ public class DumpCommand implements ICommandRestricted {
                         command.command(),
                         command.getModule().toString(),
                         command.getPermission() == null ? "No permission" : command.getPermission().toString(),
-                        command.getSubCommands().stream().map(ICommandExecutable::command).collect(Collectors.toSet()).toString()
+                        CascadeBot.INS.getCommandManager().getSubCommands(command).stream().map(ICommandExecutable::command).collect(Collectors.toSet()).toString()
                 );
             }
             PasteUtils.pasteIfLong(builder.build().toString(), 2048, context::reply);
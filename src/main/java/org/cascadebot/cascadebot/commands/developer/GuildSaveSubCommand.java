@@ -21,22 +21,33 @@ public class GuildSaveSubCommand implements ICommandExecutable {
     @Override
     public void onCommand(Member sender, CommandContext context) {
         if (context.getArgs().length == 0) {
-            GuildDataManager.replace(context.getGuild().getIdLong(), context.getData());
-            context.getTypedMessaging().replySuccess("Saved **this guild's** information successfully!");
+            GuildDataManager.save(context.getGuild().getIdLong(), context.getData());
+            flush(context, "Saved **this guild's** information successfully!");
         } else if (context.getArg(0).equals("all")) {
-            GuildDataManager.getGuilds().asMap().forEach(GuildDataManager::replace);
-            context.getTypedMessaging().replySuccess("Saved **all** guild information successfully!");
+            GuildDataManager.getGuilds().asMap().forEach(GuildDataManager::save);
+            flush(context, "Saved **all** guild information successfully!");
         } else {
             GuildData guildData = GuildDataManager.getGuilds().asMap().get(Long.parseLong(context.getArg(0)));
             if (guildData == null) {
                 context.getTypedMessaging().replyDanger("Cannot find guild to save!");
                 return;
             }
-            GuildDataManager.replace(guildData.getGuildID(), guildData);
-            context.getTypedMessaging().replySuccess("Saved guild information for guild **" + context.getArg(0) + "**!");
+            GuildDataManager.save(guildData.getGuildID(), guildData);
+            flush(context, "Saved guild information for guild **" + context.getArg(0) + "**!");
         }
     }
 
+    private void flush(CommandContext context, String savedMessage) {
+        GuildDataManager.flush().thenAccept(saved -> {
+            if (saved) {
+                context.getTypedMessaging().replySuccess(savedMessage);
+            } else {
+                // Either another flush was running or a write failed, both leave the saves queued for the next flush
+                context.getTypedMessaging().replyWarning("The save has been queued and will be written by the next flush.");
+            }
+        });
+    }
+
     @Override
     public String command() {
         return "save";
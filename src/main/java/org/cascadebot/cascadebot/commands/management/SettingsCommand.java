@@ -13,6 +13,7 @@ import org.cascadebot.cascadebot.commandmeta.ArgumentType;
 import org.cascadebot.cascadebot.commandmeta.CommandContext;
 import org.cascadebot.cascadebot.commandmeta.ICommandMain;
 import org.cascadebot.cascadebot.commandmeta.Module;
+import org.cascadebot.cascadebot.data.managers.PrefixManager;
 import org.cascadebot.cascadebot.data.objects.Setting;
 import org.cascadebot.cascadebot.data.objects.SettingsContainer;
 import org.cascadebot.cascadebot.permissions.CascadePermission;
@@ -100,6 +101,11 @@ public class SettingsCommand implements ICommandMain {
                 } else {
                     return;
                 }
+                context.getSettings().markDirty(field.getName());
+                // Keep the prefix filter in sync in case the mention prefix setting was changed
+                PrefixManager.update(context.getGuild().getIdLong(), context.getSettings());
+                // Settings such as adminsHaveAllPerms affect permission checks
+                context.getData().getPermissions().clearPermissionCache();
                 context.getTypedMessaging()
                        .replySuccess("Setting `%s` has been set to a value of `%s`", field.getName(), value);
             } catch (IllegalAccessException e) {
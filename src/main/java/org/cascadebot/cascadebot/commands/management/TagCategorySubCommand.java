@@ -11,7 +11,6 @@ import org.cascadebot.cascadebot.commandmeta.Argument;
 import org.cascadebot.cascadebot.commandmeta.ArgumentType;
 import org.cascadebot.cascadebot.commandmeta.CommandContext;
 import org.cascadebot.cascadebot.commandmeta.ICommandExecutable;
-import org.cascadebot.cascadebot.data.objects.Tag;
 import org.cascadebot.cascadebot.permissions.CascadePermission;
 
 public class TagCategorySubCommand implements ICommandExecutable {
@@ -23,13 +22,11 @@ public class TagCategorySubCommand implements ICommandExecutable {
             return;
         }
 
-        Tag tag = context.getSettings().getTag(context.getArg(0));
-        if (tag == null) {
+        if (!context.getSettings().setTagCategory(context.getArg(0), context.getArg(1))) {
             context.getTypedMessaging().replyDanger("Tag `" + context.getArg(0) + "` not found");
             return;
         }
 
-        tag.setCategory(context.getArg(1));
         context.getTypedMessaging().replySuccess("Set tag `" + context.getArg(0) + "` category to `" + context.getArg(1) + "`");
     }
 
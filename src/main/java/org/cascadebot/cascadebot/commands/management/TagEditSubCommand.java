@@ -11,7 +11,6 @@ import org.cascadebot.cascadebot.commandmeta.Argument;
 import org.cascadebot.cascadebot.commandmeta.ArgumentType;
 import org.cascadebot.cascadebot.commandmeta.CommandContext;
 import org.cascadebot.cascadebot.commandmeta.ICommandExecutable;
-import org.cascadebot.cascadebot.data.objects.Tag;
 import org.cascadebot.cascadebot.permissions.CascadePermission;
 
 public class TagEditSubCommand implements ICommandExecutable {
@@ -23,13 +22,11 @@ public class TagEditSubCommand implements ICommandExecutable {
             return;
         }
 
-        Tag tag = context.getSettings().getTag(context.getArg(0));
-        if (tag == null) {
+        if (!context.getSettings().setTagContent(context.getArg(0), context.getMessage(1))) {
             context.getTypedMessaging().replyDanger("Tag `" + context.getArg(0) + "` not found");
             return;
         }
 
-        tag.setContent(context.getMessage(1));
         context.getTypedMessaging().replySuccess("Updated tag `" + context.getArg(0) + "`");
     }
 
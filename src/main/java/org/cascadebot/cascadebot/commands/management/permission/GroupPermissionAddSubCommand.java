@@ -28,7 +28,7 @@ public class GroupPermissionAddSubCommand implements ICommandExecutable {
         }
 
         PermissionCommandUtils.tryGetGroupFromString(context, context.getArg(0), group -> {
-            if (group.addPermission(context.getArg(1))) {
+            if (context.getData().getPermissions().addPermission(group, context.getArg(1))) {
                 context.getTypedMessaging().replySuccess("Successfully added permission `%s` to group `%s`", context.getArg(1), group.getName() + "(" + group.getId() + ")");
             } else {
                 context.getTypedMessaging().replyWarning("Couldn't add permission `%s` to group `%s` as they already have the permission", context.getArg(1), group.getName() + "(" + group.getId() + ")");
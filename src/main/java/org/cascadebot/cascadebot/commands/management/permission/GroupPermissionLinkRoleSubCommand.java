@@ -30,7 +30,7 @@ public class GroupPermissionLinkRoleSubCommand implements ICommandExecutable {
         }
 
         PermissionCommandUtils.tryGetGroupFromString(context, context.getArg(0), group -> {
-            if (group.linkRole(role.getIdLong())) {
+            if (context.getData().getPermissions().linkRole(group, role.getIdLong())) {
                 context.getTypedMessaging().replySuccess("Linked group `%s` to role `%s`", group.getName(), role.getName());
             } else {
                 context.getTypedMessaging().replyWarning("Couldn't link group `%s` to role `%s`", group.getName(), role.getName());
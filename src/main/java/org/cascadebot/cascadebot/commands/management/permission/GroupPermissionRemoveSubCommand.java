@@ -28,7 +28,7 @@ public class GroupPermissionRemoveSubCommand implements ICommandExecutable {
         }
 
         PermissionCommandUtils.tryGetGroupFromString(context, context.getArg(0), group -> {
-            if (group.removePermission(context.getArg(1))) {
+            if (context.getData().getPermissions().removePermission(group, context.getArg(1))) {
                 context.getTypedMessaging().replySuccess("Successfully removed permission `%s` from group `%s`", context.getArg(1), group.getName() + "(" + group.getId() + ")");
             } else {
                 context.getTypedMessaging().replyWarning("Couldn't removed permission `%s` from group `%s` as they already have the permission", context.getArg(1), group.getName() + "(" + group.getId() + ")");
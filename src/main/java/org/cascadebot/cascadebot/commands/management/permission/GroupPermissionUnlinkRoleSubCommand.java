@@ -30,7 +30,7 @@ public class GroupPermissionUnlinkRoleSubCommand implements ICommandExecutable {
         }
 
         PermissionCommandUtils.tryGetGroupFromString(context, context.getArg(0), group -> {
-            if (group.unlinkRole(role.getIdLong())) {
+            if (context.getData().getPermissions().unlinkRole(group, role.getIdLong())) {
                 context.getTypedMessaging().replySuccess("Unlinked group `%s` to role `%s`", group.getName(), role.getName());
             } else {
                 context.getTypedMessaging().replyWarning("Couldn't unlink group `%s` to role `%s`", group.getName(), role.getName());
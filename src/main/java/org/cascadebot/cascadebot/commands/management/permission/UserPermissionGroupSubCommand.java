@@ -40,13 +40,13 @@ public class UserPermissionGroupSubCommand implements ICommandExecutable {
         PermissionCommandUtils.tryGetGroupFromString(context, context.getArg(2), group -> {
             User user = context.getData().getPermissions().getPermissionUser(member);
             if (context.getArg(0).equalsIgnoreCase("put")) {
-                if (user.addGroup(group)) {
+                if (context.getData().getPermissions().addUserGroup(user, group)) {
                     context.getTypedMessaging().replySuccess("Put user `%s` in group `%s`", member.getUser().getAsTag(), group.getName());
                 } else {
                     context.getTypedMessaging().replyWarning("Couldn't add user `%s` to group `%s` because they're already in the group");
                 }
             } else if (context.getArg(0).equalsIgnoreCase("remove")) {
-                if (user.removeGroup(group)) {
+                if (context.getData().getPermissions().removeUserGroup(user, group)) {
                     context.getTypedMessaging().replySuccess("Removed user `%s` from group `%s`", member.getUser().getAsTag(), group.getName());
                 } else {
                     context.getTypedMessaging().replyWarning("Couldn't remove user `%s` from group %s` because they're not in the group");
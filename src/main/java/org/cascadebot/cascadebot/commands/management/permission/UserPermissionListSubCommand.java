@@ -16,9 +16,12 @@ import org.cascadebot.cascadebot.commandmeta.CommandContext;
 import org.cascadebot.cascadebot.commandmeta.ICommandExecutable;
 import org.cascadebot.cascadebot.commandmeta.Module;
 import org.cascadebot.cascadebot.permissions.CascadePermission;
+import org.cascadebot.cascadebot.permissions.objects.EffectivePermissions;
 import org.cascadebot.cascadebot.permissions.objects.Group;
+import org.cascadebot.cascadebot.permissions.objects.Result;
 import org.cascadebot.cascadebot.permissions.objects.User;
 import org.cascadebot.cascadebot.utils.DiscordUtils;
+import org.cascadebot.cascadebot.utils.FormatUtils;
 import org.cascadebot.cascadebot.utils.pagination.Page;
 import org.cascadebot.cascadebot.utils.pagination.PageObjects;
 import org.cascadebot.cascadebot.utils.pagination.PageUtils;
@@ -32,7 +35,8 @@ public class UserPermissionListSubCommand implements ICommandExecutable {
             return;
         }
 
-        if (!context.getArg(1).equalsIgnoreCase("permissions") && !context.getArg(1).equalsIgnoreCase("groups")) {
+        if (!context.getArg(1).equalsIgnoreCase("permissions") && !context.getArg(1).equalsIgnoreCase("groups")
+                && !context.getArg(1).equalsIgnoreCase("effective")) {
             context.getUIMessaging().replyUsage(this, "userperms");
             return;
         }
@@ -84,6 +88,34 @@ public class UserPermissionListSubCommand implements ICommandExecutable {
                 pages.add(new PageObjects.EmbedPage(builder));
             }
             context.getUIMessaging().sendPagedMessage(pages);
+        } else if (context.getArg(1).equalsIgnoreCase("effective")) {
+            // Evaluates every permission in one pass rather than resolving the member's groups for each permission
+            EffectivePermissions effective = context.getData().getPermissions()
+                    .evalEffectivePermissions(member, context.getChannel(), context.getSettings());
+            List<CascadePermission> allowed = effective.getAllowedPermissions();
+            if (allowed.isEmpty()) {
+                context.getTypedMessaging().replyWarning("User has no effective permissions!");
+                return;
+            }
+
+            StringBuilder permsBuilder = new StringBuilder();
+            for (CascadePermission permission : allowed) {
+                Result result = effective.getResult(permission);
+                permsBuilder.append(permission.getPermission());
+                if (result.getCause() != null) {
+                    permsBuilder.append(" (").append(FormatUtils.formatEnum(result.getCause())).append(')');
+                }
+                permsBuilder.append('\n');
+            }
+            List<String> pageContent = PageUtils.splitString(permsBuilder.toString(), 1000, '\n');
+            List<Page> pages = new ArrayList<>();
+            for (String content : pageContent) {
+                EmbedBuilder builder = new EmbedBuilder();
+                builder.setTitle(member.getUser().getAsTag() + "'s effective permissions");
+                builder.setDescription("```\n" + content + "```");
+                pages.add(new PageObjects.EmbedPage(builder));
+            }
+            context.getUIMessaging().sendPagedMessage(pages);
         }
     }
 
@@ -106,6 +138,7 @@ public class UserPermissionListSubCommand implements ICommandExecutable {
     public Set<Argument> getUndefinedArguments() {
         return Set.of(Argument.of("user", null, ArgumentType.REQUIRED,
                 Set.of(Argument.of("groups", "List the groups the user has", ArgumentType.COMMAND),
-                        Argument.of("permissions", "List the permissions the user has", ArgumentType.COMMAND))));
+                        Argument.of("permissions", "List the permissions the user has", ArgumentType.COMMAND),
+                        Argument.of("effective", "List the permissions the user is allowed including those from groups", ArgumentType.COMMAND))));
     }
 }
@@ -33,7 +33,7 @@ public class UserPermissionRemoveSubCommand implements ICommandExecutable {
 
         User user = context.getData().getPermissions().getPermissionUser(member);
 
-        if (user.removePermission(context.getArg(1))) {
+        if (context.getData().getPermissions().removePermission(user, context.getArg(1))) {
             context.getTypedMessaging().replySuccess("Successfully removed permission `%s` to user `%s`", context.getArg(1), member.getUser().getAsTag());
         } else {
             context.getTypedMessaging().replyWarning("Couldn't remove permission `%s` to user `%s` as they don't have the permission", context.getArg(1), member.getUser().getAsTag());
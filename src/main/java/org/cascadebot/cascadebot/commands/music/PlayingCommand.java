@@ -13,6 +13,7 @@ import org.cascadebot.cascadebot.commandmeta.Module;
 import org.cascadebot.cascadebot.data.Config;
 import org.cascadebot.cascadebot.data.managers.GuildDataManager;
 import org.cascadebot.cascadebot.data.objects.Flag;
+import org.cascadebot.cascadebot.data.objects.GuildData;
 import org.cascadebot.cascadebot.messaging.MessagingObjects;
 import org.cascadebot.cascadebot.music.CascadePlayer;
 import org.cascadebot.cascadebot.permissions.CascadePermission;
@@ -22,43 +23,50 @@ import org.cascadebot.cascadebot.utils.buttons.Button;
 import org.cascadebot.cascadebot.utils.buttons.ButtonGroup;
 
 import java.util.Set;
+import java.util.function.Consumer;
 
 public class PlayingCommand implements ICommandMain {
 
-    private Button.UnicodeButton playButton = new Button.UnicodeButton(UnicodeConstants.PLAY, (runner, channel, message) -> {
-        if (CascadeBot.INS.getPermissionsManager().isAuthorised(CascadeBot.INS.getCommandManager().getCommandByDefault("resume"), GuildDataManager.getGuildData(channel.getGuild().getIdLong()), runner)) {
-            handlePlayPause(GuildDataManager.getGuildData(channel.getGuild().getIdLong()).getButtonsCache().get(channel.getIdLong()).get(message.getIdLong()), message);
+    private Button.UnicodeButton playButton = new Button.UnicodeButton(UnicodeConstants.PLAY, (runner, channel, message) -> withGuildData(channel.getGuild().getIdLong(), data -> {
+        if (CascadeBot.INS.getPermissionsManager().isAuthorised(CascadeBot.INS.getCommandManager().getCommandByDefault("resume"), data, runner)) {
+            handlePlayPause(data, data.getButtonsCache().get(channel.getIdLong()).get(message.getIdLong()), message);
         }
-    });
+    }));
 
-    private Button.UnicodeButton pauseButton = new Button.UnicodeButton(UnicodeConstants.PAUSE, (runner, channel, message) -> {
-        if (CascadeBot.INS.getPermissionsManager().isAuthorised(CascadeBot.INS.getCommandManager().getCommandByDefault("pause"), GuildDataManager.getGuildData(channel.getGuild().getIdLong()), runner)) {
-            handlePlayPause(GuildDataManager.getGuildData(channel.getGuild().getIdLong()).getButtonsCache().get(channel.getIdLong()).get(message.getIdLong()), message);
+    private Button.UnicodeButton pauseButton = new Button.UnicodeButton(UnicodeConstants.PAUSE, (runner, channel, message) -> withGuildData(channel.getGuild().getIdLong(), data -> {
+        if (CascadeBot.INS.getPermissionsManager().isAuthorised(CascadeBot.INS.getCommandManager().getCommandByDefault("pause"), data, runner)) {
+            handlePlayPause(data, data.getButtonsCache().get(channel.getIdLong()).get(message.getIdLong()), message);
         }
-    });
+    }));
 
-    private Button.UnicodeButton repeat = new Button.UnicodeButton(UnicodeConstants.REPEAT, (runner, channel, message) -> {
-
-        if (CascadeBot.INS.getPermissionsManager().isAuthorised(CascadeBot.INS.getCommandManager().getCommandByDefault("loop"), GuildDataManager.getGuildData(channel.getGuild().getIdLong()), runner)) {
-            ButtonGroup buttonGroup = GuildDataManager.getGuildData(channel.getGuild().getIdLong()).getButtonsCache().get(channel.getIdLong()).get(message.getIdLong());
-            handleRepeat(buttonGroup, CascadePlayer.LoopMode.PLAYLIST, message);
+    private Button.UnicodeButton repeat = new Button.UnicodeButton(UnicodeConstants.REPEAT, (runner, channel, message) -> withGuildData(channel.getGuild().getIdLong(), data -> {
+        if (CascadeBot.INS.getPermissionsManager().isAuthorised(CascadeBot.INS.getCommandManager().getCommandByDefault("loop"), data, runner)) {
+            ButtonGroup buttonGroup = data.getButtonsCache().get(channel.getIdLong()).get(message.getIdLong());
+            handleRepeat(data, buttonGroup, CascadePlayer.LoopMode.PLAYLIST, message);
         }
-    });
+    }));
 
-    private Button.UnicodeButton repeatOne = new Button.UnicodeButton(UnicodeConstants.REPEAT_ONCE, (runner, channel, message) -> {
-        if (CascadeBot.INS.getPermissionsManager().isAuthorised(CascadeBot.INS.getCommandManager().getCommandByDefault("loop"), GuildDataManager.getGuildData(channel.getGuild().getIdLong()), runner)) {
-            ButtonGroup buttonGroup = GuildDataManager.getGuildData(channel.getGuild().getIdLong()).getButtonsCache().get(channel.getIdLong()).get(message.getIdLong());
-            handleRepeat(buttonGroup, CascadePlayer.LoopMode.SONG, message);
+    private Button.UnicodeButton repeatOne = new Button.UnicodeButton(UnicodeConstants.REPEAT_ONCE, (runner, channel, message) -> withGuildData(channel.getGuild().getIdLong(), data -> {
+        if (CascadeBot.INS.getPermissionsManager().isAuthorised(CascadeBot.INS.getCommandManager().getCommandByDefault("loop"), data, runner)) {
+            ButtonGroup buttonGroup = data.getButtonsCache().get(channel.getIdLong()).get(message.getIdLong());
+            handleRepeat(data, buttonGroup, CascadePlayer.LoopMode.SONG, message);
         }
-    });
-
-    private Button.EmoteButton noRepeat = new Button.EmoteButton(Config.INS.getGlobalEmotes().get("norepeat"), (runner, channel, message) -> {
+    }));
 
-        if (CascadeBot.INS.getPermissionsManager().isAuthorised(CascadeBot.INS.getCommandManager().getCommandByDefault("loop"), GuildDataManager.getGuildData(channel.getGuild().getIdLong()), runner)) {
-            ButtonGroup buttonGroup = GuildDataManager.getGuildData(channel.getGuild().getIdLong()).getButtonsCache().get(channel.getIdLong()).get(message.getIdLong());
-            handleRepeat(buttonGroup, CascadePlayer.LoopMode.DISABLED, message);
+    private Button.EmoteButton noRepeat = new Button.EmoteButton(Config.INS.getGlobalEmotes().get("norepeat"), (runner, channel, message) -> withGuildData(channel.getGuild().getIdLong(), data -> {
+        if (CascadeBot.INS.getPermissionsManager().isAuthorised(CascadeBot.INS.getCommandManager().getCommandByDefault("loop"), data, runner)) {
+            ButtonGroup buttonGroup = data.getButtonsCache().get(channel.getIdLong()).get(message.getIdLong());
+            handleRepeat(data, buttonGroup, CascadePlayer.LoopMode.DISABLED, message);
         }
-    });
+    }));
+
+    // The buttons are stored in the guild data so it is almost always cached, but the button threads should never wait for it
+    private static void withGuildData(long guildId, Consumer<GuildData> action) {
+        GuildDataManager.getGuildDataAsync(guildId).thenAccept(action).exceptionally(throwable -> {
+            CascadeBot.LOGGER.error("Error handling a music button for guild {}", guildId, throwable);
+            return null;
+        });
+    }
 
     @Override
     public void onCommand(Member sender, CommandContext context) {
@@ -77,7 +85,7 @@ public class PlayingCommand implements ICommandMain {
                             volume = 0;
                         }
                         context.getMusicPlayer().getPlayer().setVolume(volume);
-                        message.editMessage(getSongEmbed(player, context.getGuild().getIdLong())).queue();
+                        message.editMessage(getSongEmbed(player, context.getData())).queue();
                     }
                 }));
                 buttonGroup.addButton(new Button.UnicodeButton(UnicodeConstants.VOLUME_UP, (runner, channel, message) -> {
@@ -88,7 +96,7 @@ public class PlayingCommand implements ICommandMain {
                             volume = 100;
                         }
                         context.getMusicPlayer().getPlayer().setVolume(volume);
-                        message.editMessage(getSongEmbed(player, context.getGuild().getIdLong())).queue();
+                        message.editMessage(getSongEmbed(player, context.getData())).queue();
                     }
                 }));
             }
@@ -112,7 +120,7 @@ public class PlayingCommand implements ICommandMain {
                             "skip",
                             false
                     ));
-                    message.editMessage(getSongEmbed(player, context.getGuild().getIdLong())).queue();
+                    message.editMessage(getSongEmbed(player, context.getData())).queue();
                     if (player.getPlayer().getPlayingTrack() == null) {
                         message.clearReactions().queue();
                     }
@@ -133,12 +141,12 @@ public class PlayingCommand implements ICommandMain {
 
             buttonGroup.addButton(player.getPlayer().isPaused() ? playButton : pauseButton);
 
-            context.getUIMessaging().sendButtonedMessage(getSongEmbed(context.getMusicPlayer(), context.getGuild().getIdLong()), buttonGroup);
+            context.getUIMessaging().sendButtonedMessage(getSongEmbed(context.getMusicPlayer(), context.getData()), buttonGroup);
         }
 
     }
 
-    private MessageEmbed getSongEmbed(CascadePlayer player, long guildID) {
+    private MessageEmbed getSongEmbed(CascadePlayer player, GuildData data) {
         AudioTrack track = player.getPlayer().getPlayingTrack();
         EmbedBuilder embedBuilder = MessagingObjects.getClearThreadLocalEmbedBuilder();
         if (track == null) {
@@ -153,7 +161,7 @@ public class PlayingCommand implements ICommandMain {
         embedBuilder.addField("Status", player.getPlayer().isPaused() ? UnicodeConstants.PAUSE + " Paused" : UnicodeConstants.PLAY + " Playing", true);
 
         if (!track.getInfo().isStream) {
-            embedBuilder.addField("Progress", player.getTrackProgressBar(GuildDataManager.getGuildData(guildID).getSettings().isUseEmbedForMessages()), false);
+            embedBuilder.addField("Progress", player.getTrackProgressBar(data.getSettings().isUseEmbedForMessages()), false);
         }
 
         embedBuilder.addField("Amount played", FormatUtils.formatLongTimeMills(player.getPlayer().getTrackPosition()) + " / " +
@@ -163,7 +171,7 @@ public class PlayingCommand implements ICommandMain {
         if (track.getUserData() instanceof Long) { //TODO find out why user data sometimes gets set to null.
             embedBuilder.addField("Requested By", CascadeBot.INS.getShardManager().getUserById((Long) track.getUserData()).getAsTag(), true);
         }
-        AudioTrack next = player.getQueue().peek();
+        AudioTrack next = player.getNextTrack();
         if (next != null) {
             embedBuilder.addField("Up next", "**" + next.getInfo().title + "**\nRequested by " +
                     CascadeBot.INS.getShardManager().getUserById((Long) next.getUserData()).getAsTag(), false);
@@ -172,7 +180,7 @@ public class PlayingCommand implements ICommandMain {
         return embedBuilder.build();
     }
 
-    public void handlePlayPause(ButtonGroup buttonGroup, Message buttonMessage) {
+    public void handlePlayPause(GuildData data, ButtonGroup buttonGroup, Message buttonMessage) {
         CascadePlayer player = CascadeBot.INS.getMusicHandler().getPlayer(buttonGroup.getGuildId());
         if (player.getPlayer().isPaused()) {
             player.getPlayer().setPaused(false);
@@ -183,10 +191,10 @@ public class PlayingCommand implements ICommandMain {
             buttonGroup.removeButton(pauseButton);
             buttonGroup.addButton(playButton);
         }
-        buttonMessage.editMessage(getSongEmbed(player, buttonGroup.getGuildId())).queue();
+        buttonMessage.editMessage(getSongEmbed(player, data)).queue();
     }
 
-    public void handleRepeat(ButtonGroup buttonGroup, CascadePlayer.LoopMode mode, Message buttonMessage) {
+    public void handleRepeat(GuildData data, ButtonGroup buttonGroup, CascadePlayer.LoopMode mode, Message buttonMessage) {
         CascadePlayer player = CascadeBot.INS.getMusicHandler().getPlayer(buttonGroup.getGuildId());
         switch (mode) {
             case DISABLED:
@@ -203,7 +211,7 @@ public class PlayingCommand implements ICommandMain {
                 break;
         }
         player.loopMode(mode);
-        buttonMessage.editMessage(getSongEmbed(player, buttonGroup.getGuildId())).queue();
+        buttonMessage.editMessage(getSongEmbed(player, data)).queue();
     }
 
     @Override
@@ -6,8 +6,10 @@
 package org.cascadebot.cascadebot.commands.music;
 
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import lombok.AllArgsConstructor;
 import net.dv8tion.jda.core.EmbedBuilder;
 import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.Message;
 import org.cascadebot.cascadebot.CascadeBot;
 import org.cascadebot.cascadebot.commandmeta.CommandContext;
 import org.cascadebot.cascadebot.commandmeta.ICommandExecutable;
@@ -25,6 +27,8 @@ import java.util.Set;
 
 public class QueueCommand implements ICommandMain {
 
+    private static final int PAGE_SIZE = 10;
+
     @Override
     public void onCommand(Member sender, CommandContext context) {
         CascadePlayer player = context.getMusicPlayer();
@@ -32,31 +36,15 @@ public class QueueCommand implements ICommandMain {
 
         embedBuilder.setTitle("Queue");
 
-        if (player.getQueue().isEmpty()) {
+        int queueSize = player.getQueueSize();
+        if (queueSize == 0) {
             context.getTypedMessaging().replyInfo("There are no tracks in the queue!");
             return;
         }
 
-        StringBuilder builder = new StringBuilder();
-
         List<Page> pages = new ArrayList<>();
-
-        int i = 1;
-        for (AudioTrack track : player.getQueue()) {
-            builder.append(i).append(". **").append(track.getInfo().title).append("**");
-            if(track.getUserData() instanceof Long) {
-                builder.append("\n Requested by ").append(CascadeBot.INS.getShardManager().getUserById((Long) track.getUserData()).getAsTag());
-            }
-            builder.append("\n\n");
-            if (i % 10 == 0) {
-                pages.add(new PageObjects.EmbedPage(new EmbedBuilder().setDescription(builder.toString())));
-                builder = new StringBuilder();
-            }
-            i++;
-        }
-
-        if (builder.toString().length() > 0) {
-            pages.add(new PageObjects.EmbedPage(new EmbedBuilder().setDescription(builder.toString())));
+        for (int start = 0; start < queueSize; start += PAGE_SIZE) {
+            pages.add(new QueuePage(player, start));
         }
 
         context.getUIMessaging().sendPagedMessage(pages);
@@ -93,4 +81,35 @@ public class QueueCommand implements ICommandMain {
         return "Display the current queue";
     }
 
+    /**
+     * A page of the queue that is only built when it is shown, so sending the queue doesn't have to go through every
+     * track in it. The page shows the tracks that are at its position in the queue at the time it is shown.
+     */
+    @AllArgsConstructor
+    private static class QueuePage implements Page {
+
+        private final CascadePlayer player;
+        private final int start;
+
+        @Override
+        public void pageShow(Message message, int page, int total) {
+            List<AudioTrack> tracks = player.getQueueRange(start, start + PAGE_SIZE);
+            StringBuilder builder = new StringBuilder();
+            int i = start + 1;
+            for (AudioTrack track : tracks) {
+                builder.append(i).append(". **").append(track.getInfo().title).append("**");
+                if (track.getUserData() instanceof Long) {
+                    builder.append("\n Requested by ").append(CascadeBot.INS.getShardManager().getUserById((Long) track.getUserData()).getAsTag());
+                }
+                builder.append("\n\n");
+                i++;
+            }
+            if (tracks.isEmpty()) {
+                builder.append("The queue has got shorter since this was sent, there are no tracks on this page any more!");
+            }
+            new PageObjects.EmbedPage(new EmbedBuilder().setDescription(builder.toString())).pageShow(message, page, total);
+        }
+
+    }
+
 }
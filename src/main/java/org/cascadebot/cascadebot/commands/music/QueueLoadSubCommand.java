@@ -12,6 +12,7 @@ import org.cascadebot.cascadebot.commandmeta.ArgumentType;
 import org.cascadebot.cascadebot.commandmeta.CommandContext;
 import org.cascadebot.cascadebot.commandmeta.ICommandExecutable;
 import org.cascadebot.cascadebot.data.objects.PlaylistType;
+import org.cascadebot.cascadebot.music.PlaylistLoader;
 import org.cascadebot.cascadebot.permissions.CascadePermission;
 import org.cascadebot.cascadebot.utils.buttons.Button;
 import org.cascadebot.cascadebot.utils.buttons.ButtonGroup;
@@ -27,11 +28,11 @@ public class QueueLoadSubCommand implements ICommandExecutable {
             return;
         }
 
-        context.getMusicPlayer().loadPlaylist(context.getArg(0), sender, (result, tracks) -> {
+        context.getMusicPlayer().loadPlaylist(context.getArg(0), sender, (result, loadResult) -> {
             switch (result) {
                 case LOADED_GUILD:
                 case LOADED_USER:
-                    context.getUIMessaging().sendTracksFound(tracks);
+                    sendLoadResult(context, loadResult);
                     break;
                 case EXISTS_IN_ALL_SCOPES:
                     ButtonGroup buttonGroup = new ButtonGroup(sender.getUser().getIdLong(), context.getChannel().getIdLong(), context.getGuild().getIdLong());
@@ -40,8 +41,8 @@ public class QueueLoadSubCommand implements ICommandExecutable {
                             return;
                         }
                         message.delete().queue();
-                        context.getMusicPlayer().loadPlaylist(context.getArg(0), sender, PlaylistType.USER, ((loadPlaylistResult, newTracks) -> {
-                            context.getUIMessaging().sendTracksFound(newTracks);
+                        context.getMusicPlayer().loadPlaylist(context.getArg(0), sender, PlaylistType.USER, ((loadPlaylistResult, newLoadResult) -> {
+                            sendLoadResult(context, newLoadResult);
                         }));
                     })));
                     buttonGroup.addButton(new Button.UnicodeButton(UnicodeConstants.TWO, ((runner, channel, message) -> {
@@ -49,8 +50,8 @@ public class QueueLoadSubCommand implements ICommandExecutable {
                             return;
                         }
                         message.delete().queue();
-                        context.getMusicPlayer().loadPlaylist(context.getArg(0), sender, PlaylistType.GUILD, ((loadPlaylistResult, newTracks) -> {
-                            context.getUIMessaging().sendTracksFound(newTracks);
+                        context.getMusicPlayer().loadPlaylist(context.getArg(0), sender, PlaylistType.GUILD, ((loadPlaylistResult, newLoadResult) -> {
+                            sendLoadResult(context, newLoadResult);
                         }));
                     })));
                     context.getUIMessaging().sendButtonedMessage("Where you like to load this track from\n" + UnicodeConstants.ONE +
@@ -63,6 +64,18 @@ public class QueueLoadSubCommand implements ICommandExecutable {
         });
     }
 
+    private void sendLoadResult(CommandContext context, PlaylistLoader.LoadResult loadResult) {
+        if (loadResult.getTracks().isEmpty()) {
+            context.getTypedMessaging().replyDanger("None of the tracks in this playlist could be loaded!");
+            return;
+        }
+        context.getUIMessaging().sendTracksFound(loadResult.getTracks());
+        if (!loadResult.getFailed().isEmpty()) {
+            context.getTypedMessaging().replyWarning("`%s` tracks couldn't be loaded%s", loadResult.getFailed().size(),
+                    loadResult.isTimedOut() ? " as the playlist took too long to load" : "");
+        }
+    }
+
     @Override
     public String command() {
         return "load";
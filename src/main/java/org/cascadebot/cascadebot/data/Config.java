@@ -18,6 +18,9 @@ import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.cascadebot.cascadebot.CascadeBot;
 import org.cascadebot.cascadebot.ShutdownHandler;
+import org.cascadebot.cascadebot.commandmeta.CommandRateLimiter;
+import org.cascadebot.cascadebot.commandmeta.Module;
+import org.cascadebot.cascadebot.data.repository.StorageBackend;
 import org.cascadebot.cascadebot.messaging.NoOpWebhookClient;
 import org.cascadebot.cascadebot.music.MusicHandler;
 import org.cascadebot.cascadebot.utils.LogbackUtils;
@@ -33,6 +36,7 @@ import java.net.URISyntaxException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -72,8 +76,47 @@ public class Config {
 
     private String connectionString;
 
+    private StorageBackend storageBackend;
+    private String storageDirectory;
+
     private int shardNum;
 
+    private int commandThreads;
+    private int commandQueueLimit;
+    private int commandGuildQueueLimit;
+    private int commandGuildParallelism;
+
+    private int guildSaveFlushInterval;
+    private int guildSaveFlushThreshold;
+    private int guildSaveBatchSize;
+    private int guildShutdownConcurrency;
+    private int guildShutdownDeadline;
+
+    private int guildLoadTimeout;
+    private long guildCacheMaxWeight;
+
+    private boolean guildSnapshotEnabled;
+    private String guildSnapshotFile;
+    private int guildSnapshotInterval;
+
+    private boolean guildChangeStreamEnabled;
+
+    private int playlistLoadParallelism;
+    private int playlistLoadTimeout;
+
+    private long trackCacheMaxTracks;
+    private long trackCacheTtl;
+    private long trackCacheNoMatchTtl;
+
+    private boolean guildPreloadEnabled;
+    private int guildPreloadBatchSize;
+    private int guildPreloadConcurrency;
+
+    private CommandRateLimiter.RateLimit userRateLimit;
+    private CommandRateLimiter.RateLimit guildRateLimit;
+    private CommandRateLimiter.RateLimit commandRateLimit;
+    private Map<Module, CommandRateLimiter.RateLimit> moduleRateLimits;
+
     private String guildWelcomeMessage;
     private String guildGoodbyeMessage;
 
@@ -142,13 +185,21 @@ public class Config {
             ShutdownHandler.exitWithError();
         }
 
-        if (!config.contains("database")) {
-            LOG.error("No database info provided, exiting!");
+        String backend = config.getString("storage.backend", "mongo");
+        if (!EnumUtils.isValidEnum(StorageBackend.class, backend.toUpperCase())) {
+            LOG.error("Unknown storage backend {}, exiting!", backend);
             ShutdownHandler.exitWithError();
             return;
         }
-
-        if (config.contains("database.connection_string") && !config.getString("database.connection_string").isBlank()) {
+        this.storageBackend = StorageBackend.valueOf(backend.toUpperCase());
+        this.storageDirectory = config.getString("storage.directory", "");
+        if (this.storageBackend != StorageBackend.MONGO) {
+            LOG.warn("Using the {} storage backend, nothing will be saved to the database!", this.storageBackend);
+        } else if (!config.contains("database")) {
+            LOG.error("No database info provided, exiting!");
+            ShutdownHandler.exitWithError();
+            return;
+        } else if (config.contains("database.connection_string") && !config.getString("database.connection_string").isBlank()) {
             this.connectionString = config.getString("database.connection_string");
         } else {
             this.username = config.getString("database.username");
@@ -169,6 +220,53 @@ public class Config {
 
         shardNum = warnOnDefault(config, "shard_num", -1);
 
+        this.commandThreads = config.getInt("command_pool.threads", 16);
+        this.commandQueueLimit = config.getInt("command_pool.queue_limit", 500);
+        this.commandGuildQueueLimit = config.getInt("command_pool.guild_queue_limit", 10);
+        this.commandGuildParallelism = config.getInt("command_pool.guild_parallelism", 2);
+
+        this.guildSaveFlushInterval = config.getInt("guild_saves.flush_interval", 10);
+        this.guildSaveFlushThreshold = config.getInt("guild_saves.flush_threshold", 200);
+        this.guildSaveBatchSize = config.getInt("guild_saves.batch_size", 500);
+        this.guildShutdownConcurrency = config.getInt("guild_saves.shutdown_concurrency", 8);
+        this.guildShutdownDeadline = config.getInt("guild_saves.shutdown_deadline", 30);
+
+        this.guildLoadTimeout = config.getInt("guild_cache.load_timeout", 10);
+        this.guildCacheMaxWeight = config.getLong("guild_cache.max_size_mb", 1024) * 1024 * 1024;
+
+        this.guildSnapshotEnabled = config.getBoolean("guild_snapshot.enabled", false);
+        this.guildSnapshotFile = config.getString("guild_snapshot.file", "guild_snapshot.bin");
+        this.guildSnapshotInterval = config.getInt("guild_snapshot.interval", 10);
+
+        this.guildChangeStreamEnabled = config.getBoolean("guild_change_stream.enabled", false);
+
+        this.playlistLoadParallelism = config.getInt("playlist_loading.parallelism", 10);
+        this.playlistLoadTimeout = config.getInt("playlist_loading.timeout", 30);
+
+        this.trackCacheMaxTracks = config.getLong("track_cache.max_tracks", 100000);
+        this.trackCacheTtl = config.getLong("track_cache.ttl", 3600);
+        this.trackCacheNoMatchTtl = config.getLong("track_cache.no_match_ttl", 60);
+
+        this.guildPreloadEnabled = config.getBoolean("guild_preload.enabled", false);
+        this.guildPreloadBatchSize = config.getInt("guild_preload.batch_size", 1000);
+        this.guildPreloadConcurrency = config.getInt("guild_preload.concurrency", 2);
+
+        this.userRateLimit = getRateLimit(config, "rate_limits.user", 10, 10);
+        this.guildRateLimit = getRateLimit(config, "rate_limits.guild", 60, 10);
+        this.commandRateLimit = getRateLimit(config, "rate_limits.command", 3, 5);
+        this.moduleRateLimits = new EnumMap<>(Module.class);
+        ConfigurationSection configModuleRateLimits = config.getConfigurationSection("rate_limits.modules");
+        if (configModuleRateLimits != null) {
+            for (String moduleName : configModuleRateLimits.getKeys(false)) {
+                if (EnumUtils.isValidEnum(Module.class, moduleName.toUpperCase())) {
+                    this.moduleRateLimits.put(Module.valueOf(moduleName.toUpperCase()),
+                            getRateLimit(config, "rate_limits.modules." + moduleName, commandRateLimit.getCapacity(), commandRateLimit.getPeriod()));
+                } else {
+                    LOG.warn("Unknown module {} in rate limits, ignoring!", moduleName);
+                }
+            }
+        }
+
         if (config.contains("official_server")) {
             officialServerId = config.getLong("official_server");
         } else {
@@ -245,6 +343,10 @@ public class Config {
 
     }
 
+    private CommandRateLimiter.RateLimit getRateLimit(FileConfiguration config, String path, int capacity, long period) {
+        return new CommandRateLimiter.RateLimit(config.getInt(path + ".capacity", capacity), config.getLong(path + ".period", period));
+    }
+
     @SuppressWarnings("unchecked")
     private <T> T warnOnDefault(FileConfiguration config, String path, T defaultValue) {
         T object = (T) config.get(path);
@@ -323,10 +425,126 @@ public class Config {
         return connectionString;
     }
 
+    public StorageBackend getStorageBackend() {
+        return storageBackend;
+    }
+
+    public String getStorageDirectory() {
+        return storageDirectory;
+    }
+
     public int getShardNum() {
         return shardNum;
     }
 
+    public int getCommandThreads() {
+        return commandThreads;
+    }
+
+    public int getCommandQueueLimit() {
+        return commandQueueLimit;
+    }
+
+    public int getCommandGuildQueueLimit() {
+        return commandGuildQueueLimit;
+    }
+
+    public int getCommandGuildParallelism() {
+        return commandGuildParallelism;
+    }
+
+    public int getGuildSaveFlushInterval() {
+        return guildSaveFlushInterval;
+    }
+
+    public int getGuildSaveFlushThreshold() {
+        return guildSaveFlushThreshold;
+    }
+
+    public int getGuildSaveBatchSize() {
+        return guildSaveBatchSize;
+    }
+
+    public int getGuildShutdownConcurrency() {
+        return guildShutdownConcurrency;
+    }
+
+    public int getGuildShutdownDeadline() {
+        return guildShutdownDeadline;
+    }
+
+    public int getGuildLoadTimeout() {
+        return guildLoadTimeout;
+    }
+
+    public long getGuildCacheMaxWeight() {
+        return guildCacheMaxWeight;
+    }
+
+    public boolean isGuildSnapshotEnabled() {
+        return guildSnapshotEnabled;
+    }
+
+    public String getGuildSnapshotFile() {
+        return guildSnapshotFile;
+    }
+
+    public int getGuildSnapshotInterval() {
+        return guildSnapshotInterval;
+    }
+
+    public boolean isGuildChangeStreamEnabled() {
+        return guildChangeStreamEnabled;
+    }
+
+    public int getPlaylistLoadParallelism() {
+        return playlistLoadParallelism;
+    }
+
+    public int getPlaylistLoadTimeout() {
+        return playlistLoadTimeout;
+    }
+
+    public long getTrackCacheMaxTracks() {
+        return trackCacheMaxTracks;
+    }
+
+    public long getTrackCacheTtl() {
+        return trackCacheTtl;
+    }
+
+    public long getTrackCacheNoMatchTtl() {
+        return trackCacheNoMatchTtl;
+    }
+
+    public boolean isGuildPreloadEnabled() {
+        return guildPreloadEnabled;
+    }
+
+    public int getGuildPreloadBatchSize() {
+        return guildPreloadBatchSize;
+    }
+
+    public int getGuildPreloadConcurrency() {
+        return guildPreloadConcurrency;
+    }
+
+    public CommandRateLimiter.RateLimit getUserRateLimit() {
+        return userRateLimit;
+    }
+
+    public CommandRateLimiter.RateLimit getGuildRateLimit() {
+        return guildRateLimit;
+    }
+
+    public CommandRateLimiter.RateLimit getCommandRateLimit() {
+        return commandRateLimit;
+    }
+
+    public Map<Module, CommandRateLimiter.RateLimit> getModuleRateLimits() {
+        return moduleRateLimits;
+    }
+
     public List<MusicHandler.MusicNode> getMusicNodes() {
         return musicNodes;
     }
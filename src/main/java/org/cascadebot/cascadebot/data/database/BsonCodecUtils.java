@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.data.database;
+
+import lombok.experimental.UtilityClass;
+import org.apache.commons.lang3.EnumUtils;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+
+import java.util.Collection;
+
+/**
+ * Helpers for the hand written codecs. Collections are written straight from and read straight into the live
+ * collections, without building an intermediate document or copying them.
+ */
+@UtilityClass
+public class BsonCodecUtils {
+
+    public static void writeString(BsonWriter writer, String name, String value) {
+        if (value == null) {
+            writer.writeNull(name);
+        } else {
+            writer.writeString(name, value);
+        }
+    }
+
+    /**
+     * Reads a string value that may be null. The name of the value must have already been read.
+     *
+     * @param reader The reader to read from.
+     * @return The string, or null if the value was null.
+     */
+    public static String readString(BsonReader reader) {
+        if (reader.getCurrentBsonType() == BsonType.NULL) {
+            reader.readNull();
+            return null;
+        }
+        return reader.readString();
+    }
+
+    public static void writeStrings(BsonWriter writer, String name, Collection<String> values) {
+        writer.writeStartArray(name);
+        for (String value : values) {
+            writer.writeString(value);
+        }
+        writer.writeEndArray();
+    }
+
+    /**
+     * Reads an array of strings into a collection. The name of the array must have already been read.
+     *
+     * @param reader The reader to read from.
+     * @param target The collection to add the strings to.
+     */
+    public static void readStrings(BsonReader reader, Collection<String> target) {
+        if (reader.getCurrentBsonType() == BsonType.NULL) {
+            reader.readNull();
+            return;
+        }
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            if (reader.getCurrentBsonType() == BsonType.STRING) {
+                target.add(reader.readString());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.readEndArray();
+    }
+
+    public static <E extends Enum<E>> void writeEnums(BsonWriter writer, String name, Collection<E> values) {
+        writer.writeStartArray(name);
+        for (E value : values) {
+            writer.writeString(value.name());
+        }
+        writer.writeEndArray();
+    }
+
+    /**
+     * Reads an array of enum names into a collection. Names that aren't a constant of the enum any more are skipped.
+     * The name of the array must have already been read.
+     *
+     * @param reader The reader to read from.
+     * @param type   The type of the enum.
+     * @param target The collection to add the constants to.
+     */
+    public static <E extends Enum<E>> void readEnums(BsonReader reader, Class<E> type, Collection<E> target) {
+        if (reader.getCurrentBsonType() == BsonType.NULL) {
+            reader.readNull();
+            return;
+        }
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            if (reader.getCurrentBsonType() != BsonType.STRING) {
+                reader.skipValue();
+                continue;
+            }
+            E value = EnumUtils.getEnum(type, reader.readString());
+            if (value != null) target.add(value);
+        }
+        reader.readEndArray();
+    }
+
+    public static void writeLongs(BsonWriter writer, String name, Collection<Long> values) {
+        writer.writeStartArray(name);
+        for (Long value : values) {
+            writer.writeInt64(value);
+        }
+        writer.writeEndArray();
+    }
+
+    /**
+     * Reads an array of longs into a collection. The name of the array must have already been read.
+     *
+     * @param reader The reader to read from.
+     * @param target The collection to add the longs to.
+     */
+    public static void readLongs(BsonReader reader, Collection<Long> target) {
+        if (reader.getCurrentBsonType() == BsonType.NULL) {
+            reader.readNull();
+            return;
+        }
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            switch (reader.getCurrentBsonType()) {
+                case INT64:
+                    target.add(reader.readInt64());
+                    break;
+                case INT32:
+                    target.add((long) reader.readInt32());
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.readEndArray();
+    }
+
+    /**
+     * Reads a boolean value, treating anything that isn't a boolean as the default. The name of the value must have
+     * already been read.
+     *
+     * @param reader       The reader to read from.
+     * @param defaultValue The value to use if the stored value isn't a boolean.
+     * @return The boolean.
+     */
+    public static boolean readBoolean(BsonReader reader, boolean defaultValue) {
+        if (reader.getCurrentBsonType() != BsonType.BOOLEAN) {
+            reader.skipValue();
+            return defaultValue;
+        }
+        return reader.readBoolean();
+    }
+
+}
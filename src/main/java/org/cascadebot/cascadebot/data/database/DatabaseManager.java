@@ -17,8 +17,15 @@ import de.bild.codec.PojoCodecProvider;
 import lombok.Getter;
 import org.apache.commons.lang3.StringUtils;
 import org.bson.Document;
+import org.bson.codecs.Codec;
 import org.bson.codecs.configuration.CodecRegistries;
 import org.bson.codecs.configuration.CodecRegistry;
+import org.cascadebot.cascadebot.data.objects.GuildData;
+import org.cascadebot.cascadebot.data.objects.GuildPermissions;
+import org.cascadebot.cascadebot.data.objects.GuildSettingsCore;
+import org.cascadebot.cascadebot.data.objects.Tag;
+import org.cascadebot.cascadebot.permissions.objects.Group;
+import org.cascadebot.cascadebot.permissions.objects.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,7 +39,8 @@ public class DatabaseManager {
 
     private final MongoClient SYNC_CLIENT;
     private final com.mongodb.async.client.MongoClient ASYNC_CLIENT;
-    private final CodecRegistry CODEC_REGISTRY = CodecRegistries.fromRegistries(
+    // The reflection based codecs, which are still used for everything without a hand written codec
+    private static final CodecRegistry POJO_CODEC_REGISTRY = CodecRegistries.fromRegistries(
             MongoClientSettings.getDefaultCodecRegistry(),
             CodecRegistries.fromProviders(PojoCodecProvider.builder().register(
                     "org.cascadebot.cascadebot.data.objects",
@@ -40,6 +48,20 @@ public class DatabaseManager {
                     "org.cascadebot.shared"
             ).build())
     );
+    // Static so the codecs can be used by the storage backends that don't use Mongo
+    public static final CodecRegistry CODEC_REGISTRY = CodecRegistries.fromRegistries(
+            CodecRegistries.fromCodecs(
+                    new GuildData.BsonCodec(POJO_CODEC_REGISTRY),
+                    new GuildSettingsCore.BsonCodec(),
+                    new GuildPermissions.BsonCodec(),
+                    new Tag.BsonCodec(),
+                    new Group.BsonCodec(),
+                    new User.BsonCodec()
+            ),
+            POJO_CODEC_REGISTRY
+    );
+    // Encodes guild data without changing its state lock, for copies of the data that aren't saved to the database
+    public static final Codec<GuildData> SNAPSHOT_GUILD_CODEC = new GuildData.BsonCodec(POJO_CODEC_REGISTRY, false);
 
     @Getter
     private String databaseName;
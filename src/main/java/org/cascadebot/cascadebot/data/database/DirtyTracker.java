@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.data.database;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records which paths of a document have changed since it was last saved. Paths are dot separated field names relative
+ * to the object that owns the tracker, in the same format Mongo uses for updates.
+ */
+public class DirtyTracker {
+
+    private final Set<String> paths = ConcurrentHashMap.newKeySet();
+
+    public void markDirty(String path) {
+        paths.add(path);
+    }
+
+    public void markDirty(Collection<String> paths) {
+        this.paths.addAll(paths);
+    }
+
+    public boolean isDirty() {
+        return !paths.isEmpty();
+    }
+
+    /**
+     * Removes all of the dirty paths from this tracker and returns them. Paths that are marked while this is running
+     * are either returned or left in the tracker for the next drain, they are never lost.
+     *
+     * @param prefix A prefix to add to each of the returned paths, or null to return them unchanged.
+     * @return The paths that were dirty.
+     */
+    public List<String> drain(String prefix) {
+        List<String> drained = new ArrayList<>();
+        Iterator<String> iterator = paths.iterator();
+        while (iterator.hasNext()) {
+            String path = iterator.next();
+            iterator.remove();
+            drained.add(prefix == null ? path : prefix + "." + path);
+        }
+        return drained;
+    }
+
+    /**
+     * Gets the path for an entry in a map field. Map keys that can't be used as a Mongo field name fall back to the
+     * path of the whole map.
+     *
+     * @param parent The path of the map.
+     * @param key    The key of the entry.
+     * @return The path of the entry or the parent path if the key can't be used in a path.
+     */
+    public static String child(String parent, String key) {
+        if (key.isEmpty() || key.startsWith("$") || key.indexOf('.') >= 0 || key.indexOf('\0') >= 0) {
+            return parent;
+        }
+        return parent + "." + key;
+    }
+
+    /**
+     * Removes any path that is already covered by one of its ancestors, as Mongo won't allow an update to set both
+     * a field and one of its children.
+     *
+     * @param paths The paths to normalise.
+     * @return The normalised paths in sorted order.
+     */
+    public static List<String> normalise(Collection<String> paths) {
+        List<String> normalised = new ArrayList<>();
+        // Sorting puts every path after its ancestors, so each path only has to be checked against the kept paths
+        for (String path : new TreeSet<>(paths)) {
+            if (!isCovered(normalised, path)) normalised.add(path);
+        }
+        return normalised;
+    }
+
+    private static boolean isCovered(List<String> ancestors, String path) {
+        for (int i = ancestors.size() - 1; i >= 0; i--) {
+            String ancestor = ancestors.get(i);
+            if (path.startsWith(ancestor) && path.length() > ancestor.length() && path.charAt(ancestor.length()) == '.') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.data.database;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a {@code $set}/{@code $unset} update for a set of dirty paths from the fully encoded document.
+ */
+public final class PartialUpdate {
+
+    private PartialUpdate() {}
+
+    /**
+     * Builds an update that only writes the given paths. Paths that don't exist in the encoded document are unset.
+     * If a path goes through a value that isn't a document (e.g. a map encoded as an array) the whole value is set.
+     *
+     * @param document The fully encoded document.
+     * @param paths    The paths that need to be written.
+     * @return The update, which is empty if there is nothing to write.
+     */
+    public static BsonDocument of(BsonDocument document, Collection<String> paths) {
+        // A null value means the path needs to be unset
+        Map<String, BsonValue> values = new LinkedHashMap<>();
+        for (String path : DirtyTracker.normalise(paths)) {
+            resolve(document, path, values);
+        }
+
+        BsonDocument set = new BsonDocument();
+        BsonDocument unset = new BsonDocument();
+        // Resolving can fall back to a parent path, which may now cover other paths
+        List<String> resolvedPaths = DirtyTracker.normalise(values.keySet());
+        for (String path : resolvedPaths) {
+            BsonValue value = values.get(path);
+            if (value == null) {
+                unset.put(path, new BsonString(""));
+            } else {
+                set.put(path, value);
+            }
+        }
+
+        BsonDocument update = new BsonDocument();
+        if (!set.isEmpty()) update.put("$set", set);
+        if (!unset.isEmpty()) update.put("$unset", unset);
+        return update;
+    }
+
+    private static void resolve(BsonDocument document, String path, Map<String, BsonValue> values) {
+        String[] segments = path.split("\\.");
+        BsonValue current = document;
+        StringBuilder resolved = new StringBuilder();
+        for (String segment : segments) {
+            if (!current.isDocument()) {
+                values.put(resolved.toString(), current);
+                return;
+            }
+            BsonDocument currentDocument = current.asDocument();
+            if (resolved.length() > 0) resolved.append('.');
+            resolved.append(segment);
+            if (!currentDocument.containsKey(segment)) {
+                values.put(path, null);
+                return;
+            }
+            current = currentDocument.get(segment);
+        }
+        values.put(path, current);
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.data.managers;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.cascadebot.cascadebot.CascadeBot;
+import org.cascadebot.cascadebot.data.database.DatabaseManager;
+import org.cascadebot.cascadebot.metrics.Metrics;
+
+import java.util.List;
+import java.util.UUID;
+
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Projections.include;
+
+/**
+ * Watches the guilds collection for changes made by something other than this instance of the bot, such as the
+ * panel, the wrapper or another instance of the bot, and invalidates the cached copies of the changed guilds.
+ * <p>
+ * Each change is compared against the state lock of the cached guild, so this relies on everything that writes guild
+ * data changing the state lock like the bot does.
+ */
+public final class GuildChangeStreamManager {
+
+    private static final String COLLECTION = "guilds";
+
+    private static final long MIN_RETRY_DELAY = 1000;
+    private static final long MAX_RETRY_DELAY = 60000;
+    // The resume token is too old to be used or was for an event that can't be resumed after
+    private static final List<Integer> UNRESUMABLE_ERRORS = List.of(260, 280, 286);
+
+    private static final List<Bson> PIPELINE = List.of(
+            Aggregates.match(in("operationType", "insert", "update", "replace", "delete", "invalidate")),
+            // The resume token is always included, only the state lock is needed from the document
+            Aggregates.project(include("operationType", "documentKey", "fullDocument.stateLock"))
+    );
+
+    private static volatile boolean running;
+    private static volatile MongoCursor<ChangeStreamDocument<Document>> cursor;
+    // Only used by the watcher thread
+    private static BsonDocument resumeToken;
+
+    /**
+     * Starts watching for changes on a new thread. Reconnects after errors, resuming from the last change that was
+     * seen so no changes are missed.
+     *
+     * @param databaseManager The database manager to watch the guilds collection with.
+     */
+    public static synchronized void start(DatabaseManager databaseManager) {
+        if (running) return;
+        running = true;
+        Thread thread = new Thread(() -> watch(databaseManager), "guild-change-stream");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static synchronized void stop() {
+        running = false;
+        MongoCursor<ChangeStreamDocument<Document>> currentCursor = cursor;
+        if (currentCursor != null) {
+            try {
+                currentCursor.close();
+            } catch (RuntimeException e) {
+                // The cursor is being closed because we are stopping so any errors don't matter
+            }
+        }
+    }
+
+    private static void watch(DatabaseManager databaseManager) {
+        long retryDelay = MIN_RETRY_DELAY;
+        while (running) {
+            try {
+                ChangeStreamIterable<Document> stream = databaseManager.getDatabase().getCollection(COLLECTION)
+                        .watch(PIPELINE)
+                        .fullDocument(FullDocument.UPDATE_LOOKUP);
+                if (resumeToken != null) stream = stream.resumeAfter(resumeToken);
+
+                try (MongoCursor<ChangeStreamDocument<Document>> changes = stream.iterator()) {
+                    cursor = changes;
+                    if (!running) return;
+                    CascadeBot.LOGGER.info("Watching for guild data changes{}", resumeToken == null ? "" : ", resuming from the last change");
+                    retryDelay = MIN_RETRY_DELAY;
+                    while (running && changes.hasNext()) {
+                        ChangeStreamDocument<Document> change = changes.next();
+                        if (change.getOperationType() == OperationType.INVALIDATE) {
+                            // The collection was dropped or renamed so the stream can't be resumed, start a new one
+                            resumeToken = null;
+                            break;
+                        }
+                        handleChange(change);
+                        resumeToken = change.getResumeToken();
+                    }
+                } finally {
+                    cursor = null;
+                }
+            } catch (RuntimeException e) {
+                // Anything else that goes wrong, such as a change that can't be decoded, is retried in the same way so
+                // the watching thread never dies
+                if (!running) return;
+                if (resumeToken != null && e instanceof MongoException && UNRESUMABLE_ERRORS.contains(((MongoException) e).getCode())) {
+                    CascadeBot.LOGGER.warn("Can't resume watching guild data changes, some changes may have been missed", e);
+                    resumeToken = null;
+                } else {
+                    CascadeBot.LOGGER.warn("Lost the guild data change stream, retrying in {}ms", retryDelay, e);
+                }
+                try {
+                    Thread.sleep(retryDelay);
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+            }
+        }
+    }
+
+    private static void handleChange(ChangeStreamDocument<Document> change) {
+        BsonDocument documentKey = change.getDocumentKey();
+        BsonValue id = documentKey == null ? null : documentKey.get("_id");
+        if (id == null || !id.isInt64()) return;
+
+        Document fullDocument = change.getFullDocument();
+        Object stateLock = fullDocument == null ? null : fullDocument.get("stateLock");
+        boolean invalidated = GuildDataManager.invalidateChanged(id.asInt64().getValue(), stateLock instanceof UUID ? (UUID) stateLock : null);
+        if (invalidated) {
+            CascadeBot.LOGGER.debug("Guild ID {} was changed elsewhere, invalidated the cached data", id.asInt64().getValue());
+        }
+        Metrics.INS.guildChanges.labels(invalidated ? "invalidated" : "ignored").inc();
+    }
+
+}
@@ -5,70 +5,464 @@
 
 package org.cascadebot.cascadebot.data.managers;
 
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
-import org.bson.conversions.Bson;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.google.common.collect.Lists;
 import org.cascadebot.cascadebot.CascadeBot;
-import org.cascadebot.cascadebot.data.database.DebugLogCallback;
+import org.cascadebot.cascadebot.data.Config;
 import org.cascadebot.cascadebot.data.objects.GuildData;
+import org.cascadebot.cascadebot.data.repository.GuildDataWrite;
 import org.cascadebot.cascadebot.events.GuildSaveListener;
+import org.cascadebot.cascadebot.metrics.Metrics;
+import org.cascadebot.cascadebot.tasks.Task;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-
-import static com.mongodb.client.model.Filters.eq;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public final class GuildDataManager {
 
-    private static final String COLLECTION = "guilds";
-
-    private static LoadingCache<Long, GuildData> guilds = Caffeine.newBuilder()
-            .expireAfterAccess(5, TimeUnit.MINUTES)
-            .removalListener(new GuildSaveListener())
-            .recordStats()
-            .build(id -> {
-                GuildData dbData = CascadeBot.INS.getDatabaseManager().getDatabase().getCollection(COLLECTION, GuildData.class).find(eq("_id", id)).first();
-                if (dbData == null) {
-                    CascadeBot.LOGGER.debug("Attempted to load guild data for ID: " + id + ", none was found so creating new data object");
-                    GuildData data = new GuildData(id);
-                    GuildDataManager.insert(id, data);
-                    return data;
-                }
+    // How long a guild stays cached without being used
+    static final long GUILD_TTL_MINUTES = 5;
 
-                CascadeBot.LOGGER.debug("Loaded data from database for guild ID: " + id);
-                return dbData;
-            });
+    // Guild data waiting to be written, each guild only has one entry however many times it is saved before a flush
+    private static final ConcurrentHashMap<Long, GuildData> pendingWrites = new ConcurrentHashMap<>();
+    // Guild data that has been drained by a flush but hasn't been acknowledged by the database yet
+    private static final ConcurrentHashMap<Long, GuildData> inFlightWrites = new ConcurrentHashMap<>();
+    // Only one flush writes at a time so that the writes for a guild are always applied in order
+    private static final Semaphore flushLock = new Semaphore(1);
+
+    private static AsyncLoadingCache<Long, GuildData> guilds = buildCache();
+
+    private static AsyncLoadingCache<Long, GuildData> buildCache() {
+        Caffeine<Long, GuildData> builder = Caffeine.newBuilder()
+                .expireAfterAccess(GUILD_TTL_MINUTES, TimeUnit.MINUTES)
+                .removalListener(new GuildSaveListener())
+                // Runs the removal listener as soon as a guild leaves the cache rather than on another thread later, so
+                // a changed guild is queued to be saved before anything else is likely to load it again
+                .executor(Runnable::run)
+                .recordStats();
+        long maxWeight = Config.INS.getGuildCacheMaxWeight();
+        if (maxWeight > 0) {
+            // Evicted guilds are saved by the removal listener like expired ones
+            builder.maximumWeight(maxWeight).weigher((Long id, GuildData data) -> data.estimateSize());
+        }
+        return builder.buildAsync((id, executor) -> loadGuildData(id));
+    }
 
+    private static CompletableFuture<GuildData> loadGuildData(long id) {
+        // Data that was evicted but hasn't been written yet is newer than what's in the database
+        GuildData unsavedData = getUnsavedData(id);
+        if (unsavedData != null) {
+            PrefixManager.update(id, unsavedData.getSettings());
+            return CompletableFuture.completedFuture(unsavedData);
+        }
 
-    public static void update(long id, Bson update) {
-        CascadeBot.INS.getDatabaseManager().runAsyncTask(database -> {
-            database.getCollection(COLLECTION, GuildData.class).updateOne(eq("_id", id), update, new DebugLogCallback<>("Updated Guild ID " + id + ":", update));
+        CompletableFuture<GuildData> future = CascadeBot.INS.getGuildDataRepository().find(id).thenApply(dbData -> {
+            // A changed guild that was removed while this was loading is queued after it has left the cache, so this
+            // has to check again or it would replace the queued changes with the older data from the database
+            GuildData removedData = getUnsavedData(id);
+            if (removedData != null) {
+                PrefixManager.update(id, removedData.getSettings());
+                return removedData;
+            }
+            if (dbData == null) {
+                CascadeBot.LOGGER.debug("Attempted to load guild data for ID: " + id + ", none was found so creating new data object");
+                GuildData data = new GuildData(id);
+                GuildDataManager.insert(id, data);
+                PrefixManager.update(id, data.getSettings());
+                return data;
+            }
+
+            CascadeBot.LOGGER.debug("Loaded data from database for guild ID: " + id);
+            PrefixManager.update(id, dbData.getSettings());
+            return dbData;
         });
+        // A failed load isn't cached so the next request for the guild tries again
+        return future.orTimeout(Config.INS.getGuildLoadTimeout(), TimeUnit.SECONDS);
     }
 
     public static void insert(long id, GuildData data) {
-        CascadeBot.INS.getDatabaseManager().runAsyncTask(database -> {
-            database.getCollection(COLLECTION, GuildData.class).insertOne(data, new DebugLogCallback<>("Inserted Guild ID " + id));
-        });
+        CascadeBot.INS.getGuildDataRepository().insert(data);
     }
 
     public static void replace(long id, GuildData data) {
-        CascadeBot.INS.getDatabaseManager().runAsyncTask(database -> {
-            database.getCollection(COLLECTION, GuildData.class).replaceOne(eq("_id", id), data, new DebugLogCallback<>("Replaced Guild ID " + id));
-        });
+        CascadeBot.INS.getGuildDataRepository().replace(data);
     }
 
     public static void replaceSync(long id, GuildData data) {
-        CascadeBot.INS.getDatabaseManager().runTask(database -> {
-            database.getCollection(COLLECTION, GuildData.class).replaceOne(eq("_id", id), data);
+        CascadeBot.INS.getGuildDataRepository().replaceSync(data);
+    }
+
+    /**
+     * Queues the guild data to be saved by the next flush. Only the parts of the guild data that have changed since
+     * it was last written are saved, and saving the same guild again before the flush doesn't add another write.
+     *
+     * @param id   The ID of the guild.
+     * @param data The guild data to save.
+     */
+    public static void save(long id, GuildData data) {
+        pendingWrites.put(id, data);
+        Metrics.INS.guildSavesPending.set(pendingWrites.size());
+        if (pendingWrites.size() >= Config.INS.getGuildSaveFlushThreshold()) {
+            Task.getScheduler().execute(GuildDataManager::flush);
+        }
+    }
+
+    /**
+     * Writes all of the pending guild saves using unordered bulk writes. If a flush is already running this doesn't
+     * write anything, the saves stay queued and are picked up by the next flush instead.
+     *
+     * @return A future that completes with true once every pending save has been acknowledged by the database, or
+     * with false if a flush was already running or any of the writes failed and were queued again.
+     */
+    public static CompletableFuture<Boolean> flush() {
+        if (!flushLock.tryAcquire()) return CompletableFuture.completedFuture(false);
+        List<List<GuildDataWrite>> batches;
+        try {
+            batches = drainPendingWrites();
+        } catch (RuntimeException e) {
+            flushLock.release();
+            throw e;
+        }
+        if (batches.isEmpty()) {
+            flushLock.release();
+            return CompletableFuture.completedFuture(true);
+        }
+
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        long startTime = System.nanoTime();
+        AtomicInteger remaining = new AtomicInteger(batches.size());
+        AtomicBoolean succeeded = new AtomicBoolean(true);
+        Consumer<Boolean> onBatchComplete = batchSucceeded -> {
+            if (!batchSucceeded) succeeded.set(false);
+            if (remaining.decrementAndGet() == 0) {
+                Metrics.INS.guildSaveFlushTime.observe((System.nanoTime() - startTime) / 1e9);
+                flushLock.release();
+                future.complete(succeeded.get());
+            }
+        };
+        for (List<GuildDataWrite> batch : batches) {
+            try {
+                CascadeBot.INS.getGuildDataRepository().write(batch).whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        CascadeBot.LOGGER.error("Failed to save {} guilds, they will be retried on the next flush", batch.size(), throwable);
+                        requeue(batch);
+                    }
+                    finishWrites(batch);
+                    onBatchComplete.accept(throwable == null);
+                });
+            } catch (RuntimeException e) {
+                CascadeBot.LOGGER.error("Failed to save {} guilds, they will be retried on the next flush", batch.size(), e);
+                requeue(batch);
+                finishWrites(batch);
+                onBatchComplete.accept(false);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Queues every cached guild to be saved without starting a flush, used before {@link #flushAll(int, long, TimeUnit)}
+     * so that all of the guilds are written by the parallel flush.
+     */
+    public static void queueAll() {
+        pendingWrites.putAll(guilds.synchronous().asMap());
+        Metrics.INS.guildSavesPending.set(pendingWrites.size());
+    }
+
+    /**
+     * Writes all of the pending guild saves in parallel bulk writes, waiting for any running flush to finish first.
+     * This blocks until everything is written or the timeout is reached, and is used when shutting down.
+     *
+     * @param concurrency The number of bulk writes to run at the same time.
+     * @param timeout     The maximum time to spend flushing.
+     * @param unit        The unit of the timeout.
+     * @return Whether every pending guild was written successfully.
+     */
+    public static boolean flushAll(int concurrency, long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        boolean acquired = false;
+        try {
+            acquired = flushLock.tryAcquire(timeout, unit);
+            if (!acquired) {
+                CascadeBot.LOGGER.warn("Timed out waiting for the running guild flush to finish, flushing anyway!");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, concurrency), new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "guild-flush-" + threadNumber.incrementAndGet());
+            }
         });
+        try {
+            long startTime = System.nanoTime();
+            List<List<GuildDataWrite>> batches = drainPendingWrites();
+            int total = batches.stream().mapToInt(List::size).sum();
+            AtomicInteger saved = new AtomicInteger();
+            AtomicInteger failed = new AtomicInteger();
+            CascadeBot.LOGGER.info("Saving {} guilds in {} batches", total, batches.size());
+
+            for (List<GuildDataWrite> batch : batches) {
+                executor.execute(() -> {
+                    try {
+                        CascadeBot.INS.getGuildDataRepository().writeSync(batch);
+                        CascadeBot.LOGGER.info("Saved {}/{} guilds", saved.addAndGet(batch.size()), total);
+                    } catch (RuntimeException e) {
+                        failed.addAndGet(batch.size());
+                        CascadeBot.LOGGER.error("Failed to save {} guilds!", batch.size(), e);
+                        requeue(batch);
+                    } finally {
+                        finishWrites(batch);
+                    }
+                });
+            }
+
+            executor.shutdown();
+            boolean finished = false;
+            try {
+                finished = executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Metrics.INS.guildSaveFlushTime.observe((System.nanoTime() - startTime) / 1e9);
+
+            if (!finished) {
+                executor.shutdownNow();
+                CascadeBot.LOGGER.error("Guild flush deadline reached, only {}/{} guilds were saved ({} failed)", saved.get(), total, failed.get());
+                return false;
+            }
+            if (failed.get() > 0) {
+                CascadeBot.LOGGER.error("Saved {}/{} guilds, {} failed to save", saved.get(), total, failed.get());
+                return false;
+            }
+            return true;
+        } finally {
+            executor.shutdownNow();
+            if (acquired) flushLock.release();
+        }
+    }
+
+    private static List<List<GuildDataWrite>> drainPendingWrites() {
+        int batchSize = Math.max(1, Config.INS.getGuildSaveBatchSize());
+        List<List<GuildDataWrite>> batches = new ArrayList<>();
+        List<GuildDataWrite> batch = new ArrayList<>();
+        for (Long id : pendingWrites.keySet()) {
+            GuildData data = pendingWrites.get(id);
+            if (data == null) continue;
+            // The data is in flight before it stops being pending, so the cache loader can always find it
+            inFlightWrites.put(id, data);
+            pendingWrites.remove(id, data);
+            List<String> paths = data.drainDirtyPaths();
+            if (paths.isEmpty()) {
+                inFlightWrites.remove(id, data);
+                continue;
+            }
+            batch.add(new GuildDataWrite(id, data, paths));
+            if (batch.size() == batchSize) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) batches.add(batch);
+        for (List<GuildDataWrite> drained : batches) {
+            Metrics.INS.guildSaveBatchSize.observe(drained.size());
+        }
+        Metrics.INS.guildSavesPending.set(pendingWrites.size());
+        return batches;
+    }
+
+    private static void requeue(List<GuildDataWrite> batch) {
+        for (GuildDataWrite write : batch) {
+            // Writing the same paths again is harmless so the whole batch is retried even if only part of it failed
+            write.getData().markDirty(write.getPaths());
+            pendingWrites.putIfAbsent(write.getId(), write.getData());
+        }
+        Metrics.INS.guildSavesPending.set(pendingWrites.size());
+    }
+
+    // Called once the database has acknowledged or failed the writes, failed writes must be requeued before this
+    private static void finishWrites(List<GuildDataWrite> batch) {
+        for (GuildDataWrite write : batch) {
+            inFlightWrites.remove(write.getId(), write.getData());
+        }
+    }
+
+    // Gets guild data that is newer than what's in the database, as it is waiting for a flush or still being written
+    private static GuildData getUnsavedData(long id) {
+        GuildData data = pendingWrites.get(id);
+        return data != null ? data : inFlightWrites.get(id);
+    }
+
+    /**
+     * Loads the guild data for guilds that aren't cached yet using batched asynchronous queries, so the first command
+     * in each guild doesn't have to wait for the database. Guilds without any data are skipped and created by the
+     * cache loader when they are first used.
+     *
+     * @param ids         The IDs of the guilds to load.
+     * @param batchSize   The number of guilds to load in each query.
+     * @param concurrency The number of queries to run at the same time.
+     */
+    public static void preload(Collection<Long> ids, int batchSize, int concurrency) {
+        List<Long> toLoad = new ArrayList<>();
+        for (Long id : ids) {
+            if (!guilds.asMap().containsKey(id) && getUnsavedData(id) == null) toLoad.add(id);
+        }
+        if (toLoad.isEmpty()) return;
+
+        Queue<List<Long>> batches = new ConcurrentLinkedQueue<>(Lists.partition(toLoad, Math.max(1, batchSize)));
+        long startTime = System.currentTimeMillis();
+        AtomicInteger loaded = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger(Math.min(Math.max(1, concurrency), batches.size()));
+        Runnable onFinished = () -> CascadeBot.LOGGER.info("Preloaded {} of {} guilds in {}ms", loaded.get(), toLoad.size(), System.currentTimeMillis() - startTime);
+        // Each worker loads one batch at a time and starts the next batch when it finishes, which limits the concurrency
+        for (int i = running.get(); i > 0; i--) {
+            preloadNextBatch(batches, loaded, running, onFinished);
+        }
+    }
+
+    /**
+     * Adds guild data to the cache if the guild isn't already cached or being loaded. Anything that has been loaded
+     * in the meantime is newer than the given data, so it is kept instead.
+     *
+     * @param data The guild data to cache.
+     * @return Whether the guild data was added.
+     */
+    public static boolean cacheIfAbsent(GuildData data) {
+        if (getUnsavedData(data.getGuildID()) != null) return false;
+        if (guilds.asMap().putIfAbsent(data.getGuildID(), CompletableFuture.completedFuture(data)) == null) {
+            PrefixManager.update(data.getGuildID(), data.getSettings());
+            return true;
+        }
+        return false;
     }
 
+    private static void preloadNextBatch(Queue<List<Long>> batches, AtomicInteger loaded, AtomicInteger running, Runnable onFinished) {
+        List<Long> batch = batches.poll();
+        if (batch == null) {
+            if (running.decrementAndGet() == 0) onFinished.run();
+            return;
+        }
+        try {
+            CascadeBot.INS.getGuildDataRepository().findAll(batch).whenComplete((result, throwable) -> {
+                if (throwable != null) {
+                    CascadeBot.LOGGER.warn("Failed to preload {} guilds", batch.size(), throwable);
+                } else {
+                    for (GuildData data : result) {
+                        if (cacheIfAbsent(data)) loaded.incrementAndGet();
+                    }
+                }
+                preloadNextBatch(batches, loaded, running, onFinished);
+            });
+        } catch (RuntimeException e) {
+            CascadeBot.LOGGER.warn("Failed to preload {} guilds", batch.size(), e);
+            preloadNextBatch(batches, loaded, running, onFinished);
+        }
+    }
+
+    /**
+     * Drops the cached copy of a guild that has been changed by something else, such as the panel or another
+     * instance of the bot, and starts loading it again if it was cached. Changes written by this instance are
+     * recognised by the state lock matching the cached guild. Guilds with changes that haven't been saved yet are
+     * kept, as only their changed paths are written and throwing them away would lose the changes.
+     *
+     * @param id        The ID of the guild that was changed.
+     * @param stateLock The state lock the guild now has in the database, or null if it was deleted.
+     * @return Whether the cached guild was invalidated.
+     */
+    public static boolean invalidateChanged(long id, UUID stateLock) {
+        // Prefix records are kept for longer than the guild data so they are dropped even if the guild isn't cached
+        PrefixManager.invalidate(id);
+        if (getUnsavedData(id) != null) return false;
+        CompletableFuture<GuildData> future = guilds.getIfPresent(id);
+        if (future == null) return false;
+        GuildData data = future.getNow(null);
+        if (data != null && (data.isDirty() || (stateLock != null && stateLock.equals(data.getStateLock())))) {
+            return false;
+        }
+        // Only remove the entry that was checked, not one that replaced it in the meantime
+        if (!guilds.asMap().remove(id, future)) return false;
+        if (data != null) guilds.get(id);
+        return true;
+    }
+
+    /**
+     * Weighs changed guilds again, as Caffeine only weighs a guild when it is added to the cache. Guilds that have
+     * been changed since they were last saved are the only ones whose size could have changed.
+     */
+    public static void reweighChangedGuilds() {
+        boolean weighted = guilds.synchronous().policy().eviction().map(Policy.Eviction::isWeighted).orElse(false);
+        for (Map.Entry<Long, CompletableFuture<GuildData>> entry : guilds.asMap().entrySet()) {
+            GuildData data = entry.getValue().getNow(null);
+            if (data == null || !data.isDirty()) continue;
+            if (weighted) {
+                // Putting the same future back doesn't replace the guild, it only updates its weight
+                guilds.put(entry.getKey(), entry.getValue());
+            } else {
+                // There's no weigher so just update the estimate for the metrics
+                data.estimateSize();
+            }
+        }
+    }
+
+    /**
+     * Gets the guild data for a guild, blocking until it is loaded if it isn't cached. Code running on the JDA event
+     * threads should use {@link #getGuildDataAsync(long)} instead.
+     *
+     * @param id The ID of the guild.
+     * @return The guild data.
+     */
     public static GuildData getGuildData(long id) {
+        return guilds.synchronous().get(id);
+    }
+
+    /**
+     * Gets the guild data for a guild without blocking. Requests for a guild that is already being loaded share the
+     * same database query.
+     *
+     * @param id The ID of the guild.
+     * @return A future that completes with the guild data, or fails if it couldn't be loaded in time.
+     */
+    public static CompletableFuture<GuildData> getGuildDataAsync(long id) {
         return guilds.get(id);
     }
 
+    /**
+     * Gets the guild data for a guild if it has finished loading.
+     *
+     * @param id The ID of the guild.
+     * @return The guild data, or null if it isn't loaded.
+     */
+    public static GuildData getGuildDataIfLoaded(long id) {
+        // Doesn't wait for a guild that is still loading, unlike the synchronous view of the cache
+        CompletableFuture<GuildData> future = guilds.getIfPresent(id);
+        if (future == null || !future.isDone() || future.isCompletedExceptionally()) return null;
+        return future.join();
+    }
+
     public static LoadingCache<Long, GuildData> getGuilds() {
-        return guilds;
+        return guilds.synchronous();
     }
 
 }
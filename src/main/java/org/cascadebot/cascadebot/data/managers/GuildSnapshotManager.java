@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.data.managers;
+
+import com.google.common.collect.Lists;
+import lombok.AllArgsConstructor;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.cascadebot.cascadebot.CascadeBot;
+import org.cascadebot.cascadebot.data.database.DatabaseManager;
+import org.cascadebot.cascadebot.data.objects.GuildData;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Writes the guild cache to a local file so that it can be seeded straight away after a restart, rather than every
+ * guild being loaded from the database again.
+ * <p>
+ * Each entry stores the state lock the guild had in the database when it was written. Entries are only used if the
+ * state lock in the database still matches, so anything that was changed by something else in the meantime is
+ * loaded from the database as normal.
+ */
+public final class GuildSnapshotManager {
+
+    private static final int MAGIC = 0x43424753; // CBGS
+    private static final int VERSION = 1;
+    private static final int VALIDATION_BATCH_SIZE = 1000;
+
+    /**
+     * Writes every cached guild that has been saved to the snapshot file. Guilds with unsaved changes are skipped
+     * as their state lock doesn't match the database yet.
+     *
+     * @param file The snapshot file.
+     * @return The number of guilds written.
+     * @throws IOException If the snapshot couldn't be written.
+     */
+    public static int write(Path file) throws IOException {
+        long startTime = System.currentTimeMillis();
+        Codec<GuildData> codec = DatabaseManager.SNAPSHOT_GUILD_CODEC;
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+        int count = 0;
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            for (GuildData data : GuildDataManager.getGuilds().asMap().values()) {
+                if (data.isDirty()) continue;
+                // The snapshot codec doesn't run the pre-save hook, so the cached data isn't changed by encoding it
+                UUID stateLock = data.getStateLock();
+                BasicOutputBuffer buffer = new BasicOutputBuffer();
+                codec.encode(new BsonBinaryWriter(buffer), data, EncoderContext.builder().build());
+
+                output.writeLong(data.getGuildID());
+                output.writeLong(stateLock.getMostSignificantBits());
+                output.writeLong(stateLock.getLeastSignificantBits());
+                output.writeInt(buffer.getSize());
+                buffer.pipe(output);
+                count++;
+            }
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        CascadeBot.LOGGER.info("Wrote {} guilds to the snapshot in {}ms", count, System.currentTimeMillis() - startTime);
+        return count;
+    }
+
+    /**
+     * Reads the snapshot file and adds every guild whose state lock still matches the database to the guild cache.
+     *
+     * @param file The snapshot file.
+     * @return The number of guilds added to the cache.
+     * @throws IOException If the snapshot couldn't be read.
+     */
+    public static int load(Path file) throws IOException {
+        if (!Files.exists(file)) return 0;
+        long startTime = System.currentTimeMillis();
+
+        Map<Long, SnapshotEntry> entries = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                CascadeBot.LOGGER.warn("The guild snapshot is too large to load, ignoring it!");
+                return 0;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                CascadeBot.LOGGER.warn("The guild snapshot is in an unknown format, ignoring it!");
+                return 0;
+            }
+            while (buffer.remaining() >= 28) {
+                long guildId = buffer.getLong();
+                UUID stateLock = new UUID(buffer.getLong(), buffer.getLong());
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    CascadeBot.LOGGER.warn("The guild snapshot is truncated, only using the complete entries");
+                    break;
+                }
+                ByteBuffer document = buffer.slice();
+                document.limit(length);
+                buffer.position(buffer.position() + length);
+                entries.put(guildId, new SnapshotEntry(stateLock, document));
+            }
+        }
+
+        int loaded = 0;
+        Codec<GuildData> codec = DatabaseManager.CODEC_REGISTRY.get(GuildData.class);
+        for (List<Long> batch : Lists.partition(new ArrayList<>(entries.keySet()), VALIDATION_BATCH_SIZE)) {
+            Map<Long, UUID> stateLocks = CascadeBot.INS.getGuildDataRepository().findStateLocks(batch);
+            for (Map.Entry<Long, UUID> stateLock : stateLocks.entrySet()) {
+                SnapshotEntry entry = entries.get(stateLock.getKey());
+                if (entry == null || !entry.stateLock.equals(stateLock.getValue())) continue;
+                // Only decode the guilds that are going to be used
+                GuildData data = codec.decode(new BsonBinaryReader(entry.document), DecoderContext.builder().build());
+                data.restoreStateLock(entry.stateLock);
+                if (GuildDataManager.cacheIfAbsent(data)) loaded++;
+            }
+        }
+
+        CascadeBot.LOGGER.info("Loaded {} of {} guilds from the snapshot in {}ms", loaded, entries.size(), System.currentTimeMillis() - startTime);
+        return loaded;
+    }
+
+    @AllArgsConstructor
+    private static class SnapshotEntry {
+
+        private final UUID stateLock;
+        private final ByteBuffer document;
+
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.data.managers;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.bson.Document;
+import org.cascadebot.cascadebot.CascadeBot;
+import org.cascadebot.cascadebot.data.Config;
+import org.cascadebot.cascadebot.data.objects.GuildData;
+import org.cascadebot.cascadebot.data.objects.GuildSettingsCore;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a small record of each guild's prefix settings so that messages which can never be commands
+ * can be discarded without loading the full {@link GuildData} for the guild.
+ * <p>
+ * The records are loaded without blocking, so the check can be made from the event threads. They are refreshed
+ * whenever the guild data is loaded and dropped when it leaves the cache, and they never live longer than the guild
+ * data would, so a prefix that was changed outside of the bot is picked up even if the change isn't watched.
+ */
+public final class PrefixManager {
+
+    private static AsyncLoadingCache<Long, GuildPrefix> prefixes = Caffeine.newBuilder()
+            // Messages that are rejected keep reading the record, so it has to expire after it was written
+            .expireAfterWrite(GuildDataManager.GUILD_TTL_MINUTES, TimeUnit.MINUTES)
+            .recordStats()
+            .buildAsync((id, executor) -> loadPrefix(id));
+
+    private static CompletableFuture<GuildPrefix> loadPrefix(long id) {
+        // If the guild is already cached there is no need to go to the database
+        GuildData cachedData = GuildDataManager.getGuildDataIfLoaded(id);
+        if (cachedData != null) {
+            return CompletableFuture.completedFuture(GuildPrefix.of(cachedData.getSettings()));
+        }
+
+        return CascadeBot.INS.getGuildDataRepository()
+                .findFields(id, "guildSettings.prefix", "guildSettings.mentionPrefix")
+                .thenApply(PrefixManager::readPrefix)
+                // A failed load isn't cached so the next message for the guild tries again
+                .orTimeout(Config.INS.getGuildLoadTimeout(), TimeUnit.SECONDS);
+    }
+
+    private static GuildPrefix readPrefix(Document document) {
+        Document settings = document == null ? null : document.get("guildSettings", Document.class);
+        if (settings == null) {
+            // The guild doesn't have any data yet so it will be using the defaults
+            return new GuildPrefix(Config.INS.getDefaultPrefix(), false);
+        }
+
+        String prefix = settings.getString("prefix");
+        Boolean mentionPrefix = settings.getBoolean("mentionPrefix");
+        return new GuildPrefix(prefix == null ? Config.INS.getDefaultPrefix() : prefix, mentionPrefix != null && mentionPrefix);
+    }
+
+    /**
+     * Checks whether a message could possibly be a command in the specified guild. If this completes with false, the
+     * message definitely isn't a command and the guild data doesn't need to be loaded.
+     *
+     * @param guildId     The ID of the guild the message was sent in.
+     * @param message     The raw content of the message.
+     * @param selfMention The mention string of the bot user.
+     * @return A future that completes with whether the message could be a command. This is already complete if the
+     * guild's prefix is cached, otherwise it completes once the prefix has loaded.
+     */
+    public static CompletableFuture<Boolean> couldBeCommand(long guildId, String message, String selfMention) {
+        return prefixes.get(guildId).thenApply(prefix -> prefix.couldBeCommand(message, selfMention));
+    }
+
+    /**
+     * Updates the stored prefix record for a guild. This should be called whenever the prefix or
+     * mention prefix setting is changed so that the pre-filter doesn't drop valid commands.
+     *
+     * @param guildId  The ID of the guild to update.
+     * @param settings The settings to take the prefix information from.
+     */
+    public static void update(long guildId, GuildSettingsCore settings) {
+        prefixes.put(guildId, CompletableFuture.completedFuture(GuildPrefix.of(settings)));
+    }
+
+    public static void invalidate(long guildId) {
+        prefixes.synchronous().invalidate(guildId);
+    }
+
+    public static LoadingCache<Long, GuildPrefix> getPrefixes() {
+        return prefixes.synchronous();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class GuildPrefix {
+
+        private final String prefix;
+        private final boolean mentionPrefix;
+
+        static GuildPrefix of(GuildSettingsCore settings) {
+            return new GuildPrefix(settings.getPrefix(), settings.isMentionPrefix());
+        }
+
+        public boolean couldBeCommand(String message, String selfMention) {
+            if (message.startsWith(prefix)) return true;
+            if (mentionPrefix && message.startsWith(selfMention)) return true;
+            // The default prefix can always be used to find out the current prefix
+            String defaultPrefix = Config.INS.getDefaultPrefix();
+            return message.startsWith(defaultPrefix) && message.startsWith("prefix", defaultPrefix.length());
+        }
+
+    }
+
+}
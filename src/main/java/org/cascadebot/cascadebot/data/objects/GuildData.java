@@ -5,24 +5,37 @@
 
 package org.cascadebot.cascadebot.data.objects;
 
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 import de.bild.codec.annotations.Id;
 import de.bild.codec.annotations.PreSave;
 import de.bild.codec.annotations.Transient;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
-import lombok.Setter;
 import net.dv8tion.jda.core.entities.Message;
 import net.dv8tion.jda.core.entities.MessageChannel;
+import org.bson.BsonReader;
+import org.bson.BsonReaderMark;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.UuidCodec;
+import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.codecs.pojo.annotations.BsonDiscriminator;
 import org.bson.codecs.pojo.annotations.BsonIgnore;
 import org.cascadebot.cascadebot.CascadeBot;
@@ -30,6 +43,9 @@ import org.cascadebot.cascadebot.commandmeta.ICommandMain;
 import org.cascadebot.cascadebot.commandmeta.Module;
 import org.cascadebot.cascadebot.commandmeta.ModuleFlag;
 import org.cascadebot.cascadebot.data.Config;
+import org.cascadebot.cascadebot.data.database.BsonCodecUtils;
+import org.cascadebot.cascadebot.data.database.DirtyTracker;
+import org.cascadebot.cascadebot.utils.SizeUtils;
 import org.cascadebot.cascadebot.utils.buttons.ButtonGroup;
 import org.cascadebot.cascadebot.utils.buttons.ButtonsCache;
 import org.cascadebot.cascadebot.utils.pagination.PageCache;
@@ -50,7 +66,6 @@ public class GuildData {
     private ConcurrentHashMap<Class<? extends ICommandMain>, GuildCommandInfo> commandInfo = new ConcurrentHashMap<>();
     private Set<Flag> enabledFlags = Sets.newConcurrentHashSet();
 
-    @Setter
     private String prefix = Config.INS.getDefaultPrefix();
 
     private ConcurrentHashMap<String, Tag> tags = new ConcurrentHashMap<>();
@@ -75,6 +90,26 @@ public class GuildData {
     @Transient
     private PageCache pageCache = new PageCache();
 
+    @Transient
+    @Getter(AccessLevel.NONE)
+    private volatile Map<String, ICommandMain> commandIndex;
+
+    // The last result of estimateSize, kept so it can be read without estimating the size again
+    @Transient
+    private volatile int estimatedSize;
+
+    // Command info that was decoded before the commands were loaded, keyed by the default name of the command. These
+    // are moved into the command info the first time it is used once the commands have been loaded, anything left
+    // over is for a command that doesn't exist any more and is kept so it is still saved.
+    @Transient
+    @Getter(AccessLevel.NONE)
+    private Map<String, GuildCommandInfo> unresolvedCommandInfo = new ConcurrentHashMap<>();
+
+    // Paths of this document that have changed since it was last saved
+    @Transient
+    @Getter(AccessLevel.NONE)
+    private DirtyTracker dirtyTracker = new DirtyTracker();
+
     //endregion
 
     @PreSave
@@ -82,15 +117,27 @@ public class GuildData {
         this.stateLock = UUID.randomUUID();
     }
 
+    /**
+     * Sets the state lock to the one the database had when this copy of the data was made, used when the data is
+     * loaded from somewhere other than the database.
+     *
+     * @param stateLock The state lock to restore.
+     */
+    public void restoreStateLock(UUID stateLock) {
+        this.stateLock = stateLock;
+    }
+
     public GuildData(long guildID) {
         this.guildID = guildID;
     }
 
     //region Commands
     public void enableCommand(ICommandMain command) {
+        resolveCommandInfo();
         if (command.getModule().isFlagEnabled(ModuleFlag.PRIVATE)) return;
-        if (commandInfo.contains(command.getClass())) {
+        if (commandInfo.containsKey(command.getClass())) {
             commandInfo.get(command.getClass()).setEnabled(true);
+            dirtyTracker.markDirty("commandInfo");
         }
     }
 
@@ -102,8 +149,10 @@ public class GuildData {
     }
 
     public void disableCommand(ICommandMain command) {
+        resolveCommandInfo();
         if (command.getModule().isFlagEnabled(ModuleFlag.PRIVATE)) return;
         commandInfo.computeIfAbsent(command.getClass(), aClass -> new GuildCommandInfo(command)).setEnabled(false);
+        dirtyTracker.markDirty("commandInfo");
     }
 
     public void disableCommandByModule(Module module) {
@@ -114,13 +163,15 @@ public class GuildData {
     }
 
     public boolean isCommandEnabled(ICommandMain command) {
-        if (commandInfo.contains(command.getClass())) {
+        resolveCommandInfo();
+        if (commandInfo.containsKey(command.getClass())) {
             return commandInfo.get(command.getClass()).isEnabled();
         }
         return true;
     }
 
     public boolean isTypeEnabled(Module type) {
+        resolveCommandInfo();
         boolean enabled = true;
         for (ICommandMain command : CascadeBot.INS.getCommandManager().getCommandsByModule(type)) {
             enabled &= commandInfo.get(command.getClass()).isEnabled();
@@ -129,7 +180,8 @@ public class GuildData {
     }
 
     public String getCommandName(ICommandMain command) {
-        if (commandInfo.contains(command.getClass())) {
+        resolveCommandInfo();
+        if (commandInfo.containsKey(command.getClass())) {
             return commandInfo.get(command.getClass()).getCommand();
         }
         return command.command();
@@ -137,10 +189,13 @@ public class GuildData {
 
     public void setCommandName(ICommandMain command, String commandName) {
         getGuildCommandInfo(command).setCommand(commandName);
+        dirtyTracker.markDirty("commandInfo");
+        invalidateCommandIndex();
     }
 
     public Set<String> getCommandAliases(ICommandMain command) {
-        if (commandInfo.contains(command.getClass())) {
+        resolveCommandInfo();
+        if (commandInfo.containsKey(command.getClass())) {
             return getGuildCommandInfo(command).getAliases();
         }
         return command.getGlobalAliases();
@@ -148,33 +203,134 @@ public class GuildData {
 
     public boolean addAlias(ICommandMain command, String alias) {
         boolean success = getGuildCommandInfo(command).addAlias(alias);
+        if (success) dirtyTracker.markDirty("commandInfo");
+        invalidateCommandIndex();
         return success;
     }
 
     public boolean removeAlias(ICommandMain command, String alias) {
         boolean success = getGuildCommandInfo(command).removeAlias(alias);
+        if (success) dirtyTracker.markDirty("commandInfo");
+        invalidateCommandIndex();
         return success;
     }
 
+    /**
+     * Gets the lookup index of triggers (command names and aliases) to commands for this guild.
+     * The index is built lazily with the provided builder and is rebuilt after any change to the
+     * command names or aliases.
+     *
+     * @param indexBuilder Builds a new index from this guild data if there isn't a valid one.
+     * @return The trigger index for this guild.
+     */
+    public Map<String, ICommandMain> getCommandIndex(Function<GuildData, Map<String, ICommandMain>> indexBuilder) {
+        Map<String, ICommandMain> index = commandIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = commandIndex;
+                if (index == null) {
+                    index = indexBuilder.apply(this);
+                    commandIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    private synchronized void invalidateCommandIndex() {
+        commandIndex = null;
+    }
+
     @BsonIgnore
     private GuildCommandInfo getGuildCommandInfo(ICommandMain command) {
+        resolveCommandInfo();
         return commandInfo.computeIfAbsent(command.getClass(), aClass -> new GuildCommandInfo(command));
     }
 
+    private void resolveCommandInfo() {
+        if (unresolvedCommandInfo.isEmpty() || CascadeBot.INS == null || CascadeBot.INS.getCommandManager() == null) return;
+        unresolvedCommandInfo.entrySet().removeIf(entry -> {
+            ICommandMain command = CascadeBot.INS.getCommandManager().getCommandByDefault(entry.getKey());
+            if (command == null) return false;
+            commandInfo.putIfAbsent(command.getClass(), entry.getValue());
+            return true;
+        });
+    }
+
     public Map<Class<? extends ICommandMain>, GuildCommandInfo> getCommandInfo() {
+        resolveCommandInfo();
         return Collections.unmodifiableMap(commandInfo);
     }
 
     //endregion
 
     public boolean enableFlag(Flag flag) {
-        return this.enabledFlags.add(flag);
+        boolean enabled = this.enabledFlags.add(flag);
+        if (enabled) dirtyTracker.markDirty("enabledFlags");
+        return enabled;
     }
 
     public boolean disableFlag(Flag flag) {
-        return this.enabledFlags.remove(flag);
+        boolean disabled = this.enabledFlags.remove(flag);
+        if (disabled) dirtyTracker.markDirty("enabledFlags");
+        return disabled;
+    }
+
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+        dirtyTracker.markDirty("prefix");
     }
 
+    /**
+     * Estimates the heap retained by this guild data, which is used to weigh it in the guild cache. Transient caches
+     * such as the buttons and pages aren't included.
+     *
+     * @return The estimated size in bytes.
+     */
+    public int estimateSize() {
+        long size = 1024 + SizeUtils.ofString(prefix) + (long) enabledFlags.size() * SizeUtils.ENTRY_SIZE;
+        for (GuildCommandInfo info : Iterables.concat(commandInfo.values(), unresolvedCommandInfo.values())) {
+            size += SizeUtils.ENTRY_SIZE + SizeUtils.OBJECT_SIZE * 2 + SizeUtils.ofString(info.getCommand())
+                    + SizeUtils.ofString(info.getDefaultCommand()) + SizeUtils.ofStrings(info.getAliases());
+        }
+        size += guildSettings.estimateSize();
+        size += guildPermissions.estimateSize();
+        int estimate = (int) Math.min(Integer.MAX_VALUE, size);
+        estimatedSize = estimate;
+        return estimate;
+    }
+
+    //region Change tracking
+
+    /**
+     * Removes and returns every path of this document, including the settings and permissions, that has changed
+     * since the last save. The state lock is always included as it changes every time the data is saved.
+     *
+     * @return The dirty paths, or an empty list if nothing has changed.
+     */
+    public List<String> drainDirtyPaths() {
+        List<String> paths = new ArrayList<>(dirtyTracker.drain(null));
+        paths.addAll(guildSettings.getDirtyTracker().drain("guildSettings"));
+        paths.addAll(guildPermissions.getDirtyTracker().drain("guildPermissions"));
+        if (!paths.isEmpty()) paths.add("stateLock");
+        return paths;
+    }
+
+    /**
+     * Marks paths as dirty again, used when a save fails so the changes are written by the next save.
+     *
+     * @param paths The full paths that need to be saved.
+     */
+    public void markDirty(Collection<String> paths) {
+        dirtyTracker.markDirty(paths);
+    }
+
+    public boolean isDirty() {
+        return dirtyTracker.isDirty() || guildSettings.getDirtyTracker().isDirty() || guildPermissions.getDirtyTracker().isDirty();
+    }
+
+    //endregion
+
     public boolean isFlagEnabled(Flag flag) {
         return this.enabledFlags.contains(flag);
     }
@@ -193,9 +349,232 @@ public class GuildData {
     }
 
     public Collection<GuildCommandInfo> getGuildCommandInfos() {
+        resolveCommandInfo();
         return Collections.unmodifiableCollection(commandInfo.values());
     }
 
     //endregion
 
+    /**
+     * Encodes and decodes guild data without reflection. Command info is keyed by the default name of the command
+     * rather than its class, so it doesn't change if the command class is moved or renamed.
+     * <p>
+     * Documents written by the old reflection based codec don't have the format field. They are decoded with that
+     * codec instead and every field is marked as dirty, so the whole document is rewritten in the new format by the
+     * next save.
+     */
+    public static class BsonCodec implements Codec<GuildData> {
+
+        private static final String FORMAT_FIELD = "dataFormat";
+        private static final int FORMAT = 2;
+        // Every stored field except the ID and the state lock, which is always written with the dirty paths
+        private static final List<String> FIELDS = List.of(FORMAT_FIELD, "creationDate", "commandInfo", "enabledFlags",
+                "prefix", "tags", "guildSettings", "guildPermissions");
+
+        private static final UuidCodec UUID_CODEC = new UuidCodec();
+        private static final Tag.BsonCodec TAG_CODEC = new Tag.BsonCodec();
+        private static final GuildSettingsCore.BsonCodec SETTINGS_CODEC = new GuildSettingsCore.BsonCodec();
+        private static final GuildPermissions.BsonCodec PERMISSIONS_CODEC = new GuildPermissions.BsonCodec();
+
+        private final CodecRegistry legacyRegistry;
+        private final boolean preSave;
+        private volatile Codec<GuildData> legacyCodec;
+
+        /**
+         * @param legacyRegistry The registry to get the old codec from when decoding documents in the old format.
+         */
+        public BsonCodec(CodecRegistry legacyRegistry) {
+            this(legacyRegistry, true);
+        }
+
+        /**
+         * @param legacyRegistry The registry to get the old codec from when decoding documents in the old format.
+         * @param preSave        Whether to run the pre-save hook when encoding, which changes the state lock. This
+         *                       should only be false when the data is encoded for something other than saving it to
+         *                       the database, in which case the data isn't changed at all by encoding it.
+         */
+        public BsonCodec(CodecRegistry legacyRegistry, boolean preSave) {
+            this.legacyRegistry = legacyRegistry;
+            this.preSave = preSave;
+        }
+
+        @Override
+        public void encode(BsonWriter writer, GuildData data, EncoderContext encoderContext) {
+            if (preSave) data.preSave();
+            writer.writeStartDocument();
+            writer.writeInt64("_id", data.guildID);
+            writer.writeInt32(FORMAT_FIELD, FORMAT);
+            writer.writeName("stateLock");
+            encoderContext.encodeWithChildContext(UUID_CODEC, writer, data.stateLock);
+            writer.writeDateTime("creationDate", data.creationDate.getTime());
+
+            writer.writeStartDocument("commandInfo");
+            Set<String> written = new HashSet<>();
+            for (GuildCommandInfo info : data.commandInfo.values()) {
+                if (info.getDefaultCommand() == null || !written.add(info.getDefaultCommand())) continue;
+                writeCommandInfo(writer, info.getDefaultCommand(), info);
+            }
+            for (Map.Entry<String, GuildCommandInfo> entry : data.unresolvedCommandInfo.entrySet()) {
+                if (!written.add(entry.getKey())) continue;
+                writeCommandInfo(writer, entry.getKey(), entry.getValue());
+            }
+            writer.writeEndDocument();
+
+            BsonCodecUtils.writeEnums(writer, "enabledFlags", data.enabledFlags);
+            BsonCodecUtils.writeString(writer, "prefix", data.prefix);
+
+            writer.writeStartDocument("tags");
+            for (Map.Entry<String, Tag> entry : data.tags.entrySet()) {
+                writer.writeName(entry.getKey());
+                encoderContext.encodeWithChildContext(TAG_CODEC, writer, entry.getValue());
+            }
+            writer.writeEndDocument();
+
+            writer.writeName("guildSettings");
+            encoderContext.encodeWithChildContext(SETTINGS_CODEC, writer, data.guildSettings);
+            writer.writeName("guildPermissions");
+            encoderContext.encodeWithChildContext(PERMISSIONS_CODEC, writer, data.guildPermissions);
+            writer.writeEndDocument();
+        }
+
+        @Override
+        public GuildData decode(BsonReader reader, DecoderContext decoderContext) {
+            BsonReaderMark mark = reader.getMark();
+            boolean currentFormat = isCurrentFormat(reader);
+            mark.reset();
+            if (!currentFormat) {
+                GuildData data = getLegacyCodec().decode(reader, decoderContext);
+                data.markDirty(FIELDS);
+                return data;
+            }
+
+            GuildData data = new GuildData();
+            reader.readStartDocument();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                switch (reader.readName()) {
+                    case "_id":
+                        data.guildID = reader.getCurrentBsonType() == BsonType.INT32 ? reader.readInt32() : reader.readInt64();
+                        break;
+                    case "stateLock":
+                        if (reader.getCurrentBsonType() == BsonType.BINARY) {
+                            data.stateLock = decoderContext.decodeWithChildContext(UUID_CODEC, reader);
+                        } else {
+                            reader.skipValue();
+                        }
+                        break;
+                    case "creationDate":
+                        if (reader.getCurrentBsonType() == BsonType.DATE_TIME) {
+                            data.creationDate = new Date(reader.readDateTime());
+                        } else {
+                            reader.skipValue();
+                        }
+                        break;
+                    case "commandInfo":
+                        readCommandInfo(reader, data);
+                        break;
+                    case "enabledFlags":
+                        BsonCodecUtils.readEnums(reader, Flag.class, data.enabledFlags);
+                        break;
+                    case "prefix":
+                        String prefix = BsonCodecUtils.readString(reader);
+                        if (prefix != null) data.prefix = prefix;
+                        break;
+                    case "tags":
+                        reader.readStartDocument();
+                        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                            data.tags.put(reader.readName(), decoderContext.decodeWithChildContext(TAG_CODEC, reader));
+                        }
+                        reader.readEndDocument();
+                        break;
+                    case "guildSettings":
+                        data.guildSettings = decoderContext.decodeWithChildContext(SETTINGS_CODEC, reader);
+                        break;
+                    case "guildPermissions":
+                        data.guildPermissions = decoderContext.decodeWithChildContext(PERMISSIONS_CODEC, reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.readEndDocument();
+            return data;
+        }
+
+        private void writeCommandInfo(BsonWriter writer, String id, GuildCommandInfo info) {
+            writer.writeName(id);
+            writer.writeStartDocument();
+            writer.writeBoolean("enabled", info.isEnabled());
+            writer.writeBoolean("forceDefault", info.isForceDefault());
+            BsonCodecUtils.writeString(writer, "command", info.getCommand());
+            BsonCodecUtils.writeString(writer, "defaultCommand", info.getDefaultCommand());
+            BsonCodecUtils.writeStrings(writer, "aliases", info.getAliases() == null ? Set.of() : info.getAliases());
+            writer.writeEndDocument();
+        }
+
+        // Only looks at the names of the top level fields, the values are skipped without being decoded
+        private boolean isCurrentFormat(BsonReader reader) {
+            reader.readStartDocument();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                if (reader.readName().equals(FORMAT_FIELD)) return true;
+                reader.skipValue();
+            }
+            return false;
+        }
+
+        private void readCommandInfo(BsonReader reader, GuildData data) {
+            reader.readStartDocument();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                String id = reader.readName();
+                boolean enabled = true;
+                boolean forceDefault = false;
+                String commandName = null;
+                String defaultCommand = id;
+                Set<String> aliases = Sets.newConcurrentHashSet();
+                reader.readStartDocument();
+                while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                    switch (reader.readName()) {
+                        case "enabled":
+                            enabled = BsonCodecUtils.readBoolean(reader, true);
+                            break;
+                        case "forceDefault":
+                            forceDefault = BsonCodecUtils.readBoolean(reader, false);
+                            break;
+                        case "command":
+                            commandName = BsonCodecUtils.readString(reader);
+                            break;
+                        case "defaultCommand":
+                            String storedDefault = BsonCodecUtils.readString(reader);
+                            if (storedDefault != null) defaultCommand = storedDefault;
+                            break;
+                        case "aliases":
+                            BsonCodecUtils.readStrings(reader, aliases);
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.readEndDocument();
+                // The commands might not have been loaded yet, so these are matched to their commands when they're used
+                data.unresolvedCommandInfo.put(id, new GuildCommandInfo(enabled, forceDefault,
+                        commandName == null ? defaultCommand : commandName, defaultCommand, aliases));
+            }
+            reader.readEndDocument();
+        }
+
+        private Codec<GuildData> getLegacyCodec() {
+            Codec<GuildData> codec = legacyCodec;
+            if (codec == null) {
+                codec = legacyRegistry.get(GuildData.class);
+                legacyCodec = codec;
+            }
+            return codec;
+        }
+
+        @Override
+        public Class<GuildData> getEncoderClass() {
+            return GuildData.class;
+        }
+
+    }
+
 }
@@ -5,40 +5,73 @@
 
 package org.cascadebot.cascadebot.data.objects;
 
+import de.bild.codec.annotations.Transient;
 import lombok.Getter;
-import lombok.Setter;
 import net.dv8tion.jda.core.Permission;
 import net.dv8tion.jda.core.entities.Channel;
 import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.Role;
 import net.dv8tion.jda.core.utils.Checks;
+import org.apache.commons.lang3.EnumUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
 import org.cascadebot.cascadebot.CascadeBot;
 import org.cascadebot.cascadebot.Environment;
+import org.cascadebot.cascadebot.data.database.DirtyTracker;
 import org.cascadebot.cascadebot.permissions.CascadePermission;
+import org.cascadebot.cascadebot.permissions.PermissionsManager;
 import org.cascadebot.cascadebot.permissions.Security;
+import org.cascadebot.cascadebot.permissions.objects.EffectivePermissions;
 import org.cascadebot.cascadebot.permissions.objects.Group;
 import org.cascadebot.cascadebot.permissions.objects.PermissionAction;
+import org.cascadebot.cascadebot.permissions.objects.PermissionHolder;
 import org.cascadebot.cascadebot.permissions.objects.Result;
 import org.cascadebot.cascadebot.permissions.objects.User;
+import org.cascadebot.cascadebot.utils.SizeUtils;
 import org.cascadebot.shared.SecurityLevel;
 import spark.utils.CollectionUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 public class GuildPermissions {
 
+    // Generations are unique across all guilds so an old guild data object can never share cached decisions with a new one
+    private static final AtomicLong NEXT_GENERATION = new AtomicLong();
+    // Used when checking the permissions of users that don't have any of their own, this is never added to or saved
+    private static final User EMPTY_USER = new User();
+
     @Getter
-    @Setter
     private PermissionMode mode = PermissionMode.MOST_RESTRICTIVE;
 
     private List<Group> groups = Collections.synchronizedList(new ArrayList<>());
     private Map<Long, User> users = new ConcurrentHashMap<>();
 
+    // Looks up groups by role and user, this is rebuilt whenever groups are changed
+    @Transient
+    private volatile GroupIndex groupIndex;
+
+    // Cached permission decisions are keyed on this, so changing it invalidates all of the decisions for this guild
+    @Transient
+    private volatile long generation;
+
+    // Paths of these permissions that have changed since they were last saved
+    @Transient
+    private DirtyTracker dirtyTracker = new DirtyTracker();
+
     public boolean hasPermission(Member member, CascadePermission permission, GuildSettingsCore settings) {
         return hasPermission(member, null, permission, settings);
     }
@@ -56,6 +89,64 @@ public class GuildPermissions {
         Checks.notNull(member, "member");
         Checks.notNull(permission, "permission");
 
+        return CascadeBot.INS.getPermissionsManager().getDecision(getGeneration(), member, channel, permission,
+                () -> computePermission(member, channel, permission, settings));
+    }
+
+    private Result computePermission(Member member, Channel channel, CascadePermission permission, GuildSettingsCore settings) {
+        Result overrideResult = getOverrideResult(member, settings);
+        if (overrideResult != null) return overrideResult;
+
+        return evaluatePermission(member, channel, permission);
+    }
+
+    // Evaluates a single permission from the member's user and group permissions, without checking the overrides
+    Result evaluatePermission(Member member, Channel channel, CascadePermission permission) {
+        User user = users.getOrDefault(member.getUser().getIdLong(), EMPTY_USER);
+        // Get all user groups that are directly assigned and the groups assigned through roles
+        List<Group> userGroups = getUserGroups(member);
+
+        return evaluatePermission(member, channel, user, userGroups, permission);
+    }
+
+    /**
+     * Evaluates every registered permission for a member at once. The member's security level, groups and guild
+     * level overrides are only resolved once rather than for each permission.
+     *
+     * @param member   The member to evaluate the permissions for.
+     * @param channel  The channel to evaluate Discord permissions in, this can be null.
+     * @param settings The settings of the guild.
+     * @return The result of every registered permission for the member.
+     */
+    public EffectivePermissions evalEffectivePermissions(Member member, Channel channel, GuildSettingsCore settings) {
+        Checks.notNull(member, "member");
+
+        PermissionsManager permissionsManager = CascadeBot.INS.getPermissionsManager();
+        List<CascadePermission> permissions = permissionsManager.getRegisteredPermissions();
+
+        Result overrideResult = getOverrideResult(member, settings);
+        if (overrideResult != null) {
+            Result[] results = new Result[permissions.size()];
+            Arrays.fill(results, overrideResult);
+            return new EffectivePermissions(permissions, permissionsManager.getPermissionOrdinals(), results);
+        }
+
+        return evaluatePermissions(member, channel, permissions, permissionsManager.getPermissionOrdinals());
+    }
+
+    // The bulk version of evaluatePermission(Member, Channel, CascadePermission), so these must always agree
+    EffectivePermissions evaluatePermissions(Member member, Channel channel, List<CascadePermission> permissions, Map<String, Integer> ordinals) {
+        User user = users.getOrDefault(member.getUser().getIdLong(), EMPTY_USER);
+        List<Group> userGroups = getUserGroups(member);
+        Result[] results = new Result[permissions.size()];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = evaluatePermission(member, channel, user, userGroups, permissions.get(i));
+        }
+        return new EffectivePermissions(permissions, ordinals, results);
+    }
+
+    // Gets a result that applies to every permission for this member, or null if the permissions need evaluating
+    private Result getOverrideResult(Member member, GuildSettingsCore settings) {
         // This allows developers and owners to go into guilds and fix problems
         if (Security.isAuthorised(member.getUser().getIdLong(), SecurityLevel.DEVELOPER)) {
             return Result.of(PermissionAction.ALLOW, Result.ResultCause.OFFICIAL, SecurityLevel.DEVELOPER);
@@ -69,11 +160,10 @@ public class GuildPermissions {
         if (member.hasPermission(Permission.ADMINISTRATOR) && settings.isAdminsHaveAllPerms()) {
             return Result.of(PermissionAction.ALLOW, Result.ResultCause.GUILD);
         }
+        return null;
+    }
 
-        User user = users.computeIfAbsent(member.getUser().getIdLong(), id -> new User());
-        // Get all user groups that are directly assigned and the groups assigned through roles
-        List<Group> userGroups = getUserGroups(member);
-
+    private Result evaluatePermission(Member member, Channel channel, User user, List<Group> userGroups, CascadePermission permission) {
         Result result = getDefaultAction(permission);
         Result evaluatedResult = Result.of(PermissionAction.NEUTRAL);
 
@@ -96,6 +186,28 @@ public class GuildPermissions {
         return result;
     }
 
+    private long getGeneration() {
+        long generation = this.generation;
+        if (generation == 0) {
+            synchronized (this) {
+                generation = this.generation;
+                if (generation == 0) {
+                    generation = NEXT_GENERATION.incrementAndGet();
+                    this.generation = generation;
+                }
+            }
+        }
+        return generation;
+    }
+
+    /**
+     * Invalidates all of the cached permission decisions for this guild. This needs to be called whenever anything
+     * that could change the result of a permission check changes, which the mutation methods in this class do already.
+     */
+    public synchronized void clearPermissionCache() {
+        this.generation = NEXT_GENERATION.incrementAndGet();
+    }
+
     private boolean hasDiscordPermissions(Member member, Channel channel, Set<Permission> permissions) {
         if (CollectionUtils.isEmpty(permissions)) return false;
         if (channel != null) {
@@ -159,11 +271,91 @@ public class GuildPermissions {
             }
         } while (ids.contains(group.getId()));
         groups.add(group);
+        dirtyTracker.markDirty("groups");
+        invalidateGroupIndex();
         return group;
     }
 
     public boolean deleteGroup(String id) {
-        return groups.removeIf(group -> group.getId().equals(id));
+        boolean deleted = groups.removeIf(group -> group.getId().equals(id));
+        if (deleted) {
+            dirtyTracker.markDirty("groups");
+            invalidateGroupIndex();
+            clearPermissionCache();
+        }
+        return deleted;
+    }
+
+    public void setMode(PermissionMode mode) {
+        this.mode = mode;
+        dirtyTracker.markDirty("mode");
+        clearPermissionCache();
+    }
+
+    public boolean addPermission(PermissionHolder holder, String permission) {
+        boolean added = holder.addPermission(permission);
+        if (added) {
+            dirtyTracker.markDirty(getHolderPath(holder));
+            clearPermissionCache();
+        }
+        return added;
+    }
+
+    public boolean removePermission(PermissionHolder holder, String permission) {
+        boolean removed = holder.removePermission(permission);
+        if (removed) {
+            dirtyTracker.markDirty(getHolderPath(holder));
+            clearPermissionCache();
+        }
+        return removed;
+    }
+
+    public boolean renameGroup(Group group, String name) {
+        boolean renamed = group.rename(name);
+        if (renamed) {
+            dirtyTracker.markDirty("groups");
+        }
+        return renamed;
+    }
+
+    public boolean linkRole(Group group, long roleId) {
+        boolean linked = group.linkRole(roleId);
+        if (linked) {
+            dirtyTracker.markDirty("groups");
+            invalidateGroupIndex();
+            clearPermissionCache();
+        }
+        return linked;
+    }
+
+    public boolean unlinkRole(Group group, long roleId) {
+        boolean unlinked = group.unlinkRole(roleId);
+        if (unlinked) {
+            dirtyTracker.markDirty("groups");
+            invalidateGroupIndex();
+            clearPermissionCache();
+        }
+        return unlinked;
+    }
+
+    public boolean addUserGroup(User user, Group group) {
+        boolean added = user.addGroup(group);
+        if (added) {
+            dirtyTracker.markDirty(getHolderPath(user));
+            invalidateGroupIndex();
+            clearPermissionCache();
+        }
+        return added;
+    }
+
+    public boolean removeUserGroup(User user, Group group) {
+        boolean removed = user.removeGroup(group);
+        if (removed) {
+            dirtyTracker.markDirty(getHolderPath(user));
+            invalidateGroupIndex();
+            clearPermissionCache();
+        }
+        return removed;
     }
 
     public List<Group> getGroupsByName(String name) {
@@ -187,21 +379,92 @@ public class GuildPermissions {
     }
 
     public User getPermissionUser(Member member) {
-        return users.computeIfAbsent(member.getUser().getIdLong(), id -> new User());
+        return users.computeIfAbsent(member.getUser().getIdLong(), id -> {
+            dirtyTracker.markDirty("users." + id);
+            return new User();
+        });
+    }
+
+    // Groups are stored in a list so any change to a group has to write the whole list
+    private String getHolderPath(PermissionHolder holder) {
+        if (holder instanceof User) {
+            for (Map.Entry<Long, User> entry : users.entrySet()) {
+                if (entry.getValue() == holder) return "users." + entry.getKey();
+            }
+            return "users";
+        }
+        return "groups";
+    }
+
+    long estimateSize() {
+        long size = SizeUtils.OBJECT_SIZE * 4;
+        synchronized (groups) {
+            for (Group group : groups) {
+                size += SizeUtils.ENTRY_SIZE + group.estimateSize();
+            }
+        }
+        for (User user : users.values()) {
+            size += SizeUtils.ENTRY_SIZE + SizeUtils.BOXED_LONG_SIZE + user.estimateSize();
+        }
+        return size;
+    }
+
+    DirtyTracker getDirtyTracker() {
+        return dirtyTracker;
     }
 
     public List<Group> getUserGroups(Member member) {
-        User user = users.computeIfAbsent(member.getUser().getIdLong(), id -> new User());
-        List<Group> userGroups = groups.stream().filter(group -> user.getGroupIds().contains(group.getId())).collect(Collectors.toList());
-
-        // Now I know this is a mess... If you can figure out a better method hit me up 👀
-        // This adds all the groups which have a id representing a role the member has.
-        groups.stream()
-                .filter(group -> group.getRoleIds().stream().anyMatch(id -> member.getRoles().contains(member.getGuild().getRoleById(id))))
-                .forEach(userGroups::add);
+        GroupIndex index = getGroupIndex();
+        List<Group> userGroups = new ArrayList<>();
+
+        // Groups that are directly assigned come first, in hierarchy order
+        int[] directPositions = index.userGroups.get(member.getUser().getIdLong());
+        if (directPositions != null) {
+            for (int position : directPositions) {
+                userGroups.add(index.hierarchy[position]);
+            }
+        }
+
+        // Then the groups assigned through the member's roles, also in hierarchy order
+        if (index.roleGroups.isEmpty()) return userGroups;
+        int[] rolePositions = new int[0];
+        int count = 0;
+        for (Role role : member.getRoles()) {
+            int[] positions = index.roleGroups.get(role.getIdLong());
+            if (positions == null) continue;
+            if (count + positions.length > rolePositions.length) {
+                rolePositions = Arrays.copyOf(rolePositions, Math.max(rolePositions.length * 2, count + positions.length));
+            }
+            System.arraycopy(positions, 0, rolePositions, count, positions.length);
+            count += positions.length;
+        }
+        Arrays.sort(rolePositions, 0, count);
+        for (int i = 0; i < count; i++) {
+            // A group linked to more than one of the member's roles should only be added once
+            if (i > 0 && rolePositions[i] == rolePositions[i - 1]) continue;
+            userGroups.add(index.hierarchy[rolePositions[i]]);
+        }
         return userGroups;
     }
 
+    private GroupIndex getGroupIndex() {
+        GroupIndex index = groupIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = groupIndex;
+                if (index == null) {
+                    index = new GroupIndex(groups, users);
+                    groupIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    private synchronized void invalidateGroupIndex() {
+        groupIndex = null;
+    }
+
     public List<Group> getGroups() {
         return List.copyOf(groups);
     }
@@ -209,6 +472,53 @@ public class GuildPermissions {
     public void moveGroup(Group group, int position) throws IndexOutOfBoundsException {
         groups.remove(group);
         groups.add(position, group);
+        dirtyTracker.markDirty("groups");
+        invalidateGroupIndex();
+        clearPermissionCache();
+    }
+
+    /**
+     * An immutable snapshot of the group hierarchy with lookups from role and user IDs to positions in the hierarchy.
+     */
+    private static class GroupIndex {
+
+        private final Group[] hierarchy;
+        private final Map<Long, int[]> roleGroups;
+        private final Map<Long, int[]> userGroups;
+
+        private GroupIndex(List<Group> groups, Map<Long, User> users) {
+            synchronized (groups) {
+                this.hierarchy = groups.toArray(new Group[0]);
+            }
+
+            Map<String, Integer> positionsById = new HashMap<>();
+            Map<Long, List<Integer>> roleGroups = new HashMap<>();
+            for (int i = 0; i < hierarchy.length; i++) {
+                positionsById.put(hierarchy[i].getId(), i);
+                for (Long roleId : hierarchy[i].getRoleIds()) {
+                    roleGroups.computeIfAbsent(roleId, id -> new ArrayList<>()).add(i);
+                }
+            }
+            this.roleGroups = new HashMap<>();
+            roleGroups.forEach((roleId, positions) -> this.roleGroups.put(roleId, toSortedArray(positions)));
+
+            this.userGroups = new HashMap<>();
+            users.forEach((userId, user) -> {
+                List<Integer> positions = new ArrayList<>();
+                for (String groupId : user.getGroupIds()) {
+                    Integer position = positionsById.get(groupId);
+                    if (position != null) positions.add(position);
+                }
+                if (!positions.isEmpty()) this.userGroups.put(userId, toSortedArray(positions));
+            });
+        }
+
+        private static int[] toSortedArray(List<Integer> positions) {
+            int[] array = positions.stream().mapToInt(Integer::intValue).toArray();
+            Arrays.sort(array);
+            return array;
+        }
+
     }
 
     public enum PermissionMode {
@@ -218,4 +528,83 @@ public class GuildPermissions {
 
     }
 
+    /**
+     * Encodes and decodes guild permissions without reflection. Users are stored in a document keyed by their ID
+     * so that a single user can be written by a partial update.
+     */
+    public static class BsonCodec implements Codec<GuildPermissions> {
+
+        private static final Group.BsonCodec GROUP_CODEC = new Group.BsonCodec();
+        private static final User.BsonCodec USER_CODEC = new User.BsonCodec();
+
+        @Override
+        public void encode(BsonWriter writer, GuildPermissions permissions, EncoderContext encoderContext) {
+            writer.writeStartDocument();
+            writer.writeString("mode", permissions.mode.name());
+
+            writer.writeStartArray("groups");
+            synchronized (permissions.groups) {
+                for (Group group : permissions.groups) {
+                    encoderContext.encodeWithChildContext(GROUP_CODEC, writer, group);
+                }
+            }
+            writer.writeEndArray();
+
+            writer.writeStartDocument("users");
+            for (Map.Entry<Long, User> entry : permissions.users.entrySet()) {
+                writer.writeName(String.valueOf(entry.getKey()));
+                encoderContext.encodeWithChildContext(USER_CODEC, writer, entry.getValue());
+            }
+            writer.writeEndDocument();
+            writer.writeEndDocument();
+        }
+
+        @Override
+        public GuildPermissions decode(BsonReader reader, DecoderContext decoderContext) {
+            GuildPermissions permissions = new GuildPermissions();
+            reader.readStartDocument();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                switch (reader.readName()) {
+                    case "mode":
+                        if (reader.getCurrentBsonType() != BsonType.STRING) {
+                            reader.skipValue();
+                            break;
+                        }
+                        PermissionMode mode = EnumUtils.getEnum(PermissionMode.class, reader.readString());
+                        if (mode != null) permissions.mode = mode;
+                        break;
+                    case "groups":
+                        reader.readStartArray();
+                        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                            permissions.groups.add(decoderContext.decodeWithChildContext(GROUP_CODEC, reader));
+                        }
+                        reader.readEndArray();
+                        break;
+                    case "users":
+                        reader.readStartDocument();
+                        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                            String id = reader.readName();
+                            if (!StringUtils.isNumeric(id)) {
+                                reader.skipValue();
+                                continue;
+                            }
+                            permissions.users.put(Long.parseLong(id), decoderContext.decodeWithChildContext(USER_CODEC, reader));
+                        }
+                        reader.readEndDocument();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.readEndDocument();
+            return permissions;
+        }
+
+        @Override
+        public Class<GuildPermissions> getEncoderClass() {
+            return GuildPermissions.class;
+        }
+
+    }
+
 }
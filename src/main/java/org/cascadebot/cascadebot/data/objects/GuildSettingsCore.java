@@ -6,12 +6,22 @@
 package org.cascadebot.cascadebot.data.objects;
 
 import com.google.common.collect.Sets;
+import de.bild.codec.annotations.Transient;
+import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.Setter;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
 import org.cascadebot.cascadebot.commandmeta.ICommandMain;
 import org.cascadebot.cascadebot.commandmeta.Module;
 import org.cascadebot.cascadebot.commandmeta.ModuleFlag;
 import org.cascadebot.cascadebot.data.Config;
+import org.cascadebot.cascadebot.data.database.BsonCodecUtils;
+import org.cascadebot.cascadebot.data.database.DirtyTracker;
+import org.cascadebot.cascadebot.utils.SizeUtils;
 
 import java.lang.reflect.Field;
 import java.util.Collections;
@@ -22,15 +32,14 @@ import java.util.concurrent.ConcurrentHashMap;
 
 @SettingsContainer(module = Module.CORE)
 @Getter
-@Setter
 public class GuildSettingsCore {
 
     public static Map<String, Field> VALUES = new HashMap<>();
 
     static {
         for (Field field : GuildSettingsCore.class.getDeclaredFields()) {
-            if (field.getName().equals("VALUES")) continue;
-            if (field.getAnnotation(Setting.class) != null && !field.getAnnotation(Setting.class).directlyEditable()) continue;
+            // Only settings are editable, this also skips VALUES and the transient fields
+            if (field.getAnnotation(Setting.class) == null || !field.getAnnotation(Setting.class).directlyEditable()) continue;
             field.setAccessible(true);
             VALUES.put(field.getName().toLowerCase(), field);
         }
@@ -74,12 +83,19 @@ public class GuildSettingsCore {
     @Setting(niceName = "Tags", directlyEditable = false)
     private ConcurrentHashMap<String, Tag> tags = new ConcurrentHashMap<>();
 
+    // Paths of these settings that have changed since they were last saved
+    @Transient
+    @Getter(AccessLevel.NONE)
+    private DirtyTracker dirtyTracker = new DirtyTracker();
+
     //region Modules
     public boolean enableModule(Module module) {
         if (module.isFlagEnabled(ModuleFlag.PRIVATE)) {
             throw new IllegalArgumentException("This module is not available to be enabled!");
         }
-        return this.enabledModules.add(module);
+        boolean enabled = this.enabledModules.add(module);
+        if (enabled) dirtyTracker.markDirty("enabledModules");
+        return enabled;
     }
 
     public boolean disableModule(Module module) {
@@ -88,13 +104,16 @@ public class GuildSettingsCore {
         } else if (module.isFlagEnabled(ModuleFlag.REQUIRED)) {
             throw new IllegalArgumentException(String.format("Cannot disable the %s module!", module.toString().toLowerCase()));
         }
-        return this.enabledModules.remove(module);
+        boolean disabled = this.enabledModules.remove(module);
+        if (disabled) dirtyTracker.markDirty("enabledModules");
+        return disabled;
     }
 
     public boolean isModuleEnabled(Module module) {
         boolean isEnabled = this.enabledModules.contains(module);
         if (!isEnabled && module.isFlagEnabled(ModuleFlag.REQUIRED)) {
             this.enabledModules.add(module);
+            dirtyTracker.markDirty("enabledModules");
             return true;
         }
         return isEnabled;
@@ -114,10 +133,145 @@ public class GuildSettingsCore {
 
     public void addTag(String key, Tag tag) {
         tags.put(key, tag);
+        dirtyTracker.markDirty(DirtyTracker.child("tags", key));
+    }
+
+    public boolean setTagContent(String key, String content) {
+        Tag tag = tags.get(key);
+        if (tag == null) return false;
+        tag.setContent(content);
+        dirtyTracker.markDirty(DirtyTracker.child("tags", key));
+        return true;
+    }
+
+    public boolean setTagCategory(String key, String category) {
+        Tag tag = tags.get(key);
+        if (tag == null) return false;
+        tag.setCategory(category);
+        dirtyTracker.markDirty(DirtyTracker.child("tags", key));
+        return true;
     }
 
     public boolean removeTag(String key) {
-        return tags.remove(key) != null;
+        boolean removed = tags.remove(key) != null;
+        if (removed) dirtyTracker.markDirty(DirtyTracker.child("tags", key));
+        return removed;
+    }
+
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+        dirtyTracker.markDirty("prefix");
+    }
+
+    /**
+     * Marks a setting as changed so it is written by the next save. This only needs to be called when a setting is
+     * changed without using one of the methods in this class, e.g. through {@link #VALUES}.
+     *
+     * @param setting The name of the setting's field.
+     */
+    public void markDirty(String setting) {
+        dirtyTracker.markDirty(setting);
+    }
+
+    long estimateSize() {
+        long size = SizeUtils.OBJECT_SIZE * 4 + SizeUtils.ofString(prefix) + (long) enabledModules.size() * SizeUtils.ENTRY_SIZE;
+        for (Map.Entry<String, Tag> entry : tags.entrySet()) {
+            Tag tag = entry.getValue();
+            size += SizeUtils.ENTRY_SIZE + SizeUtils.OBJECT_SIZE + SizeUtils.ofString(entry.getKey())
+                    + SizeUtils.ofString(tag.getContent()) + SizeUtils.ofString(tag.getCategory());
+        }
+        return size;
+    }
+
+    DirtyTracker getDirtyTracker() {
+        return dirtyTracker;
+    }
+
+    /**
+     * Encodes and decodes the settings without reflection. Settings that aren't stored keep their default value.
+     */
+    public static class BsonCodec implements Codec<GuildSettingsCore> {
+
+        private static final Tag.BsonCodec TAG_CODEC = new Tag.BsonCodec();
+
+        @Override
+        public void encode(BsonWriter writer, GuildSettingsCore settings, EncoderContext encoderContext) {
+            writer.writeStartDocument();
+            writer.writeBoolean("mentionPrefix", settings.mentionPrefix);
+            writer.writeBoolean("deleteCommand", settings.deleteCommand);
+            writer.writeBoolean("useEmbedForMessages", settings.useEmbedForMessages);
+            writer.writeBoolean("showPermErrors", settings.showPermErrors);
+            writer.writeBoolean("showModuleErrors", settings.showModuleErrors);
+            writer.writeBoolean("adminsHaveAllPerms", settings.adminsHaveAllPerms);
+            writer.writeBoolean("allowTagCommands", settings.allowTagCommands);
+            BsonCodecUtils.writeEnums(writer, "enabledModules", settings.enabledModules);
+            BsonCodecUtils.writeString(writer, "prefix", settings.prefix);
+
+            writer.writeStartDocument("tags");
+            for (Map.Entry<String, Tag> entry : settings.tags.entrySet()) {
+                writer.writeName(entry.getKey());
+                encoderContext.encodeWithChildContext(TAG_CODEC, writer, entry.getValue());
+            }
+            writer.writeEndDocument();
+            writer.writeEndDocument();
+        }
+
+        @Override
+        public GuildSettingsCore decode(BsonReader reader, DecoderContext decoderContext) {
+            GuildSettingsCore settings = new GuildSettingsCore();
+            reader.readStartDocument();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                switch (reader.readName()) {
+                    case "mentionPrefix":
+                        settings.mentionPrefix = BsonCodecUtils.readBoolean(reader, settings.mentionPrefix);
+                        break;
+                    case "deleteCommand":
+                        settings.deleteCommand = BsonCodecUtils.readBoolean(reader, settings.deleteCommand);
+                        break;
+                    case "useEmbedForMessages":
+                        settings.useEmbedForMessages = BsonCodecUtils.readBoolean(reader, settings.useEmbedForMessages);
+                        break;
+                    case "showPermErrors":
+                        settings.showPermErrors = BsonCodecUtils.readBoolean(reader, settings.showPermErrors);
+                        break;
+                    case "showModuleErrors":
+                        settings.showModuleErrors = BsonCodecUtils.readBoolean(reader, settings.showModuleErrors);
+                        break;
+                    case "adminsHaveAllPerms":
+                        settings.adminsHaveAllPerms = BsonCodecUtils.readBoolean(reader, settings.adminsHaveAllPerms);
+                        break;
+                    case "allowTagCommands":
+                        settings.allowTagCommands = BsonCodecUtils.readBoolean(reader, settings.allowTagCommands);
+                        break;
+                    case "enabledModules":
+                        // The stored modules replace the default ones
+                        settings.enabledModules.clear();
+                        BsonCodecUtils.readEnums(reader, Module.class, settings.enabledModules);
+                        break;
+                    case "prefix":
+                        String prefix = BsonCodecUtils.readString(reader);
+                        if (prefix != null) settings.prefix = prefix;
+                        break;
+                    case "tags":
+                        reader.readStartDocument();
+                        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                            settings.tags.put(reader.readName(), decoderContext.decodeWithChildContext(TAG_CODEC, reader));
+                        }
+                        reader.readEndDocument();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.readEndDocument();
+            return settings;
+        }
+
+        @Override
+        public Class<GuildSettingsCore> getEncoderClass() {
+            return GuildSettingsCore.class;
+        }
+
     }
 
 }
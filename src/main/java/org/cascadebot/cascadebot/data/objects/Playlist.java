@@ -9,7 +9,6 @@ import de.bild.codec.annotations.Id;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
-import lombok.Setter;
 import org.bson.types.ObjectId;
 
 import java.util.List;
@@ -25,22 +24,39 @@ public class Playlist {
     private long ownerID;
     private PlaylistType scope;
 
-    @Setter
     private List<String> tracks;
+    // The tracks encoded by lavaplayer in base 64, in the same order as the identifiers in tracks. This lets the
+    // playlist be loaded without looking each track up again. Null for playlists saved before this was added, and an
+    // entry is empty if that track couldn't be encoded.
+    private List<String> encodedTracks;
 
-    public Playlist(long ownerId, String name, PlaylistType scope, List<String> tracks) {
+    public Playlist(long ownerId, String name, PlaylistType scope, List<String> tracks, List<String> encodedTracks) {
         this.ownerID = ownerId;
         this.name = name;
         this.scope = scope;
         this.tracks = tracks;
+        this.encodedTracks = encodedTracks;
     }
 
-    public void addTrack(String url) {
+    public void setTracks(List<String> tracks, List<String> encodedTracks) {
+        this.tracks = tracks;
+        this.encodedTracks = encodedTracks;
+    }
+
+    public void addTrack(String url, String encodedTrack) {
         tracks.add(url);
+        if (encodedTracks != null) {
+            encodedTracks.add(encodedTrack == null ? "" : encodedTrack);
+        }
     }
 
     public void removeTrack(String url) {
-        tracks.remove(url);
+        int index = tracks.indexOf(url);
+        if (index == -1) return;
+        tracks.remove(index);
+        if (encodedTracks != null && index < encodedTracks.size()) {
+            encodedTracks.remove(index);
+        }
     }
 
 }
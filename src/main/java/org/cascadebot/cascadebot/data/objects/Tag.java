@@ -11,13 +11,20 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.apache.commons.lang3.EnumUtils;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
 import org.cascadebot.cascadebot.commandmeta.CommandContext;
+import org.cascadebot.cascadebot.data.database.BsonCodecUtils;
 
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-@Setter
 @Getter
+@Setter(AccessLevel.PACKAGE)
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 @AllArgsConstructor
 public class Tag {
@@ -48,4 +55,44 @@ public class Tag {
         return message;
     }
 
+    /**
+     * Encodes and decodes tags without reflection, used by the settings codec.
+     */
+    public static class BsonCodec implements Codec<Tag> {
+
+        @Override
+        public void encode(BsonWriter writer, Tag tag, EncoderContext encoderContext) {
+            writer.writeStartDocument();
+            BsonCodecUtils.writeString(writer, "content", tag.content);
+            BsonCodecUtils.writeString(writer, "category", tag.category);
+            writer.writeEndDocument();
+        }
+
+        @Override
+        public Tag decode(BsonReader reader, DecoderContext decoderContext) {
+            Tag tag = new Tag();
+            reader.readStartDocument();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                switch (reader.readName()) {
+                    case "content":
+                        tag.content = BsonCodecUtils.readString(reader);
+                        break;
+                    case "category":
+                        tag.category = BsonCodecUtils.readString(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.readEndDocument();
+            return tag;
+        }
+
+        @Override
+        public Class<Tag> getEncoderClass() {
+            return Tag.class;
+        }
+
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.data.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.cascadebot.cascadebot.data.objects.GuildData;
+
+import java.util.List;
+
+/**
+ * A save of the parts of a guild's data that have changed since it was last written.
+ */
+@Getter
+@AllArgsConstructor
+public class GuildDataWrite {
+
+    private final long id;
+    private final GuildData data;
+    private final List<String> paths;
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.data.repository;
+
+import org.bson.Document;
+import org.cascadebot.cascadebot.data.objects.GuildData;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Where guild data is stored. Everything that reads or writes guild data goes through this rather than using the
+ * database directly, so the storage backend can be changed in the config.
+ */
+public interface IGuildDataRepository {
+
+    /**
+     * Finds the data for a guild.
+     *
+     * @param id The ID of the guild.
+     * @return A future that completes with the guild data, or with null if the guild doesn't have any data yet.
+     */
+    CompletableFuture<GuildData> find(long id);
+
+    /**
+     * Finds the data for a number of guilds at once. Guilds that don't have any data are left out.
+     *
+     * @param ids The IDs of the guilds.
+     * @return A future that completes with the guild data that was found.
+     */
+    CompletableFuture<List<GuildData>> findAll(Collection<Long> ids);
+
+    /**
+     * Finds some of the fields of a guild's data without decoding all of it.
+     *
+     * @param id     The ID of the guild.
+     * @param fields The fields to find, which may be dot separated paths.
+     * @return A future that completes with a document containing at least the requested fields, or with null if the
+     * guild doesn't have any data.
+     */
+    CompletableFuture<Document> findFields(long id, String... fields);
+
+    /**
+     * Finds the stored state lock of a number of guilds, used to check whether a copy of the data is still current.
+     *
+     * @param ids The IDs of the guilds.
+     * @return The state locks by guild ID, guilds without any data are left out.
+     */
+    Map<Long, UUID> findStateLocks(Collection<Long> ids);
+
+    void insert(GuildData data);
+
+    void replace(GuildData data);
+
+    void replaceSync(GuildData data);
+
+    /**
+     * Writes the changed parts of a number of guilds.
+     *
+     * @param writes The writes to apply.
+     * @return A future that completes once everything is written, or fails if any of the writes failed.
+     */
+    CompletableFuture<Void> write(List<GuildDataWrite> writes);
+
+    /**
+     * Writes the changed parts of a number of guilds, blocking until they are written.
+     *
+     * @param writes The writes to apply.
+     */
+    void writeSync(List<GuildDataWrite> writes);
+
+    /**
+     * Called when the bot shuts down, after all of the guild data has been saved.
+     */
+    default void close() {}
+
+}
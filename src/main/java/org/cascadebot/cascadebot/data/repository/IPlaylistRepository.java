@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.data.repository;
+
+import org.cascadebot.cascadebot.data.objects.Playlist;
+import org.cascadebot.cascadebot.data.objects.PlaylistType;
+
+import java.util.List;
+
+/**
+ * Where playlists are stored. Everything that reads or writes playlists goes through this rather than using the
+ * database directly, so the storage backend can be changed in the config.
+ */
+public interface IPlaylistRepository {
+
+    List<Playlist> findPlaylists(long ownerID, PlaylistType scope);
+
+    void insert(Playlist playlist);
+
+    void replace(Playlist playlist);
+
+    /**
+     * Called when the bot shuts down.
+     */
+    default void close() {}
+
+}
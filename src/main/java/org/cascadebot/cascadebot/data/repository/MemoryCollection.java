@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.data.repository;
+
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.cascadebot.cascadebot.data.database.DatabaseManager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A collection of documents kept in memory, optionally saved to a local file. Objects are stored encoded with the
+ * same codecs as the database, so changes to an object aren't seen by anything else until it is saved again, just
+ * like when using the database.
+ *
+ * @param <T> The type of object stored in the collection.
+ */
+public class MemoryCollection<T> {
+
+    private static final BsonDocumentCodec DOCUMENT_CODEC = new BsonDocumentCodec();
+
+    private final Map<BsonValue, BsonDocument> documents = new ConcurrentHashMap<>();
+    private final Codec<T> codec;
+    private final Path file;
+
+    /**
+     * @param type The type of object stored in the collection.
+     * @param file The file to load from and save to, or null to only keep the collection in memory.
+     */
+    public MemoryCollection(Class<T> type, Path file) {
+        this.codec = DatabaseManager.CODEC_REGISTRY.get(type);
+        this.file = file;
+    }
+
+    public T get(BsonValue id) {
+        BsonDocument document = documents.get(id);
+        return document == null ? null : decode(document);
+    }
+
+    /**
+     * Gets a stored document without decoding it to the collection's type.
+     *
+     * @param id The ID of the document.
+     * @return The document, or null if there isn't one with the ID.
+     */
+    public Document getDocument(BsonValue id) {
+        BsonDocument document = documents.get(id);
+        if (document == null) return null;
+        return DatabaseManager.CODEC_REGISTRY.get(Document.class).decode(new BsonDocumentReader(document), DecoderContext.builder().build());
+    }
+
+    public List<T> getAll() {
+        List<T> values = new ArrayList<>(documents.size());
+        for (BsonDocument document : documents.values()) {
+            values.add(decode(document));
+        }
+        return values;
+    }
+
+    public void put(T value) {
+        BsonDocument document = new BsonDocument();
+        codec.encode(new BsonDocumentWriter(document), value, EncoderContext.builder().build());
+        documents.put(document.get("_id"), document);
+    }
+
+    private T decode(BsonDocument document) {
+        return codec.decode(new BsonDocumentReader(document), DecoderContext.builder().build());
+    }
+
+    /**
+     * Replaces the contents of the collection with the documents in the file, if the file exists.
+     *
+     * @throws IOException If the file couldn't be read.
+     */
+    public void load() throws IOException {
+        if (file == null || !Files.exists(file)) return;
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        documents.clear();
+        // The file is just the documents one after the other, each BSON document starts with its length
+        while (buffer.hasRemaining()) {
+            BsonDocument document = DOCUMENT_CODEC.decode(new BsonBinaryReader(buffer), DecoderContext.builder().build());
+            documents.put(document.get("_id"), document);
+        }
+    }
+
+    /**
+     * Writes every document to the file, if there is one.
+     *
+     * @throws IOException If the file couldn't be written.
+     */
+    public void save() throws IOException {
+        if (file == null) return;
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream output = Files.newOutputStream(tempFile)) {
+            for (BsonDocument document : documents.values()) {
+                BasicOutputBuffer buffer = new BasicOutputBuffer();
+                DOCUMENT_CODEC.encode(new BsonBinaryWriter(buffer), document, EncoderContext.builder().build());
+                buffer.pipe(output);
+            }
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.data.repository;
+
+import org.bson.BsonInt64;
+import org.bson.Document;
+import org.cascadebot.cascadebot.CascadeBot;
+import org.cascadebot.cascadebot.data.objects.GuildData;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Keeps guild data in memory so that the bot can be run without a database. Whole guilds are written every time
+ * rather than only the parts that changed, as there is nothing to gain from partial writes in memory.
+ */
+public class MemoryGuildDataRepository implements IGuildDataRepository {
+
+    private final MemoryCollection<GuildData> guilds;
+
+    /**
+     * @param file The file to load the guild data from and save it to on shutdown, or null to only keep it in memory.
+     */
+    public MemoryGuildDataRepository(Path file) {
+        guilds = new MemoryCollection<>(GuildData.class, file);
+        try {
+            guilds.load();
+            if (file != null) CascadeBot.LOGGER.info("Loaded {} guilds from {}", guilds.size(), file);
+        } catch (IOException | RuntimeException e) {
+            CascadeBot.LOGGER.warn("Failed to load the guild data from {}, starting with no guild data", file, e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<GuildData> find(long id) {
+        return CompletableFuture.completedFuture(guilds.get(new BsonInt64(id)));
+    }
+
+    @Override
+    public CompletableFuture<List<GuildData>> findAll(Collection<Long> ids) {
+        List<GuildData> found = new ArrayList<>();
+        for (Long id : ids) {
+            GuildData data = guilds.get(new BsonInt64(id));
+            if (data != null) found.add(data);
+        }
+        return CompletableFuture.completedFuture(found);
+    }
+
+    @Override
+    public CompletableFuture<Document> findFields(long id, String... fields) {
+        return CompletableFuture.completedFuture(guilds.getDocument(new BsonInt64(id)));
+    }
+
+    @Override
+    public Map<Long, UUID> findStateLocks(Collection<Long> ids) {
+        Map<Long, UUID> stateLocks = new HashMap<>();
+        for (Long id : ids) {
+            Document document = guilds.getDocument(new BsonInt64(id));
+            if (document != null && document.get("stateLock") instanceof UUID) {
+                stateLocks.put(id, (UUID) document.get("stateLock"));
+            }
+        }
+        return stateLocks;
+    }
+
+    @Override
+    public void insert(GuildData data) {
+        guilds.put(data);
+    }
+
+    @Override
+    public void replace(GuildData data) {
+        guilds.put(data);
+    }
+
+    @Override
+    public void replaceSync(GuildData data) {
+        guilds.put(data);
+    }
+
+    @Override
+    public CompletableFuture<Void> write(List<GuildDataWrite> writes) {
+        try {
+            writeSync(writes);
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public void writeSync(List<GuildDataWrite> writes) {
+        for (GuildDataWrite write : writes) {
+            guilds.put(write.getData());
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            guilds.save();
+        } catch (IOException e) {
+            CascadeBot.LOGGER.error("Failed to save the guild data", e);
+        }
+    }
+
+}
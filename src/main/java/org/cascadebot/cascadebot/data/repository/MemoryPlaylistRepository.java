@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.data.repository;
+
+import org.cascadebot.cascadebot.CascadeBot;
+import org.cascadebot.cascadebot.data.objects.Playlist;
+import org.cascadebot.cascadebot.data.objects.PlaylistType;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps playlists in memory so that the bot can be run without a database.
+ */
+public class MemoryPlaylistRepository implements IPlaylistRepository {
+
+    private final MemoryCollection<Playlist> playlists;
+
+    /**
+     * @param file The file to load the playlists from and save them to on shutdown, or null to only keep them in memory.
+     */
+    public MemoryPlaylistRepository(Path file) {
+        playlists = new MemoryCollection<>(Playlist.class, file);
+        try {
+            playlists.load();
+        } catch (IOException | RuntimeException e) {
+            CascadeBot.LOGGER.warn("Failed to load the playlists from {}, starting with no playlists", file, e);
+        }
+    }
+
+    @Override
+    public List<Playlist> findPlaylists(long ownerID, PlaylistType scope) {
+        List<Playlist> found = new ArrayList<>();
+        for (Playlist playlist : playlists.getAll()) {
+            if (playlist.getOwnerID() == ownerID && playlist.getScope() == scope) found.add(playlist);
+        }
+        return found;
+    }
+
+    @Override
+    public void insert(Playlist playlist) {
+        playlists.put(playlist);
+    }
+
+    @Override
+    public void replace(Playlist playlist) {
+        playlists.put(playlist);
+    }
+
+    @Override
+    public void close() {
+        try {
+            playlists.save();
+        } catch (IOException e) {
+            CascadeBot.LOGGER.error("Failed to save the playlists", e);
+        }
+    }
+
+}
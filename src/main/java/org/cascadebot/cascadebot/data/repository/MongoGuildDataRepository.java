@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.data.repository;
+
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentWriter;
+import org.bson.Document;
+import org.bson.codecs.Codec;
+import org.bson.codecs.EncoderContext;
+import org.bson.conversions.Bson;
+import org.cascadebot.cascadebot.CascadeBot;
+import org.cascadebot.cascadebot.data.database.DatabaseManager;
+import org.cascadebot.cascadebot.data.database.DebugLogCallback;
+import org.cascadebot.cascadebot.data.database.PartialUpdate;
+import org.cascadebot.cascadebot.data.objects.GuildData;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Projections.include;
+
+public class MongoGuildDataRepository implements IGuildDataRepository {
+
+    private static final String COLLECTION = "guilds";
+
+    private final DatabaseManager databaseManager;
+
+    public MongoGuildDataRepository(DatabaseManager databaseManager) {
+        this.databaseManager = databaseManager;
+    }
+
+    @Override
+    public CompletableFuture<GuildData> find(long id) {
+        CompletableFuture<GuildData> future = new CompletableFuture<>();
+        try {
+            databaseManager.runAsyncTask(database -> {
+                database.getCollection(COLLECTION, GuildData.class).find(eq("_id", id)).first((data, throwable) -> {
+                    if (throwable != null) {
+                        future.completeExceptionally(throwable);
+                    } else {
+                        future.complete(data);
+                    }
+                });
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<List<GuildData>> findAll(Collection<Long> ids) {
+        CompletableFuture<List<GuildData>> future = new CompletableFuture<>();
+        try {
+            databaseManager.runAsyncTask(database -> {
+                database.getCollection(COLLECTION, GuildData.class).find(in("_id", ids)).into(new ArrayList<>(), (result, throwable) -> {
+                    if (throwable != null) {
+                        future.completeExceptionally(throwable);
+                    } else {
+                        future.complete(result);
+                    }
+                });
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Document> findFields(long id, String... fields) {
+        CompletableFuture<Document> future = new CompletableFuture<>();
+        try {
+            databaseManager.runAsyncTask(database -> {
+                database.getCollection(COLLECTION).find(eq("_id", id)).projection(include(fields)).first((document, throwable) -> {
+                    if (throwable != null) {
+                        future.completeExceptionally(throwable);
+                    } else {
+                        future.complete(document);
+                    }
+                });
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public Map<Long, UUID> findStateLocks(Collection<Long> ids) {
+        List<Document> documents = new ArrayList<>();
+        databaseManager.runTask(database -> {
+            database.getCollection(COLLECTION).find(in("_id", ids)).projection(include("stateLock")).into(documents);
+        });
+        Map<Long, UUID> stateLocks = new HashMap<>();
+        for (Document document : documents) {
+            Object id = document.get("_id");
+            Object stateLock = document.get("stateLock");
+            if (id instanceof Long && stateLock instanceof UUID) {
+                stateLocks.put((Long) id, (UUID) stateLock);
+            }
+        }
+        return stateLocks;
+    }
+
+    @Override
+    public void insert(GuildData data) {
+        databaseManager.runAsyncTask(database -> {
+            database.getCollection(COLLECTION, GuildData.class).insertOne(data, new DebugLogCallback<>("Inserted Guild ID " + data.getGuildID()));
+        });
+    }
+
+    @Override
+    public void replace(GuildData data) {
+        databaseManager.runAsyncTask(database -> {
+            database.getCollection(COLLECTION, GuildData.class).replaceOne(eq("_id", data.getGuildID()), data, new DebugLogCallback<>("Replaced Guild ID " + data.getGuildID()));
+        });
+    }
+
+    @Override
+    public void replaceSync(GuildData data) {
+        databaseManager.runTask(database -> {
+            database.getCollection(COLLECTION, GuildData.class).replaceOne(eq("_id", data.getGuildID()), data);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> write(List<GuildDataWrite> writes) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            List<UpdateOneModel<GuildData>> models = toModels(writes);
+            databaseManager.runAsyncTask(database -> {
+                database.getCollection(COLLECTION, GuildData.class).bulkWrite(models, new BulkWriteOptions().ordered(false), (result, throwable) -> {
+                    if (throwable != null) {
+                        future.completeExceptionally(throwable);
+                    } else {
+                        CascadeBot.LOGGER.debug("Saved {} guilds: {}", writes.size(), result);
+                        future.complete(null);
+                    }
+                });
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public void writeSync(List<GuildDataWrite> writes) {
+        List<UpdateOneModel<GuildData>> models = toModels(writes);
+        databaseManager.runTask(database -> {
+            database.getCollection(COLLECTION, GuildData.class).bulkWrite(models, new BulkWriteOptions().ordered(false));
+        });
+    }
+
+    private List<UpdateOneModel<GuildData>> toModels(List<GuildDataWrite> writes) {
+        List<UpdateOneModel<GuildData>> models = new ArrayList<>(writes.size());
+        for (GuildDataWrite write : writes) {
+            // Encoding is done here rather than when draining so it is spread across the threads doing the writes
+            models.add(new UpdateOneModel<>(eq("_id", write.getId()), buildUpdate(write.getData(), write.getPaths())));
+        }
+        return models;
+    }
+
+    private Bson buildUpdate(GuildData data, List<String> paths) {
+        // The whole document is encoded with the same codec as a full replace so the written values are identical
+        BsonDocument document = new BsonDocument();
+        Codec<GuildData> codec = databaseManager.getCodecRegistry().get(GuildData.class);
+        codec.encode(new BsonDocumentWriter(document), data, EncoderContext.builder().build());
+        return PartialUpdate.of(document, paths);
+    }
+
+}
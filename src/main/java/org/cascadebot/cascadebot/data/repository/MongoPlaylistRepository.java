@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.data.repository;
+
+import org.cascadebot.cascadebot.data.database.DatabaseManager;
+import org.cascadebot.cascadebot.data.database.DebugLogCallback;
+import org.cascadebot.cascadebot.data.objects.Playlist;
+import org.cascadebot.cascadebot.data.objects.PlaylistType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Updates.combine;
+
+public class MongoPlaylistRepository implements IPlaylistRepository {
+
+    private static final String COLLECTION = "playlists";
+
+    private final DatabaseManager databaseManager;
+
+    public MongoPlaylistRepository(DatabaseManager databaseManager) {
+        this.databaseManager = databaseManager;
+    }
+
+    @Override
+    public List<Playlist> findPlaylists(long ownerID, PlaylistType scope) {
+        return databaseManager.getDatabase().getCollection(COLLECTION, Playlist.class)
+                .find(
+                        combine(
+                                eq("ownerID", ownerID),
+                                eq("scope", scope)
+                        )
+                ).into(new ArrayList<>());
+    }
+
+    @Override
+    public void insert(Playlist playlist) {
+        databaseManager.runAsyncTask(database -> {
+            database.getCollection(COLLECTION, Playlist.class).insertOne(
+                    playlist,
+                    new DebugLogCallback<>("Inserted new playlist with ID: " + playlist.getPlaylistID())
+            );
+        });
+    }
+
+    @Override
+    public void replace(Playlist playlist) {
+        databaseManager.runAsyncTask(database -> {
+            database.getCollection(COLLECTION, Playlist.class).replaceOne(
+                    eq("_id", playlist.getPlaylistID()),
+                    playlist,
+                    new DebugLogCallback<>("Replaced Playlist with ID: " + playlist.getPlaylistID())
+            );
+        });
+    }
+
+}
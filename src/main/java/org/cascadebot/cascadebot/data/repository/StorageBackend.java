@@ -0,0 +1,21 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.data.repository;
+
+public enum StorageBackend {
+
+    /**
+     * Stores everything in MongoDB, this is what the bot uses normally.
+     */
+    MONGO,
+
+    /**
+     * Stores everything in memory, optionally saving it to a local file on shutdown. This is meant for testing and
+     * benchmarking the bot without a database.
+     */
+    MEMORY
+
+}
@@ -26,7 +26,9 @@ public class ButtonEventListener extends ListenerAdapter {
         }
         if (e.getChannel().getType().equals(ChannelType.TEXT)) {
             TextChannel channel = (TextChannel) e.getChannel();
-            GuildData data = GuildDataManager.getGuildData(channel.getGuild().getIdLong());
+            // Buttons only exist in memory so there can't be any for a guild that isn't loaded
+            GuildData data = GuildDataManager.getGuildDataIfLoaded(channel.getGuild().getIdLong());
+            if (data == null) return;
             ButtonsCache cache = data.getButtonsCache();
             if (cache.containsKey(channel.getIdLong())) {
                 if (cache.get(channel.getIdLong()).containsKey(e.getMessageIdLong())) {
@@ -44,7 +46,9 @@ public class ButtonEventListener extends ListenerAdapter {
     public void onMessageDelete(MessageDeleteEvent e) {
         if (e.getChannel().getType().equals(ChannelType.TEXT)) {
             TextChannel channel = (TextChannel) e.getChannel();
-            GuildData data = GuildDataManager.getGuildData(channel.getGuild().getIdLong());
+            // Buttons only exist in memory so there can't be any for a guild that isn't loaded
+            GuildData data = GuildDataManager.getGuildDataIfLoaded(channel.getGuild().getIdLong());
+            if (data == null) return;
             ButtonsCache cache = data.getButtonsCache();
             if (cache.containsKey(channel.getIdLong())) {
                 cache.get(channel.getIdLong()).remove(e.getMessageIdLong());
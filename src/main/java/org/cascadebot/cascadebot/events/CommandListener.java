@@ -16,86 +16,141 @@ import org.cascadebot.cascadebot.CascadeBot;
 import org.cascadebot.cascadebot.Environment;
 import org.cascadebot.cascadebot.MDCException;
 import org.cascadebot.cascadebot.commandmeta.CommandContext;
+import org.cascadebot.cascadebot.commandmeta.CommandTokenizer;
 import org.cascadebot.cascadebot.commandmeta.ICommandExecutable;
 import org.cascadebot.cascadebot.commandmeta.ICommandMain;
 import org.cascadebot.cascadebot.commandmeta.ICommandRestricted;
 import org.cascadebot.cascadebot.commandmeta.ModuleFlag;
 import org.cascadebot.cascadebot.data.Config;
 import org.cascadebot.cascadebot.data.managers.GuildDataManager;
+import org.cascadebot.cascadebot.data.managers.PrefixManager;
 import org.cascadebot.cascadebot.data.objects.GuildData;
 import org.cascadebot.cascadebot.data.objects.Tag;
 import org.cascadebot.cascadebot.messaging.Messaging;
 import org.cascadebot.cascadebot.messaging.MessagingObjects;
 import org.cascadebot.cascadebot.metrics.Metrics;
-import org.cascadebot.shared.Regex;
-import org.cascadebot.shared.utils.ThreadPoolExecutorLogged;
 import org.slf4j.MDC;
 
 import java.time.Instant;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Pattern;
 
 public class CommandListener extends ListenerAdapter {
 
-    private static final ThreadGroup COMMAND_THREADS = new ThreadGroup("Command Threads");
-    private static final AtomicInteger threadCounter = new AtomicInteger(0);
-    private static final ExecutorService COMMAND_POOL = ThreadPoolExecutorLogged.newCachedThreadPool(r ->
-            new Thread(COMMAND_THREADS, r, "Command Pool-" + threadCounter.incrementAndGet()), CascadeBot.LOGGER);
-
-    private static final Pattern MULTIQUOTE_REGEX = Pattern.compile("[\"'](?=[\"'])");
+    // Handles messages once their prefix or guild data has loaded, the commands themselves run on the command executor
+    private static final ExecutorService messageExecutor = createMessageExecutor();
 
     @Override
     public void onGuildMessageReceived(GuildMessageReceivedEvent event) {
         if (event.getAuthor().isBot()) return;
         if (event.getMessage().getType() != MessageType.DEFAULT) return;
 
-        MDC.put("cascade.guild", event.getGuild().toString());
-        MDC.put("cascade.sender", event.getAuthor().toString());
-        MDC.put("cascade.shard_info", event.getJDA().getShardInfo().getShardString());
-        MDC.put("cascade.channel", event.getChannel().toString());
+        setupMDC(event);
 
-        String message = Regex.MULTISPACE_REGEX.matcher(event.getMessage().getContentRaw()).replaceAll(" ");
-        message = MULTIQUOTE_REGEX.matcher(message).replaceAll("");
+        String message = event.getMessage().getContentRaw();
+        String selfMention = event.getJDA().getSelfUser().getAsMention();
 
-        GuildData guildData;
-        try {
-            guildData = GuildDataManager.getGuildData(event.getGuild().getIdLong());
-            if (guildData == null) {
-                // This should *hopefully* never happen but just in case :D
-                throw new IllegalStateException(String.format("Guild data for guild ID: %s is null!", event.getGuild().getId()));
+        // Most messages aren't commands so we check the prefix before loading (and possibly fetching) the guild data
+        CompletableFuture<Boolean> couldBeCommand = PrefixManager.couldBeCommand(event.getGuild().getIdLong(), message, selfMention);
+        if (couldBeCommand.isDone() && !couldBeCommand.isCompletedExceptionally()) {
+            if (couldBeCommand.join()) {
+                loadAndHandleMessage(event, message, selfMention);
+            } else {
+                CascadeBot.clearCascadeMDC();
             }
-        } catch (Exception e) {
-            Messaging.sendExceptionMessage(event.getChannel(), "We have failed to process your guild data!", e);
             return;
         }
 
+        // The prefix isn't cached, so the message is checked once it has loaded rather than holding up the event thread
+        CascadeBot.clearCascadeMDC();
+        couldBeCommand.whenCompleteAsync((command, throwable) -> {
+            if (throwable != null) {
+                // The guild data decides whether this is a command instead
+                CascadeBot.LOGGER.warn("Failed to load the prefix for guild ID: {}", event.getGuild().getId(), throwable);
+            } else if (!command) {
+                return;
+            }
+            setupMDC(event);
+            loadAndHandleMessage(event, message, selfMention);
+        }, messageExecutor).exceptionally(this::logFailure);
+    }
+
+    private void loadAndHandleMessage(GuildMessageReceivedEvent event, String message, String selfMention) {
+        GuildData cachedData = GuildDataManager.getGuildDataIfLoaded(event.getGuild().getIdLong());
+        if (cachedData != null) {
+            handleMessage(event, cachedData, message, selfMention);
+            return;
+        }
+
+        // Don't hold up the event thread while the guild data loads, the message is handled once it's ready instead
+        CascadeBot.clearCascadeMDC();
+        GuildDataManager.getGuildDataAsync(event.getGuild().getIdLong()).whenCompleteAsync((guildData, throwable) -> {
+            setupMDC(event);
+            if (throwable != null || guildData == null) {
+                Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                if (cause == null) {
+                    // This should *hopefully* never happen but just in case :D
+                    cause = new IllegalStateException(String.format("Guild data for guild ID: %s is null!", event.getGuild().getId()));
+                }
+                Messaging.sendExceptionMessage(event.getChannel(), "We have failed to process your guild data!", cause);
+                CascadeBot.clearCascadeMDC();
+                return;
+            }
+            handleMessage(event, guildData, message, selfMention);
+        }, messageExecutor).exceptionally(this::logFailure);
+    }
+
+    private Void logFailure(Throwable throwable) {
+        CascadeBot.LOGGER.error("Uncaught exception while handling a message", MDCException.from(throwable));
+        CascadeBot.clearCascadeMDC();
+        return null;
+    }
+
+    private static ExecutorService createMessageExecutor() {
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        return Executors.newFixedThreadPool(2, r -> {
+            Thread thread = new Thread(r, "Message Pool-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private void setupMDC(GuildMessageReceivedEvent event) {
+        MDC.put("cascade.guild", event.getGuild().toString());
+        MDC.put("cascade.sender", event.getAuthor().toString());
+        MDC.put("cascade.shard_info", event.getJDA().getShardInfo().getShardString());
+        MDC.put("cascade.channel", event.getChannel().toString());
+    }
+
+    private void handleMessage(GuildMessageReceivedEvent event, GuildData guildData, String message, String selfMention) {
         String prefix = guildData.getSettings().getPrefix();
+        String defaultPrefix = Config.INS.getDefaultPrefix();
         boolean isMention = false;
 
-        String commandWithArgs;
-        String trigger;
-        String[] args;
+        int commandStart;
 
         if (message.startsWith(prefix)) {
-            commandWithArgs = message.substring(prefix.length()); // Remove prefix from command
-        } else if (guildData.getSettings().isMentionPrefix() && message.startsWith(event.getJDA().getSelfUser().getAsMention())) {
-            commandWithArgs = message.substring(event.getJDA().getSelfUser().getAsMention().length()).trim();
+            commandStart = prefix.length(); // Skip the prefix
+        } else if (guildData.getSettings().isMentionPrefix() && message.startsWith(selfMention)) {
+            commandStart = selfMention.length();
             isMention = true;
-        } else if (message.startsWith(Config.INS.getDefaultPrefix() + "prefix") && !Config.INS.getDefaultPrefix().equals(guildData.getSettings().getPrefix())) {
-            commandWithArgs = message.substring(Config.INS.getDefaultPrefix().length());
+        } else if (message.startsWith(defaultPrefix) && message.startsWith("prefix", defaultPrefix.length()) && !defaultPrefix.equals(prefix)) {
+            commandStart = defaultPrefix.length();
         } else {
+            CascadeBot.clearCascadeMDC();
             return;
         }
 
         MDC.put("cascade.prefix", prefix);
         MDC.put("cascade.mention_prefix", String.valueOf(isMention));
 
-        trigger = commandWithArgs.split(" ")[0];
-        commandWithArgs = commandWithArgs.substring(trigger.length()).trim();
-        args = splitArgs(commandWithArgs);
+        CommandTokenizer.Tokens tokens = CommandTokenizer.tokenize(message, commandStart, isMention);
+        String trigger = tokens.getTrigger();
+        String[] args = tokens.getArgs();
 
         MDC.put("cascade.trigger", trigger);
         MDC.put("cascade.args", Arrays.toString(args));
@@ -114,43 +169,16 @@ public class CommandListener extends ListenerAdapter {
     }
 
     public String[] splitArgs(String input) {
-        // Allow ' and " to be treated equally #quoteshavefeelingstoo
-        input = input.replace("'", "\"");
-        boolean inQuotes = false; // Whether the current position is surrounded by quotes or not
-        int splitFrom = 0; // We initially start the first split from 0 to the first space
-        var args = new ArrayList<String>();
-        for (int pos = 0; pos < input.length(); pos++) {
-            char charAtPos = input.charAt(pos);
-            if (charAtPos == ' ') {
-                int splitTo = pos;
-                // If there is a quote to close this
-                if (inQuotes && (input.substring(pos).contains("\""))) {
-                    continue;
-                }
-                if (input.charAt(pos - 1) == '"') {
-                    splitTo = pos - 1; // If we are splitting after a quote, don't include the quote in the split
-                }
-                args.add(input.substring(splitFrom, splitTo));
-                splitFrom = pos + 1; // Set the next split start to be after
-            } else if (pos == input.length() - 1) {
-                int splitTo = input.length();
-                // If the end character is a quote, we want to "split" before the quote to no include it.
-                if (input.charAt(pos) == '"') {
-                    splitTo = pos;
-                }
-                args.add(input.substring(splitFrom, splitTo));
-                // End of string so do nothing else
-            } else if (charAtPos == '"') {
-                if (!inQuotes && (pos == 0 || input.charAt(pos - 1) == ' ')) {
-                    splitFrom += 1; // Start the split after the first quote
-                }
-                inQuotes = !inQuotes;
-            }
-        }
-        return args.toArray(String[]::new);
+        return CommandTokenizer.splitArgs(input);
     }
 
     private void processCommands(GuildMessageReceivedEvent event, GuildData guildData, String trigger, String[] args, boolean isMention) {
+        ICommandMain cmd = CascadeBot.INS.getCommandManager().getCommand(trigger, event.getAuthor(), guildData);
+        if (cmd != null && !CascadeBot.INS.getCommandRateLimiter().tryAcquire(event.getGuild().getIdLong(), event.getAuthor().getIdLong(), cmd)) {
+            // Silently drop the command, replying would just give spammers more messages to cause
+            return;
+        }
+
         CommandContext context = new CommandContext(
                 event.getJDA(),
                 event.getChannel(),
@@ -163,7 +191,6 @@ public class CommandListener extends ListenerAdapter {
                 isMention
         );
 
-        ICommandMain cmd = CascadeBot.INS.getCommandManager().getCommand(trigger, event.getAuthor(), guildData);
         if (cmd != null) {
             Metrics.INS.commandsSubmitted.labels(cmd.getClass().getSimpleName()).inc();
             if (!cmd.getModule().isFlagEnabled(ModuleFlag.PRIVATE) &&
@@ -201,30 +228,29 @@ public class CommandListener extends ListenerAdapter {
     }
 
     private boolean processSubCommands(ICommandMain cmd, String[] args, CommandContext parentCommandContext) {
-        for (ICommandExecutable subCommand : cmd.getSubCommands()) {
-            if (subCommand.command().equalsIgnoreCase(args[0])) {
-                CommandContext subCommandContext = new CommandContext(
-                        parentCommandContext.getJda(),
-                        parentCommandContext.getChannel(),
-                        parentCommandContext.getMessage(),
-                        parentCommandContext.getGuild(),
-                        parentCommandContext.getData(),
-                        ArrayUtils.remove(args, 0),
-                        parentCommandContext.getMember(),
-                        parentCommandContext.getTrigger() + " " + args[0],
-                        parentCommandContext.isMention()
-                );
-                if (!isAuthorised(cmd, subCommandContext)) {
-                    return false;
-                }
-                return dispatchCommand(subCommand, subCommandContext);
-            }
+        ICommandExecutable subCommand = CascadeBot.INS.getCommandManager().getSubCommand(cmd, args[0]);
+        if (subCommand == null) {
+            return false;
         }
-        return false;
+        CommandContext subCommandContext = new CommandContext(
+                parentCommandContext.getJda(),
+                parentCommandContext.getChannel(),
+                parentCommandContext.getMessage(),
+                parentCommandContext.getGuild(),
+                parentCommandContext.getData(),
+                ArrayUtils.remove(args, 0),
+                parentCommandContext.getMember(),
+                parentCommandContext.getTrigger() + " " + args[0],
+                parentCommandContext.isMention()
+        );
+        if (!isAuthorised(cmd, subCommandContext)) {
+            return false;
+        }
+        return dispatchCommand(subCommand, subCommandContext);
     }
 
     private boolean dispatchCommand(final ICommandExecutable command, final CommandContext context) {
-        COMMAND_POOL.submit(() -> {
+        boolean queued = CascadeBot.INS.getCommandExecutor().submit(context.getGuild().getIdLong(), () -> {
             MDC.put("cascade.sender", context.getMember().toString());
             MDC.put("cascade.guild", context.getGuild().toString());
             MDC.put("cascade.channel", context.getChannel().toString());
@@ -253,6 +279,11 @@ public class CommandListener extends ListenerAdapter {
                 commandTimer.observeDuration();
             }
         });
+        if (!queued) {
+            // The command has still been handled, it just won't be run so we don't want the parent command to run either
+            context.getTypedMessaging().replyWarning("The bot is busy right now! Please try again in a moment.");
+            return true;
+        }
         deleteMessages(command, context);
         return true;
     }
@@ -284,9 +315,5 @@ public class CommandListener extends ListenerAdapter {
         }
     }
 
-    public static void shutdownCommandPool() {
-        COMMAND_POOL.shutdown();
-    }
-
 
 }
@@ -6,29 +6,40 @@
 package org.cascadebot.cascadebot.events;
 
 import net.dv8tion.jda.bot.sharding.ShardManager;
+import net.dv8tion.jda.core.JDA;
 import net.dv8tion.jda.core.entities.Guild;
 import net.dv8tion.jda.core.events.ReadyEvent;
+import net.dv8tion.jda.core.events.ReconnectedEvent;
 import net.dv8tion.jda.core.events.StatusChangeEvent;
+import net.dv8tion.jda.core.events.channel.text.update.TextChannelUpdatePermissionsEvent;
+import net.dv8tion.jda.core.events.channel.voice.update.VoiceChannelUpdatePermissionsEvent;
 import net.dv8tion.jda.core.events.guild.GuildJoinEvent;
 import net.dv8tion.jda.core.events.guild.GuildLeaveEvent;
 import net.dv8tion.jda.core.events.guild.member.GuildMemberRoleAddEvent;
 import net.dv8tion.jda.core.events.guild.member.GuildMemberRoleRemoveEvent;
 import net.dv8tion.jda.core.events.role.RoleDeleteEvent;
+import net.dv8tion.jda.core.events.role.update.RoleUpdatePermissionsEvent;
 import net.dv8tion.jda.core.hooks.ListenerAdapter;
 import org.apache.commons.lang3.StringUtils;
 import org.cascadebot.cascadebot.CascadeBot;
 import org.cascadebot.cascadebot.UnicodeConstants;
 import org.cascadebot.cascadebot.data.Config;
 import org.cascadebot.cascadebot.data.managers.GuildDataManager;
+import org.cascadebot.cascadebot.data.objects.GuildData;
+import org.cascadebot.cascadebot.data.objects.GuildPermissions;
 import org.cascadebot.cascadebot.messaging.MessageType;
 import org.cascadebot.cascadebot.permissions.PermissionsManager;
 import org.cascadebot.cascadebot.permissions.objects.Group;
 import org.cascadebot.cascadebot.utils.FormatUtils;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
 public class GeneralEventListener extends ListenerAdapter {
 
     @Override
     public void onReady(ReadyEvent event) {
+        preloadGuilds(event.getJDA());
         ShardManager shardManager = CascadeBot.INS.getShardManager();
         if (shardManager.getShards().size() == shardManager.getShardsTotal()) {
             CascadeBot.INS.run();
@@ -38,6 +49,18 @@ public class GeneralEventListener extends ListenerAdapter {
         }
     }
 
+    @Override
+    public void onReconnect(ReconnectedEvent event) {
+        // Guilds could have been evicted from the cache while the shard was disconnected
+        preloadGuilds(event.getJDA());
+    }
+
+    private void preloadGuilds(JDA jda) {
+        if (!Config.INS.isGuildPreloadEnabled()) return;
+        List<Long> ids = jda.getGuilds().stream().map(Guild::getIdLong).collect(Collectors.toList());
+        GuildDataManager.preload(ids, Config.INS.getGuildPreloadBatchSize(), Config.INS.getGuildPreloadConcurrency());
+    }
+
     @Override
     public void onStatusChange(StatusChangeEvent event) {
         switch (event.getNewStatus()) {
@@ -80,9 +103,29 @@ public class GeneralEventListener extends ListenerAdapter {
 
     @Override
     public void onRoleDelete(RoleDeleteEvent event) {
-        for (Group group : GuildDataManager.getGuildData(event.getGuild().getIdLong()).getPermissions().getGroups()) {
-            group.unlinkRole(event.getRole().getIdLong());
-        }
+        GuildDataManager.getGuildDataAsync(event.getGuild().getIdLong()).thenAccept(guildData -> {
+            GuildPermissions permissions = guildData.getPermissions();
+            for (Group group : permissions.getGroups()) {
+                permissions.unlinkRole(group, event.getRole().getIdLong());
+            }
+            // Members have lost the role even if no groups were linked to it, which can change their Discord permissions
+            permissions.clearPermissionCache();
+        });
+    }
+
+    @Override
+    public void onRoleUpdatePermissions(RoleUpdatePermissionsEvent event) {
+        clearPermissionCache(event.getGuild());
+    }
+
+    @Override
+    public void onTextChannelUpdatePermissions(TextChannelUpdatePermissionsEvent event) {
+        clearPermissionCache(event.getGuild());
+    }
+
+    @Override
+    public void onVoiceChannelUpdatePermissions(VoiceChannelUpdatePermissionsEvent event) {
+        clearPermissionCache(event.getGuild());
     }
 
     @Override
@@ -90,6 +133,7 @@ public class GeneralEventListener extends ListenerAdapter {
         if (event.getGuild().getIdLong() == Config.INS.getOfficialServerId()) {
             CascadeBot.INS.getPermissionsManager().clearCacheForUser(event.getUser().getIdLong());
         }
+        clearPermissionCache(event.getGuild());
     }
 
     @Override
@@ -97,6 +141,15 @@ public class GeneralEventListener extends ListenerAdapter {
         if (event.getGuild().getIdLong() == Config.INS.getOfficialServerId()) {
             CascadeBot.INS.getPermissionsManager().clearCacheForUser(event.getUser().getIdLong());
         }
+        clearPermissionCache(event.getGuild());
+    }
+
+    private void clearPermissionCache(Guild guild) {
+        // If the guild data isn't loaded there's nothing to clear, decisions are never shared with newly loaded data
+        GuildData guildData = GuildDataManager.getGuilds().getIfPresent(guild.getIdLong());
+        if (guildData != null) {
+            guildData.getPermissions().clearPermissionCache();
+        }
     }
 
 }
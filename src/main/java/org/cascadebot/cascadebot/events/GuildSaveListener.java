@@ -9,6 +9,7 @@ import com.github.benmanes.caffeine.cache.RemovalCause;
 import com.github.benmanes.caffeine.cache.RemovalListener;
 import org.cascadebot.cascadebot.CascadeBot;
 import org.cascadebot.cascadebot.data.managers.GuildDataManager;
+import org.cascadebot.cascadebot.data.managers.PrefixManager;
 import org.cascadebot.cascadebot.data.objects.GuildData;
 
 import javax.annotation.Nonnull;
@@ -18,8 +19,15 @@ public class GuildSaveListener implements RemovalListener<Long, GuildData> {
 
     @Override
     public void onRemoval(@Nullable Long aLong, @Nullable GuildData data, @Nonnull RemovalCause removalCause) {
-        if (aLong == null) return;
-        GuildDataManager.replace(aLong, data);
+        // Guilds that haven't changed don't need to be written, and saving them would keep a stale copy around for
+        // the cache loader if the guild was invalidated because it was changed elsewhere
+        if (aLong == null || data == null) return;
+        if (!data.isDirty()) {
+            // The prefix could have been changed outside of the bot, so it is loaded again with the guild
+            if (removalCause != RemovalCause.REPLACED) PrefixManager.invalidate(aLong);
+            return;
+        }
+        GuildDataManager.save(aLong, data);
         CascadeBot.LOGGER.debug("Guild with ID: {} was saved to the database as it was removed from the map due to: {}", aLong, removalCause.toString());
         // TODO: FUTURE: Use this for statistics?
     }
@@ -5,6 +5,7 @@
 
 package org.cascadebot.cascadebot.events;
 
+import net.dv8tion.jda.core.entities.Member;
 import net.dv8tion.jda.core.entities.VoiceChannel;
 import net.dv8tion.jda.core.events.guild.voice.GenericGuildVoiceEvent;
 import net.dv8tion.jda.core.events.guild.voice.GuildVoiceJoinEvent;
@@ -30,16 +31,12 @@ public class VoiceEventListener extends ListenerAdapter {
         if (event instanceof GuildVoiceJoinEvent) {
             GuildVoiceJoinEvent joinEvent = (GuildVoiceJoinEvent) event;
             if (joinEvent.getChannelJoined().equals(botCurrentChannel) && voteButtonGroup != null) {
-                if (CascadeBot.INS.getPermissionsManager().isAuthorised(CascadeBot.INS.getCommandManager().getCommandByDefault("skip"), GuildDataManager.getGuildData(joinEvent.getChannelJoined().getGuild().getIdLong()), joinEvent.getMember())) {
-                    voteButtonGroup.allowUser(userId);
-                }
+                allowIfAuthorised(voteButtonGroup, joinEvent.getMember());
             }
         } else if (event instanceof GuildVoiceMoveEvent) {
             GuildVoiceMoveEvent moveEvent = (GuildVoiceMoveEvent) event;
             if (moveEvent.getChannelJoined().equals(botCurrentChannel) && voteButtonGroup != null) {
-                if (CascadeBot.INS.getPermissionsManager().isAuthorised(CascadeBot.INS.getCommandManager().getCommandByDefault("skip"), GuildDataManager.getGuildData(moveEvent.getChannelJoined().getGuild().getIdLong()), moveEvent.getMember())) {
-                    voteButtonGroup.allowUser(userId);
-                }
+                allowIfAuthorised(voteButtonGroup, moveEvent.getMember());
             } else if (moveEvent.getChannelLeft().equals(botCurrentChannel) && voteButtonGroup != null) {
                 voteButtonGroup.denyUser(userId);
             }
@@ -51,4 +48,17 @@ public class VoiceEventListener extends ListenerAdapter {
         }
     }
 
+    // A vote is only running if the skip command was used, so the guild data is almost always cached already. It is
+    // still loaded without blocking so the event thread never waits for the database
+    private void allowIfAuthorised(VoteButtonGroup voteButtonGroup, Member member) {
+        GuildDataManager.getGuildDataAsync(member.getGuild().getIdLong()).thenAccept(data -> {
+            if (CascadeBot.INS.getPermissionsManager().isAuthorised(CascadeBot.INS.getCommandManager().getCommandByDefault("skip"), data, member)) {
+                voteButtonGroup.allowUser(member.getUser().getIdLong());
+            }
+        }).exceptionally(throwable -> {
+            CascadeBot.LOGGER.error("Failed to check whether {} can vote to skip", member.getUser().getIdLong(), throwable);
+            return null;
+        });
+    }
+
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.metrics;
+
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.Policy;
+import io.prometheus.client.Collector;
+import io.prometheus.client.GaugeMetricFamily;
+import org.cascadebot.cascadebot.data.managers.GuildDataManager;
+import org.cascadebot.cascadebot.data.objects.GuildData;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+
+public class GuildCacheMetricsCollector extends Collector {
+
+    private static final int LARGEST_GUILDS = 10;
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+
+        List<MetricFamilySamples> metricFamilySamples = new ArrayList<>();
+
+        LoadingCache<Long, GuildData> guilds = GuildDataManager.getGuilds();
+
+        Optional<Policy.Eviction<Long, GuildData>> eviction = guilds.policy().eviction();
+        if (eviction.isPresent() && eviction.get().isWeighted()) {
+            GaugeMetricFamily weight = new GaugeMetricFamily("cascade_guild_cache_weight_bytes", "The estimated memory used by the cached guilds", List.of());
+            weight.addMetric(List.of(), eviction.get().weightedSize().orElse(0));
+            metricFamilySamples.add(weight);
+
+            GaugeMetricFamily maxWeight = new GaugeMetricFamily("cascade_guild_cache_max_weight_bytes", "The memory budget for the cached guilds", List.of());
+            maxWeight.addMetric(List.of(), eviction.get().getMaximum());
+            metricFamilySamples.add(maxWeight);
+        }
+
+        // Uses the size from when each guild was last weighed so scraping doesn't estimate every guild again
+        PriorityQueue<GuildData> largest = new PriorityQueue<>(Comparator.comparingInt(GuildData::getEstimatedSize));
+        for (GuildData data : guilds.asMap().values()) {
+            // Guilds are only weighed when there's a memory budget, otherwise they are estimated when first needed
+            if (data.getEstimatedSize() == 0) data.estimateSize();
+            largest.add(data);
+            if (largest.size() > LARGEST_GUILDS) largest.poll();
+        }
+        GaugeMetricFamily largestGuilds = new GaugeMetricFamily("cascade_guild_weight_bytes", "The estimated memory used by the largest cached guilds", List.of("guild"));
+        for (GuildData data : largest) {
+            largestGuilds.addMetric(List.of(String.valueOf(data.getGuildID())), data.getEstimatedSize());
+        }
+        metricFamilySamples.add(largestGuilds);
+
+        return metricFamilySamples;
+    }
+
+}
@@ -6,6 +6,7 @@
 package org.cascadebot.cascadebot.metrics;
 
 import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
 import io.prometheus.client.SimpleCollector;
 import io.prometheus.client.Summary;
 import io.prometheus.client.cache.caffeine.CacheMetricsCollector;
@@ -40,6 +41,41 @@ public class Metrics {
             .help("The number of commands that have errored out in this session")
             .labelNames("command")
             .register();
+    public Gauge commandQueueDepth = Gauge.build()
+            .name("cascade_command_queue_depth")
+            .help("The number of commands waiting to be executed")
+            .register();
+    public Summary commandQueueWaitTime = Summary.build()
+            .name("cascade_command_queue_wait_seconds")
+            .help("The time commands spend waiting to be executed")
+            .register();
+    public Counter commandsRejected = Counter.build()
+            .name("cascade_commands_rejected_total")
+            .help("The number of commands rejected by the command executor in this session")
+            .labelNames("reason")
+            .register();
+    public Counter commandsRateLimited = Counter.build()
+            .name("cascade_commands_rate_limited_total")
+            .help("The number of commands dropped by the rate limiter in this session")
+            .labelNames("bucket")
+            .register();
+    public Gauge guildSavesPending = Gauge.build()
+            .name("cascade_guild_saves_pending")
+            .help("The number of guilds waiting to be written to the database")
+            .register();
+    public Summary guildSaveBatchSize = Summary.build()
+            .name("cascade_guild_save_batch_size")
+            .help("The number of guilds written in each bulk write")
+            .register();
+    public Summary guildSaveFlushTime = Summary.build()
+            .name("cascade_guild_save_flush_seconds")
+            .help("The time taken to write all of the pending guild saves")
+            .register();
+    public Counter guildChanges = Counter.build()
+            .name("cascade_guild_changes_total")
+            .help("The number of changes to guild data made by something else, by whether the cached guild was invalidated")
+            .labelNames("result")
+            .register();
     public Counter buttonsPressed = Counter.build()
             .name("cascade_buttons_pressed_total")
             .help("The number of buttons pressed in this session")
@@ -55,6 +91,15 @@ public class Metrics {
             .name("cascade_tracks_played_total")
             .help("The number of tracks that have been played in this session")
             .register();
+    public Counter trackCacheRequests = Counter.build()
+            .name("cascade_track_cache_requests_total")
+            .help("The number of identifiers resolved through the track cache, by whether they were cached, already being resolved or had to be resolved")
+            .labelNames("result")
+            .register();
+    public Counter trackCacheSavedTime = Counter.build()
+            .name("cascade_track_cache_saved_seconds_total")
+            .help("The time it would have taken to resolve the identifiers that were found in the track cache")
+            .register();
 
 
     public Counter failedRestActions = Counter.build()
@@ -72,6 +117,7 @@ public class Metrics {
     public CacheMetricsCollector cacheMetrics = new CacheMetricsCollector().register();
 
     private BotMetricsCollector botMetricsCollector;
+    private GuildCacheMetricsCollector guildCacheMetricsCollector;
     private HTTPServer prometheusServer;
 
     private Metrics() {
@@ -84,6 +130,8 @@ public class Metrics {
         DefaultExports.initialize();
         botMetricsCollector = new BotMetricsCollector();
         botMetricsCollector.register();
+        guildCacheMetricsCollector = new GuildCacheMetricsCollector();
+        guildCacheMetricsCollector.register();
     }
 
     public HTTPServer getPrometheusServer() {
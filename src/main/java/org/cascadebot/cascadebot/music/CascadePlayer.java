@@ -5,14 +5,13 @@
 
 package org.cascadebot.cascadebot.music;
 
-import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
-import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import lavalink.client.io.jda.JdaLink;
 import lavalink.client.player.IPlayer;
 import lavalink.client.player.LavaplayerPlayerWrapper;
+import lombok.AccessLevel;
 import lombok.Getter;
 import net.dv8tion.jda.core.entities.Guild;
 import net.dv8tion.jda.core.entities.Member;
@@ -22,46 +21,98 @@ import org.cascadebot.cascadebot.data.managers.PlaylistManager;
 import org.cascadebot.cascadebot.data.objects.Playlist;
 import org.cascadebot.cascadebot.data.objects.PlaylistType;
 import org.cascadebot.cascadebot.events.PlayerListener;
+import org.cascadebot.cascadebot.utils.SerialExecutor;
 import org.cascadebot.cascadebot.utils.StringsUtil;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
+import java.util.concurrent.CompletionException;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
+/**
+ * The music player for a guild.
+ * <p>
+ * Anything that decides which track plays next (adding tracks, skipping, stopping and tracks ending) runs on the
+ * player's own serial executor, so these never race each other no matter which command or event thread they come
+ * from. The queue itself is guarded by the player's lock so that it can be read from any thread. The lock is only
+ * held while reading the playing track from the underlying player, never while changing it, as lavaplayer fires its
+ * events while holding its own locks.
+ */
 @Getter
 public class CascadePlayer {
 
-    private Queue<AudioTrack> queue = new LinkedList<>();
+    @Getter(AccessLevel.NONE)
+    private final TrackQueue<AudioTrack> queue = new TrackQueue<>(AudioTrack::getDuration);
+    @Getter(AccessLevel.NONE)
+    private final SerialExecutor executor = new SerialExecutor(MusicHandler.getPlayerExecutor());
 
     private long guildId;
     private IPlayer player;
 
-    private LoopMode loopMode = LoopMode.DISABLED;
-    private boolean shuffleEnabled = false;
+    private volatile LoopMode loopMode = LoopMode.DISABLED;
+    private volatile boolean shuffleEnabled = false;
+
+    // Only changed on the serial executor
+    @Getter(AccessLevel.NONE)
+    private int songPlayCount = 0;
+    // When the player was last got from the music handler, so players that are in use aren't purged
+    @Getter(AccessLevel.NONE)
+    private volatile long lastUsed = System.currentTimeMillis();
 
     public CascadePlayer(Guild guild) {
+        this(guild.getIdLong(), createPlayer(guild));
+    }
+
+    // Package private so the player can be tested without a guild
+    CascadePlayer(long guildId, IPlayer player) {
+        this.guildId = guildId;
+        this.player = player;
+        player.addListener(new PlayerListener(this));
+    }
+
+    private static IPlayer createPlayer(Guild guild) {
         if (MusicHandler.isLavalinkEnabled()) {
-            player = MusicHandler.getLavaLink().getLink(guild).getPlayer();
-        } else {
-            AudioPlayer aPlayer = MusicHandler.createLavaLinkPlayer();
-            player = new LavaplayerPlayerWrapper(aPlayer);
-            guild.getAudioManager().setSendingHandler(new LavaPlayerAudioSendHandler(aPlayer));
+            return MusicHandler.getLavaLink().getLink(guild).getPlayer();
         }
-        player.addListener(new PlayerListener(this));
-        guildId = guild.getIdLong();
+        AudioPlayer aPlayer = MusicHandler.createLavaLinkPlayer();
+        guild.getAudioManager().setSendingHandler(new LavaPlayerAudioSendHandler(aPlayer));
+        return new LavaplayerPlayerWrapper(aPlayer);
     }
 
     public double getQueueLength() {
-        double queueLength = player.getPlayingTrack().getDuration();
-        for (AudioTrack track : queue) {
-            queueLength += track.getDuration();
+        long queueLength;
+        synchronized (this) {
+            queueLength = queue.getTotalDuration();
         }
-        return queueLength;
+        return (double) player.getPlayingTrack().getDuration() + queueLength;
+    }
+
+    public synchronized int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Gets a copy of part of the queue.
+     *
+     * @param from The index of the first track, inclusive.
+     * @param to   The index of the last track, exclusive. This is limited to the size of the queue.
+     * @return The tracks in the range, in queue order.
+     * @see TrackQueue#getRange(int, int)
+     */
+    public synchronized List<AudioTrack> getQueueRange(int from, int to) {
+        return queue.getRange(Math.min(from, queue.size()), to);
+    }
+
+    /**
+     * Gets the track that will be played after the current one, without removing it from the queue.
+     *
+     * @return The next track, or null if the queue is empty.
+     */
+    public synchronized AudioTrack getNextTrack() {
+        return queue.peek();
     }
 
     /**
@@ -90,15 +141,29 @@ public class CascadePlayer {
     }
 
     public void addTrack(AudioTrack track) {
-        if (player.getPlayingTrack() != null) {
-            queue.add(track);
-        } else {
-            player.playTrack(track);
-        }
+        addTracks(List.of(track));
     }
 
+    /**
+     * Adds tracks to the end of the queue, playing the first one straight away if nothing is playing. The tracks are
+     * added on the player's serial executor, so this returns before they have been added.
+     *
+     * @param tracks The tracks to add.
+     */
     public void addTracks(Collection<AudioTrack> tracks) {
-        tracks.forEach(this::addTrack);
+        List<AudioTrack> toAdd = List.copyOf(tracks);
+        executor.execute(() -> {
+            AudioTrack toPlay;
+            synchronized (this) {
+                queue.addAll(toAdd);
+                // Tracks can be left waiting in the queue with nothing playing until a track's end event is handled, so
+                // whatever is at the front of the queue is started rather than the first new track jumping ahead of it
+                toPlay = player.getPlayingTrack() == null ? queue.poll() : null;
+            }
+            if (toPlay != null) {
+                player.playTrack(toPlay);
+            }
+        });
     }
 
     public void loopMode(LoopMode loopMode) {
@@ -106,19 +171,63 @@ public class CascadePlayer {
     }
 
     //Don't know if this will eb uses at all, but it's here if we want to.
-    public boolean toggleShuffleOnRepeat() {
+    public synchronized boolean toggleShuffleOnRepeat() {
         return (shuffleEnabled = !shuffleEnabled);
     }
 
-    public void shuffle() {
-        List<AudioTrack> tracks = new ArrayList<>(getQueue());
-        Collections.shuffle(tracks);
-        this.queue = new LinkedList<>();
-        this.queue.addAll(tracks);
+    public synchronized void shuffle() {
+        queue.shuffle();
     }
 
     public void skip() {
-        player.stopTrack();
+        executor.execute(() -> {
+            AudioTrack playing = player.getPlayingTrack();
+            if (playing != null) {
+                playNext(playing, true);
+            }
+        });
+    }
+
+    /**
+     * Called by the {@link PlayerListener} when a track has ended by itself, either because it finished or because it
+     * failed to load. Tracks that were stopped or replaced by the bot are handled by whatever stopped or replaced them.
+     *
+     * @param track The track that ended.
+     */
+    public void onTrackEnd(AudioTrack track) {
+        executor.execute(() -> playNext(track, false));
+    }
+
+    // Must only be called on the serial executor
+    private void playNext(AudioTrack finished, boolean skipping) {
+        // If a track was added and started while the end event was waiting, that track carries on playing
+        boolean startNext = skipping || player.getPlayingTrack() == null;
+        AudioTrack next;
+        synchronized (this) {
+            songPlayCount++;
+            if (loopMode == LoopMode.SONG) {
+                // Take the song that just finished and repeat it
+                next = startNext ? finished.makeClone() : null;
+            } else {
+                if (loopMode == LoopMode.PLAYLIST) {
+                    // Add the track to the end of the queue to be repeated
+                    queue.add(finished.makeClone());
+                    if (shuffleEnabled && songPlayCount % queue.size() == 0) {
+                        queue.shuffle(); //Shuffle when the tracks start over.
+                    }
+                }
+                next = startNext ? queue.poll() : null;
+            }
+            if (next == null && queue.isEmpty()) {
+                // No more songs left in the queue
+                songPlayCount = 0;
+            }
+        }
+        if (next != null) {
+            player.playTrack(next);
+        } else if (skipping) {
+            player.stopTrack();
+        }
     }
 
     public void join(VoiceChannel channel) {
@@ -158,60 +267,69 @@ public class CascadePlayer {
     }
 
     public void stop() {
-        queue.clear();
-        loopMode = LoopMode.DISABLED;
-        player.stopTrack();
+        executor.execute(() -> {
+            synchronized (this) {
+                queue.clear();
+                loopMode = LoopMode.DISABLED;
+                songPlayCount = 0;
+            }
+            player.stopTrack();
+        });
     }
 
-    public void loadLink(String input, long requestUser, Consumer<String> noMatchConsumer, Consumer<FriendlyException> exceptionConsumer, Consumer<List<AudioTrack>> resultTracks) {
-        MusicHandler.getPlayerManager().loadItem(input, new AudioLoadResultHandler() {
-            @Override
-            public void trackLoaded(AudioTrack audioTrack) {
-                audioTrack.setUserData(requestUser);
-                resultTracks.accept(Collections.singletonList(audioTrack));
-            }
+    void markUsed() {
+        lastUsed = System.currentTimeMillis();
+    }
+
+    boolean isUnusedSince(long time) {
+        return lastUsed < time;
+    }
 
-            @Override
-            public void playlistLoaded(AudioPlaylist audioPlaylist) {
-                List<AudioTrack> tracks = new ArrayList<>();
-                for (AudioTrack track : audioPlaylist.getTracks()) {
-                    track.setUserData(requestUser);
-                    tracks.add(track);
+    public void loadLink(String input, long requestUser, Consumer<String> noMatchConsumer, Consumer<FriendlyException> exceptionConsumer, Consumer<List<AudioTrack>> resultTracks) {
+        MusicHandler.getTrackCache().load(input).handle((result, throwable) -> {
+            if (throwable != null) {
+                Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                if (cause instanceof FriendlyException) {
+                    exceptionConsumer.accept((FriendlyException) cause);
+                } else {
+                    CascadeBot.LOGGER.error("Error loading {}", input, cause);
                 }
-                resultTracks.accept(Collections.unmodifiableList(tracks));
+                return null;
             }
-
-            @Override
-            public void noMatches() {
+            if (result.getType() == TrackCache.ResultType.NO_MATCH) {
                 noMatchConsumer.accept(input);
+                return null;
             }
-
-            @Override
-            public void loadFailed(FriendlyException e) {
-                exceptionConsumer.accept(e);
+            for (AudioTrack track : result.getTracks()) {
+                track.setUserData(requestUser);
             }
+            resultTracks.accept(Collections.unmodifiableList(result.getTracks()));
+            return null;
+        }).exceptionally(throwable -> {
+            CascadeBot.LOGGER.error("Error handling the loaded tracks for {}", input, throwable);
+            return null;
         });
     }
 
-    public void loadPlaylist(String name, Member sender, BiConsumer<LoadPlaylistResult, List<AudioTrack>> consumer) {
+    public void loadPlaylist(String name, Member sender, BiConsumer<LoadPlaylistResult, PlaylistLoader.LoadResult> consumer) {
         Playlist guild = PlaylistManager.getPlaylistByName(sender.getGuild().getIdLong(), PlaylistType.GUILD, name);
         Playlist user = PlaylistManager.getPlaylistByName(sender.getUser().getIdLong(), PlaylistType.USER, name);
         if (guild != null && user != null) {
             consumer.accept(LoadPlaylistResult.EXISTS_IN_ALL_SCOPES, null);
         } else if (guild != null) {
-            loadLoadedPlaylist(guild, sender.getUser().getIdLong(), tracks -> {
-                consumer.accept(LoadPlaylistResult.LOADED_GUILD, tracks);
+            loadLoadedPlaylist(guild, sender.getUser().getIdLong(), loadResult -> {
+                consumer.accept(LoadPlaylistResult.LOADED_GUILD, loadResult);
             });
         } else if (user != null) {
-            loadLoadedPlaylist(user, sender.getUser().getIdLong(), tracks -> {
-                consumer.accept(LoadPlaylistResult.LOADED_USER, tracks);
+            loadLoadedPlaylist(user, sender.getUser().getIdLong(), loadResult -> {
+                consumer.accept(LoadPlaylistResult.LOADED_USER, loadResult);
             });
         } else {
             consumer.accept(LoadPlaylistResult.DOESNT_EXIST, null);
         }
     }
 
-    public void loadPlaylist(String name, Member sender, PlaylistType scope, BiConsumer<LoadPlaylistResult, List<AudioTrack>> consumer) {
+    public void loadPlaylist(String name, Member sender, PlaylistType scope, BiConsumer<LoadPlaylistResult, PlaylistLoader.LoadResult> consumer) {
         LoadPlaylistResult result = LoadPlaylistResult.DOESNT_EXIST;
         long owner = 0;
         switch (scope) {
@@ -231,48 +349,44 @@ public class CascadePlayer {
         }
 
         LoadPlaylistResult loadPlaylistResult = result;
-        loadLoadedPlaylist(playlist, sender.getUser().getIdLong(), tracks -> {
-            consumer.accept(loadPlaylistResult, tracks);
+        loadLoadedPlaylist(playlist, sender.getUser().getIdLong(), loadResult -> {
+            consumer.accept(loadPlaylistResult, loadResult);
         });
     }
 
-    private void loadLoadedPlaylist(Playlist playlist, long reqUser, Consumer<List<AudioTrack>> loadedConsumer) {
-        List<AudioTrack> tracks = new ArrayList<>();
-        for (String url : playlist.getTracks()) {
-            loadLink(url, reqUser, noMatch -> {
-                playlist.removeTrack(url);
-            }, exception -> {
-                playlist.removeTrack(url);
-            }, loadedTracks -> {
-                tracks.addAll(loadedTracks);
-                if (tracks.size() == playlist.getTracks().size()) {
-                    loadedConsumer.accept(tracks);
-                }
-            });
-        }
+    private void loadLoadedPlaylist(Playlist playlist, long reqUser, Consumer<PlaylistLoader.LoadResult> loadedConsumer) {
+        MusicHandler.getPlaylistLoader().load(playlist.getTracks(), playlist.getEncodedTracks(), reqUser).thenAccept(loadedConsumer).exceptionally(throwable -> {
+            CascadeBot.LOGGER.error("Error handling loaded playlist {}", playlist.getName(), throwable);
+            return null;
+        });
     }
 
     public SavePlaylistResult saveCurrentPlaylist(long owner, PlaylistType scope, String name, boolean overwrite) {
         List<AudioTrack> tracks = new ArrayList<>();
         tracks.add(player.getPlayingTrack());
-        tracks.addAll(this.queue);
+        synchronized (this) {
+            tracks.addAll(this.queue);
+        }
 
         List<String> ids = new ArrayList<>();
+        List<String> encodedTracks = new ArrayList<>();
         for (AudioTrack track : tracks) {
             ids.add(track.getIdentifier());
+            String encodedTrack = MusicHandler.getPlaylistLoader().encodeTrack(track);
+            encodedTracks.add(encodedTrack == null ? "" : encodedTrack);
         }
 
         Playlist search = PlaylistManager.getPlaylistByName(owner, scope, name);
         if (search != null) {
             if (overwrite) {
-                search.setTracks(ids);
+                search.setTracks(ids, encodedTracks);
                 PlaylistManager.replacePlaylist(search);
                 return SavePlaylistResult.OVERWRITE;
             } else {
                 return SavePlaylistResult.ALREADY_EXISTS;
             }
         } else {
-            PlaylistManager.savePlaylist(new Playlist(owner, name, scope, ids));
+            PlaylistManager.savePlaylist(new Playlist(owner, name, scope, ids, encodedTracks));
             return SavePlaylistResult.NEW;
         }
     }
@@ -34,6 +34,7 @@ import org.cascadebot.cascadebot.data.Config;
 import org.cascadebot.cascadebot.data.managers.GuildDataManager;
 import org.cascadebot.cascadebot.data.objects.Flag;
 import org.cascadebot.cascadebot.messaging.Messaging;
+import org.cascadebot.cascadebot.metrics.Metrics;
 import org.cascadebot.cascadebot.utils.PasteUtils;
 import org.jetbrains.annotations.NotNull;
 
@@ -42,10 +43,15 @@ import java.net.URI;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.LongFunction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -59,7 +65,14 @@ public class MusicHandler {
     private CascadeBot instance;
 
     @Getter
-    private static Map<Long, CascadePlayer> players = new HashMap<>();
+    private static Map<Long, CascadePlayer> players = new ConcurrentHashMap<>();
+
+    // Runs the serial executors of every player, the tasks are short so a few threads are enough
+    @Getter
+    private static ExecutorService playerExecutor = createPlayerExecutor();
+
+    // How long a player has to go without being used before it can be purged
+    private static final long PLAYER_PURGE_DELAY = TimeUnit.MINUTES.toMillis(5);
 
     public MusicHandler(CascadeBot instance) {
         this.instance = instance;
@@ -67,6 +80,11 @@ public class MusicHandler {
 
     JsonParser musicJsonParser = new JsonParser();
 
+    @Getter
+    private static PlaylistLoader playlistLoader;
+    @Getter
+    private static TrackCache trackCache;
+
     private static JdaLavalink lavalink;
     private static boolean lavalinkEnabled;
 
@@ -82,6 +100,10 @@ public class MusicHandler {
         playerManager.registerSourceManager(new TwitchStreamAudioSourceManager());
         playerManager.registerSourceManager(new SoundCloudAudioSourceManager());
 
+        trackCache = new TrackCache(playerManager, Config.INS.getTrackCacheMaxTracks(), Config.INS.getTrackCacheTtl(), Config.INS.getTrackCacheNoMatchTtl());
+        Metrics.INS.cacheMetrics.addCache("track", trackCache.getCache().synchronous());
+        playlistLoader = new PlaylistLoader(playerManager, Config.INS.getPlaylistLoadParallelism(), TimeUnit.SECONDS.toMillis(Config.INS.getPlaylistLoadTimeout()));
+
         if (Config.INS.getMusicNodes().size() > 0) {
             lavalink = new JdaLavalink(
                     Config.INS.getBotID().toString(),
@@ -98,13 +120,24 @@ public class MusicHandler {
     }
 
     public CascadePlayer getPlayer(long guildId) {
-        return players.computeIfAbsent(guildId, id -> {
+        return getPlayer(guildId, id -> {
             Guild guild = CascadeBot.INS.getShardManager().getGuildById(id);
-            if (guild != null) {
-                return new CascadePlayer(guild);
-            } else {
-                return null;
+            return guild == null ? null : new CascadePlayer(guild);
+        });
+    }
+
+    // Package private so players can be tested without a guild
+    static CascadePlayer getPlayer(long guildId, LongFunction<CascadePlayer> playerCreator) {
+        // Marking the player as used is done atomically with getting it so it can't be purged in between
+        return players.compute(guildId, (id, player) -> {
+            if (player == null) {
+                player = playerCreator.apply(id);
+                if (player == null) {
+                    return null;
+                }
             }
+            player.markUsed();
+            return player;
         });
     }
 
@@ -114,7 +147,13 @@ public class MusicHandler {
 
     public void purgeDisconnectedPlayers() {
         // Removes all players that are not connected to a channel unless they have supported us on Patreon
-        players.entrySet().removeIf(entry -> entry.getValue().getConnectedChannel() == null && !GuildDataManager.getGuildData(entry.getKey()).isFlagEnabled(Flag.MUSIC_SERVICES));
+        long unusedSince = System.currentTimeMillis() - PLAYER_PURGE_DELAY;
+        for (Long guildId : players.keySet()) {
+            if (GuildDataManager.getGuildData(guildId).isFlagEnabled(Flag.MUSIC_SERVICES)) continue;
+            // Checked again while removing so a player that has just been got by a command isn't removed
+            players.computeIfPresent(guildId, (id, player) ->
+                    player.getConnectedChannel() == null && player.isUnusedSince(unusedSince) ? null : player);
+        }
     }
 
     /**
@@ -192,6 +231,16 @@ public class MusicHandler {
         });
     }
 
+    private static ExecutorService createPlayerExecutor() {
+        ThreadGroup threadGroup = new ThreadGroup("Music Threads");
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        return Executors.newFixedThreadPool(2, r -> {
+            Thread thread = new Thread(threadGroup, r, "Music Pool-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
     public static AudioPlayer createLavaLinkPlayer() {
         return playerManager.createPlayer();
     }
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.music;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageInput;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageOutput;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.DecodedTrackHolder;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Loads many tracks at once, such as when a saved playlist is loaded. Only a limited number of items are loaded at the
+ * same time so a large playlist doesn't take over lavaplayer's loading threads, and the load always finishes within the
+ * timeout, even if some of the items fail to load or never respond.
+ * <p>
+ * Tracks can also be given in lavaplayer's encoded form. These are decoded locally without having to look anything up,
+ * and only the tracks that fail to decode are loaded from their identifiers.
+ */
+public class PlaylistLoader {
+
+    private final AudioPlayerManager playerManager;
+    private final int parallelism;
+    private final long timeout;
+
+    /**
+     * @param playerManager The player manager to load the items with.
+     * @param parallelism   The most items a single load will have loading at the same time.
+     * @param timeout       How long a load can take in milliseconds. Items that haven't loaded by then are reported as
+     *                      failed.
+     */
+    public PlaylistLoader(AudioPlayerManager playerManager, int parallelism, long timeout) {
+        this.playerManager = playerManager;
+        this.parallelism = Math.max(1, parallelism);
+        this.timeout = timeout;
+    }
+
+    /**
+     * Loads a list of identifiers or URLs.
+     *
+     * @param identifiers The identifiers to load.
+     * @param requestUser The ID of the user that requested the tracks, this is set as the user data of every track.
+     * @return A future that completes with the loaded tracks in the same order as the identifiers, along with the
+     * identifiers that couldn't be loaded. The future never completes exceptionally.
+     */
+    public CompletableFuture<LoadResult> load(List<String> identifiers, long requestUser) {
+        return load(identifiers, null, requestUser);
+    }
+
+    /**
+     * Loads a list of identifiers or URLs, decoding the encoded form of the tracks where it is available.
+     *
+     * @param identifiers   The identifiers to load.
+     * @param encodedTracks The encoded tracks, from {@link #encodeTrack(AudioTrack)}, in the same order as the
+     *                      identifiers. Any of these can be null or empty, and if this is null or a different size to the
+     *                      identifiers every track is loaded from its identifier.
+     * @param requestUser   The ID of the user that requested the tracks, this is set as the user data of every track.
+     * @return A future that completes with the loaded tracks in the same order as the identifiers, along with the
+     * identifiers that couldn't be loaded. The future never completes exceptionally.
+     */
+    public CompletableFuture<LoadResult> load(List<String> identifiers, List<String> encodedTracks, long requestUser) {
+        BatchLoad batchLoad = new BatchLoad(List.copyOf(identifiers), requestUser);
+        if (encodedTracks != null && encodedTracks.size() == identifiers.size()) {
+            for (int i = 0; i < encodedTracks.size(); i++) {
+                AudioTrack track = decodeTrack(encodedTracks.get(i));
+                if (track != null) {
+                    track.setUserData(requestUser);
+                    batchLoad.results.set(i, List.of(track));
+                }
+            }
+        }
+        return batchLoad.start();
+    }
+
+    /**
+     * Encodes a track so that it can be stored and later loaded again without looking it up.
+     *
+     * @param track The track to encode.
+     * @return The encoded track in base 64, or null if it couldn't be encoded.
+     */
+    public String encodeTrack(AudioTrack track) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            playerManager.encodeTrack(new MessageOutput(output), track);
+        } catch (IOException | IllegalStateException e) {
+            // Tracks from sources that aren't registered any more can't be encoded
+            return null;
+        }
+        return Base64.getEncoder().encodeToString(output.toByteArray());
+    }
+
+    private AudioTrack decodeTrack(String encodedTrack) {
+        if (encodedTrack == null || encodedTrack.isEmpty()) return null;
+        try {
+            DecodedTrackHolder holder = playerManager.decodeTrack(new MessageInput(new ByteArrayInputStream(Base64.getDecoder().decode(encodedTrack))));
+            return holder == null ? null : holder.decodedTrack;
+        } catch (IOException | RuntimeException e) {
+            // Either this isn't valid base 64, the data is corrupt or the track is from a source that isn't registered
+            return null;
+        }
+    }
+
+    private class BatchLoad {
+
+        private final List<String> identifiers;
+        private final long requestUser;
+
+        private final CompletableFuture<LoadResult> future = new CompletableFuture<>();
+        // The tracks each identifier loaded to, null until it has loaded and empty if it failed
+        private final AtomicReferenceArray<List<AudioTrack>> results;
+        private final AtomicReferenceArray<Future<Void>> loading;
+        // The indexes of the identifiers that have to be loaded, as they weren't decoded
+        private List<Integer> toLoad;
+        private final AtomicInteger nextIndex = new AtomicInteger();
+        private AtomicInteger remaining;
+
+        private BatchLoad(List<String> identifiers, long requestUser) {
+            this.identifiers = identifiers;
+            this.requestUser = requestUser;
+            this.results = new AtomicReferenceArray<>(identifiers.size());
+            this.loading = new AtomicReferenceArray<>(identifiers.size());
+        }
+
+        private CompletableFuture<LoadResult> start() {
+            toLoad = new ArrayList<>();
+            for (int i = 0; i < identifiers.size(); i++) {
+                if (results.get(i) == null) toLoad.add(i);
+            }
+            remaining = new AtomicInteger(toLoad.size());
+            if (toLoad.isEmpty()) {
+                finish(false);
+                return future;
+            }
+            CompletableFuture.delayedExecutor(timeout, TimeUnit.MILLISECONDS).execute(this::timeOut);
+            for (int i = 0; i < Math.min(parallelism, toLoad.size()); i++) {
+                loadNext();
+            }
+            return future;
+        }
+
+        private void loadNext() {
+            int next = nextIndex.getAndIncrement();
+            if (next >= toLoad.size() || future.isDone()) return;
+            int index = toLoad.get(next);
+            loading.set(index, playerManager.loadItem(identifiers.get(index), new AudioLoadResultHandler() {
+                @Override
+                public void trackLoaded(AudioTrack track) {
+                    track.setUserData(requestUser);
+                    loaded(index, List.of(track));
+                }
+
+                @Override
+                public void playlistLoaded(AudioPlaylist playlist) {
+                    for (AudioTrack track : playlist.getTracks()) {
+                        track.setUserData(requestUser);
+                    }
+                    loaded(index, List.copyOf(playlist.getTracks()));
+                }
+
+                @Override
+                public void noMatches() {
+                    loaded(index, List.of());
+                }
+
+                @Override
+                public void loadFailed(FriendlyException e) {
+                    loaded(index, List.of());
+                }
+            }));
+        }
+
+        private void loaded(int index, List<AudioTrack> tracks) {
+            if (!results.compareAndSet(index, null, tracks)) return;
+            if (remaining.decrementAndGet() == 0) {
+                finish(false);
+            } else {
+                loadNext();
+            }
+        }
+
+        private void timeOut() {
+            if (future.isDone()) return;
+            for (int i = 0; i < identifiers.size(); i++) {
+                Future<Void> itemFuture = loading.get(i);
+                if (itemFuture != null && results.get(i) == null) {
+                    itemFuture.cancel(true);
+                }
+            }
+            finish(true);
+        }
+
+        private void finish(boolean timedOut) {
+            List<AudioTrack> tracks = new ArrayList<>();
+            List<String> failed = new ArrayList<>();
+            for (int i = 0; i < identifiers.size(); i++) {
+                List<AudioTrack> result = results.get(i);
+                if (result == null || result.isEmpty()) {
+                    failed.add(identifiers.get(i));
+                } else {
+                    tracks.addAll(result);
+                }
+            }
+            future.complete(new LoadResult(Collections.unmodifiableList(tracks), Collections.unmodifiableList(failed), timedOut));
+        }
+
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class LoadResult {
+
+        // The loaded tracks, in the same order as the identifiers they were loaded from
+        private final List<AudioTrack> tracks;
+        // The identifiers that didn't match anything, failed to load or hadn't loaded before the timeout
+        private final List<String> failed;
+        private final boolean timedOut;
+
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.music;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.cascadebot.cascadebot.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caches what identifiers and URLs resolve to for every guild, so that popular tracks and shared playlists are only
+ * looked up once. Identifiers that didn't match anything are cached for a shorter time, loads that failed aren't cached
+ * at all. If the same identifier is requested again while it is still being looked up, both requests share the lookup.
+ * <p>
+ * The cache only holds prototype tracks that are never played, every request gets its own clones of them.
+ */
+public class TrackCache {
+
+    private final AudioPlayerManager playerManager;
+
+    @Getter(AccessLevel.PACKAGE)
+    private final AsyncLoadingCache<String, CachedResult> cache;
+
+    /**
+     * @param playerManager The player manager to resolve identifiers with.
+     * @param maxTracks     The most tracks to keep in the cache, a playlist counts as each of its tracks.
+     * @param ttl           How long to keep what an identifier resolved to in seconds.
+     * @param noMatchTtl    How long to remember that an identifier didn't match anything in seconds.
+     */
+    public TrackCache(AudioPlayerManager playerManager, long maxTracks, long ttl, long noMatchTtl) {
+        this.playerManager = playerManager;
+        long ttlNanos = TimeUnit.SECONDS.toNanos(ttl);
+        long noMatchTtlNanos = TimeUnit.SECONDS.toNanos(noMatchTtl);
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxTracks)
+                .weigher((String identifier, CachedResult result) -> Math.max(1, result.tracks.size()))
+                .expireAfter(new Expiry<String, CachedResult>() {
+                    @Override
+                    public long expireAfterCreate(String identifier, CachedResult result, long currentTime) {
+                        return result.type == ResultType.NO_MATCH ? noMatchTtlNanos : ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String identifier, CachedResult result, long currentTime, long currentDuration) {
+                        return expireAfterCreate(identifier, result, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String identifier, CachedResult result, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .buildAsync((identifier, executor) -> resolve(identifier));
+    }
+
+    /**
+     * Gets what an identifier or URL resolves to, from the cache if it has been resolved recently.
+     *
+     * @param identifier The identifier or URL to resolve.
+     * @return A future that completes with new clones of the resolved tracks, or completes exceptionally with a
+     * {@link FriendlyException} if the tracks couldn't be loaded.
+     */
+    public CompletableFuture<LoadResult> load(String identifier) {
+        AtomicBoolean resolved = new AtomicBoolean();
+        CompletableFuture<CachedResult> future = cache.get(identifier, (key, executor) -> {
+            resolved.set(true);
+            return resolve(key);
+        });
+
+        boolean hit = !resolved.get();
+        Metrics.INS.trackCacheRequests.labels(!hit ? "miss" : future.isDone() ? "hit" : "coalesced").inc();
+        return future.thenApply(result -> {
+            if (hit) {
+                Metrics.INS.trackCacheSavedTime.inc(result.loadTime / 1e9);
+            }
+            List<AudioTrack> tracks = new ArrayList<>(result.tracks.size());
+            for (AudioTrack track : result.tracks) {
+                tracks.add(track.makeClone());
+            }
+            return new LoadResult(result.type, tracks);
+        });
+    }
+
+    private CompletableFuture<CachedResult> resolve(String identifier) {
+        CompletableFuture<CachedResult> future = new CompletableFuture<>();
+        long startTime = System.nanoTime();
+        playerManager.loadItem(identifier, new AudioLoadResultHandler() {
+            @Override
+            public void trackLoaded(AudioTrack track) {
+                future.complete(new CachedResult(ResultType.TRACK, List.of(track), System.nanoTime() - startTime));
+            }
+
+            @Override
+            public void playlistLoaded(AudioPlaylist playlist) {
+                future.complete(new CachedResult(ResultType.PLAYLIST, List.copyOf(playlist.getTracks()), System.nanoTime() - startTime));
+            }
+
+            @Override
+            public void noMatches() {
+                future.complete(new CachedResult(ResultType.NO_MATCH, List.of(), System.nanoTime() - startTime));
+            }
+
+            @Override
+            public void loadFailed(FriendlyException e) {
+                // Failed futures are removed from the cache, so the next request tries again
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    public enum ResultType {
+        TRACK,
+        PLAYLIST,
+        NO_MATCH
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class LoadResult {
+
+        private final ResultType type;
+        private final List<AudioTrack> tracks;
+
+    }
+
+    @AllArgsConstructor
+    static class CachedResult {
+
+        private final ResultType type;
+        // Prototypes that are only ever cloned
+        private final List<AudioTrack> tracks;
+        // How long it took to resolve the identifier in nanoseconds
+        private final long loadTime;
+
+    }
+
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.music;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ToLongFunction;
+
+/**
+ * A queue of tracks that can also be accessed by index. The tracks are held in a randomly balanced tree where each
+ * node knows the number of tracks and the total duration below it, so the size and the total duration are available
+ * straight away and getting, inserting, removing and moving a track by its index are all O(log n).
+ * <p>
+ * This isn't thread safe, it must only be used by one thread at a time.
+ *
+ * @param <T> The type of track in the queue.
+ */
+public class TrackQueue<T> extends AbstractQueue<T> {
+
+    private final ToLongFunction<T> durationFunction;
+
+    private Node<T> root;
+    private int modCount;
+
+    /**
+     * Creates an empty queue.
+     *
+     * @param durationFunction Gets the duration of a track. This is only called when a track is added to the queue so
+     *                         the duration must not change while the track is queued.
+     */
+    public TrackQueue(ToLongFunction<T> durationFunction) {
+        this.durationFunction = durationFunction;
+    }
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * Gets the total duration of every track in the queue. If the total is too large to fit in a long, for example
+     * because a stream is queued, this is {@link Long#MAX_VALUE}.
+     *
+     * @return The total duration.
+     */
+    public long getTotalDuration() {
+        return totalDuration(root);
+    }
+
+    public T get(int index) {
+        checkIndex(index, size());
+        Node<T> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node.value;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    @Override
+    public boolean offer(T track) {
+        add(size(), track);
+        return true;
+    }
+
+    /**
+     * Inserts a track at an index, moving the track currently at that index and every track after it back by one.
+     *
+     * @param index The index to insert the track at, from 0 to the size of the queue.
+     * @param track The track to insert.
+     */
+    public void add(int index, T track) {
+        if (track == null) throw new NullPointerException("track");
+        checkIndex(index, size() + 1);
+        root = insert(root, index, new Node<>(track, durationFunction.applyAsLong(track)));
+        modCount++;
+    }
+
+    /**
+     * Removes the track at an index, moving every track after it forward by one.
+     *
+     * @param index The index of the track to remove.
+     * @return The track that was removed.
+     */
+    public T remove(int index) {
+        checkIndex(index, size());
+        return removeNode(index).value;
+    }
+
+    /**
+     * Moves the track at one index to another index. The other tracks keep their order.
+     *
+     * @param from The index of the track to move.
+     * @param to   The index the track should be at once it has been moved.
+     */
+    public void move(int from, int to) {
+        checkIndex(from, size());
+        checkIndex(to, size());
+        if (from == to) return;
+        Node<T> node = removeNode(from);
+        node.left = null;
+        node.right = null;
+        update(node);
+        root = insert(root, to, node);
+    }
+
+    @Override
+    public T poll() {
+        return root == null ? null : removeNode(0).value;
+    }
+
+    @Override
+    public T peek() {
+        return root == null ? null : get(0);
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        modCount++;
+    }
+
+    /**
+     * Gets a copy of the tracks between two indexes, used for showing one page of the queue without going through
+     * every track before it.
+     *
+     * @param from The index of the first track, inclusive.
+     * @param to   The index of the last track, exclusive. This is limited to the size of the queue.
+     * @return The tracks in the range, in queue order.
+     */
+    public List<T> getRange(int from, int to) {
+        to = Math.min(to, size());
+        if (from < 0 || from > to) throw new IndexOutOfBoundsException("From: " + from + ", To: " + to);
+        List<T> tracks = new ArrayList<>(to - from);
+        Iterator<T> iterator = iterator(from);
+        for (int i = from; i < to; i++) {
+            tracks.add(iterator.next());
+        }
+        return tracks;
+    }
+
+    public void shuffle() {
+        shuffle(ThreadLocalRandom.current());
+    }
+
+    /**
+     * Shuffles the tracks in place. The tracks are shuffled between the existing nodes, so the tree doesn't need to be
+     * rebuilt and no new nodes are created.
+     *
+     * @param random The source of randomness to shuffle with.
+     */
+    public void shuffle(Random random) {
+        List<Node<T>> nodes = new ArrayList<>(size());
+        collect(root, nodes);
+        for (int i = nodes.size() - 1; i > 0; i--) {
+            Node<T> first = nodes.get(i);
+            Node<T> second = nodes.get(random.nextInt(i + 1));
+            T value = first.value;
+            long duration = first.duration;
+            first.value = second.value;
+            first.duration = second.duration;
+            second.value = value;
+            second.duration = duration;
+        }
+        updateAll(root);
+        modCount++;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return iterator(0);
+    }
+
+    /**
+     * Gets an iterator that starts at an index.
+     *
+     * @param index The index of the first track the iterator returns.
+     * @return The iterator.
+     */
+    public Iterator<T> iterator(int index) {
+        checkIndex(index, size() + 1);
+        return new TrackIterator(index);
+    }
+
+    private Node<T> removeNode(int index) {
+        Node<T> removed = find(root, index);
+        root = remove(root, index);
+        modCount++;
+        return removed;
+    }
+
+    private static <T> Node<T> find(Node<T> node, int index) {
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    private static <T> Node<T> insert(Node<T> node, int index, Node<T> inserted) {
+        if (node == null) return inserted;
+        if (inserted.priority > node.priority) {
+            Node<T>[] split = split(node, index);
+            inserted.left = split[0];
+            inserted.right = split[1];
+            update(inserted);
+            return inserted;
+        }
+        int leftSize = size(node.left);
+        if (index <= leftSize) {
+            node.left = insert(node.left, index, inserted);
+        } else {
+            node.right = insert(node.right, index - leftSize - 1, inserted);
+        }
+        update(node);
+        return node;
+    }
+
+    private static <T> Node<T> remove(Node<T> node, int index) {
+        int leftSize = size(node.left);
+        if (index == leftSize) {
+            return merge(node.left, node.right);
+        }
+        if (index < leftSize) {
+            node.left = remove(node.left, index);
+        } else {
+            node.right = remove(node.right, index - leftSize - 1);
+        }
+        update(node);
+        return node;
+    }
+
+    /**
+     * Splits a tree into the first {@code count} nodes and the rest.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Node<T>[] split(Node<T> node, int count) {
+        if (node == null) return new Node[]{null, null};
+        int leftSize = size(node.left);
+        if (count <= leftSize) {
+            Node<T>[] split = split(node.left, count);
+            node.left = split[1];
+            update(node);
+            split[1] = node;
+            return split;
+        } else {
+            Node<T>[] split = split(node.right, count - leftSize - 1);
+            node.right = split[0];
+            update(node);
+            split[0] = node;
+            return split;
+        }
+    }
+
+    private static <T> Node<T> merge(Node<T> left, Node<T> right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        } else {
+            right.left = merge(left, right.left);
+            update(right);
+            return right;
+        }
+    }
+
+    private static <T> void collect(Node<T> node, List<Node<T>> nodes) {
+        if (node == null) return;
+        collect(node.left, nodes);
+        nodes.add(node);
+        collect(node.right, nodes);
+    }
+
+    private static <T> void updateAll(Node<T> node) {
+        if (node == null) return;
+        updateAll(node.left);
+        updateAll(node.right);
+        update(node);
+    }
+
+    private static <T> void update(Node<T> node) {
+        node.size = 1 + size(node.left) + size(node.right);
+        node.totalDuration = addDurations(addDurations(node.duration, totalDuration(node.left)), totalDuration(node.right));
+    }
+
+    private static long addDurations(long first, long second) {
+        long total = first + second;
+        // Streams have a duration of Long.MAX_VALUE, so the total stops there rather than overflowing
+        return total < 0 ? Long.MAX_VALUE : total;
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static long totalDuration(Node<?> node) {
+        return node == null ? 0 : node.totalDuration;
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private static class Node<T> {
+
+        private final int priority = ThreadLocalRandom.current().nextInt();
+
+        private T value;
+        private long duration;
+
+        private Node<T> left;
+        private Node<T> right;
+        private int size;
+        private long totalDuration;
+
+        private Node(T value, long duration) {
+            this.value = value;
+            this.duration = Math.max(0, duration);
+            update(this);
+        }
+
+    }
+
+    private class TrackIterator implements Iterator<T> {
+
+        // The nodes still to be visited on the way back up the tree, the next node is at the top
+        private final Deque<Node<T>> stack = new ArrayDeque<>();
+        private int nextIndex;
+        private int expectedModCount = modCount;
+        private boolean canRemove;
+
+        private TrackIterator(int index) {
+            seek(index);
+        }
+
+        private void seek(int index) {
+            stack.clear();
+            nextIndex = index;
+            Node<T> node = root;
+            while (node != null) {
+                int leftSize = size(node.left);
+                if (index < leftSize) {
+                    stack.push(node);
+                    node = node.left;
+                } else if (index == leftSize) {
+                    stack.push(node);
+                    return;
+                } else {
+                    index -= leftSize + 1;
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (stack.isEmpty()) throw new NoSuchElementException();
+            Node<T> node = stack.pop();
+            for (Node<T> child = node.right; child != null; child = child.left) {
+                stack.push(child);
+            }
+            nextIndex++;
+            canRemove = true;
+            return node.value;
+        }
+
+        @Override
+        public void remove() {
+            if (!canRemove) throw new IllegalStateException();
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            TrackQueue.this.remove(nextIndex - 1);
+            expectedModCount = modCount;
+            canRemove = false;
+            // Removing the track can rebalance the tree, so find the next node again
+            seek(nextIndex - 1);
+        }
+
+    }
+
+}
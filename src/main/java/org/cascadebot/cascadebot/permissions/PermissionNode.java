@@ -5,7 +5,6 @@
 
 package org.cascadebot.cascadebot.permissions;
 
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 
 import java.util.Arrays;
@@ -13,26 +12,96 @@ import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-// All credit to the FlareBot project for this file
+// All credit to the FlareBot project for the original version of this file
 // https://github.com/FlareBot/FlareBot/blob/master/src/main/java/stream/flarebot/flarebot/permissions/PermissionNode.java
-@AllArgsConstructor
-@Getter
 public class PermissionNode implements Predicate<String> {
 
+    // It splits by a `*` that's on a start of a string or has . around them
+    private static final Pattern WILDCARD_SPLIT = Pattern.compile("(?:^\\*(\\.))|(?:(?<=\\.)\\*(?=\\.))|(?:(?<=\\.)\\*$)");
+
+    @Getter
     private final String node;
 
+    private final boolean matchAll;
+    // The literal parts of the node, each wildcard between them has to match at least one character
+    private final String[] parts;
+    private final boolean trailingWildcard;
+
+    private volatile Pattern pattern;
+
+    public PermissionNode(String node) {
+        this.node = node;
+        this.matchAll = node.equals("*");
+        this.parts = WILDCARD_SPLIT.split(node);
+        this.trailingWildcard = node.endsWith("*");
+    }
+
+    /**
+     * Checks whether a permission matches this node. The node is only parsed once when it is created so this
+     * doesn't allocate anything for normal permission strings.
+     *
+     * @param permission The permission to check.
+     * @return Whether the permission matches this node.
+     */
     @Override
     public boolean test(String permission) {
-        if (getNode().equals("*"))
-            return true;
-        // It splits by a `*` that's on a start of a string or has . around them
-        String textNode = Arrays.stream(getNode().split("(?:^\\*(\\.))|(?:(?<=\\.)\\*(?=\\.))|(?:(?<=\\.)\\*$)"))
-                // Then it escapes all of that so its not regexps
-                .map(Pattern::quote)
-                // And then it joins them with a match all regexp
-                .collect(Collectors.joining(".+")) + (getNode().endsWith("*") ? ".+" : "");
-        // And then it lets Java REGEXP compare them. Ty @I-Al-Istannen for making me do this comment
-        return permission.matches(textNode);
+        if (matchAll) return true;
+        if (containsLineTerminator(permission)) {
+            // Wildcards don't match line terminators, the regex handles that case properly so just use that
+            return getPattern().matcher(permission).matches();
+        }
+
+        int length = permission.length();
+        if (parts.length == 0) {
+            return trailingWildcard ? length > 0 : length == 0;
+        }
+
+        String first = parts[0];
+        if (!permission.startsWith(first)) return false;
+        int position = first.length();
+
+        int last = parts.length - 1;
+        if (last == 0) {
+            return trailingWildcard ? length > position : length == position;
+        }
+
+        // Matching each part as early as possible leaves the most room for the parts after it
+        for (int i = 1; i < last; i++) {
+            int index = permission.indexOf(parts[i], position + 1);
+            if (index < 0) return false;
+            position = index + parts[i].length();
+        }
+
+        String lastPart = parts[last];
+        if (trailingWildcard) {
+            int index = permission.indexOf(lastPart, position + 1);
+            return index >= 0 && index + lastPart.length() < length;
+        } else {
+            int start = length - lastPart.length();
+            return start > position && permission.startsWith(lastPart, start);
+        }
+    }
+
+    private Pattern getPattern() {
+        Pattern pattern = this.pattern;
+        if (pattern == null) {
+            String textNode = Arrays.stream(parts)
+                    // Escape all of the parts so they are not regexps
+                    .map(Pattern::quote)
+                    // And then join them with a match all regexp
+                    .collect(Collectors.joining(".+")) + (trailingWildcard ? ".+" : "");
+            pattern = Pattern.compile(textNode);
+            this.pattern = pattern;
+        }
+        return pattern;
+    }
+
+    private static boolean containsLineTerminator(String string) {
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') return true;
+        }
+        return false;
     }
 
-}
\ No newline at end of file
+}
@@ -5,26 +5,39 @@
 
 package org.cascadebot.cascadebot.permissions;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
 import net.dv8tion.jda.core.Permission;
+import net.dv8tion.jda.core.entities.Channel;
 import net.dv8tion.jda.core.entities.Guild;
 import net.dv8tion.jda.core.entities.Member;
 import org.cascadebot.cascadebot.CascadeBot;
+import org.cascadebot.cascadebot.commandmeta.CommandManager;
 import org.cascadebot.cascadebot.commandmeta.ICommandExecutable;
 import org.cascadebot.cascadebot.commandmeta.ICommandMain;
 import org.cascadebot.cascadebot.commandmeta.ICommandRestricted;
 import org.cascadebot.cascadebot.commandmeta.Module;
 import org.cascadebot.cascadebot.data.objects.GuildData;
+import org.cascadebot.cascadebot.permissions.objects.Result;
 import org.cascadebot.cascadebot.utils.DiscordUtils;
 import org.cascadebot.shared.SecurityLevel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 public class PermissionsManager {
 
@@ -32,6 +45,8 @@ public class PermissionsManager {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(PermissionsManager.class);
 
+    private static final long DECISION_EXPIRY_MINUTES = 1;
+
     private LoadingCache<Long, Set<Long>> officialGuildRoleIDCache = Caffeine.newBuilder()
             .expireAfterWrite(10, TimeUnit.MINUTES)
             .refreshAfterWrite(5, TimeUnit.MINUTES)
@@ -41,18 +56,35 @@ public class PermissionsManager {
             .refreshAfterWrite(5, TimeUnit.MINUTES)
             .build(userId -> Security.getLevelById(userId, officialGuildRoleIDCache.get(userId)));
 
+    // Permission decisions for members, these are invalidated by GuildPermissions or the user changing generation
+    private Cache<DecisionKey, Result> decisionCache = Caffeine.newBuilder()
+            .expireAfterWrite(DECISION_EXPIRY_MINUTES, TimeUnit.MINUTES)
+            .maximumSize(100_000)
+            .recordStats()
+            .build();
+    // Users without an entry are on generation 0. An entry only has to outlive the decisions cached before it was
+    // written, so these expire after the decisions do rather than being kept for every user forever
+    private Cache<Long, Long> userGenerations = Caffeine.newBuilder()
+            .expireAfterWrite(DECISION_EXPIRY_MINUTES * 2, TimeUnit.MINUTES)
+            .build();
+    private AtomicLong nextUserGeneration = new AtomicLong();
+
     private ConcurrentHashMap<String, CascadePermission> permissions = new ConcurrentHashMap<>();
     private Set<CascadePermission> defaultPermissions = Set.of();
+    // Every permission gets a fixed ordinal once they are all registered so results can be stored in arrays
+    private List<CascadePermission> registeredPermissions = List.of();
+    private Map<String, Integer> permissionOrdinals = Map.of();
 
     public void registerPermissions() {
         if (!permissions.isEmpty()) throw new IllegalStateException("Permissions have already been registered!");
 
         long startTime = System.currentTimeMillis();
 
-        for (ICommandMain command : CascadeBot.INS.getCommandManager().getCommands()) {
+        CommandManager commandManager = CascadeBot.INS.getCommandManager();
+        for (ICommandMain command : commandManager.getCommands()) {
             if (command.getPermission() == null || command instanceof ICommandRestricted) continue;
             registerPermission(command.getPermission());
-            for (ICommandExecutable subCommand : command.getSubCommands()) {
+            for (ICommandExecutable subCommand : commandManager.getSubCommands(command)) {
                 registerPermission(subCommand.getPermission());
             }
         }
@@ -79,6 +111,16 @@ public class PermissionsManager {
                 .filter(CascadePermission::isDefaultPerm)
                 .collect(ImmutableSet.toImmutableSet());
 
+        registeredPermissions = permissions.values()
+                .stream()
+                .sorted(Comparator.comparing(CascadePermission::getPermission))
+                .collect(ImmutableList.toImmutableList());
+        ImmutableMap.Builder<String, Integer> ordinals = ImmutableMap.builder();
+        for (int i = 0; i < registeredPermissions.size(); i++) {
+            ordinals.put(registeredPermissions.get(i).getPermission(), i);
+        }
+        permissionOrdinals = ordinals.build();
+
     }
 
     private void registerPermission(CascadePermission permission) {
@@ -121,6 +163,24 @@ public class PermissionsManager {
         return defaultPermissions;
     }
 
+    /**
+     * Gets all of the registered permissions, ordered by their ordinal.
+     *
+     * @return The registered permissions.
+     */
+    public List<CascadePermission> getRegisteredPermissions() {
+        return registeredPermissions;
+    }
+
+    /**
+     * Gets the ordinal of each registered permission, keyed by the permission string.
+     *
+     * @return The permission ordinals.
+     */
+    public Map<String, Integer> getPermissionOrdinals() {
+        return permissionOrdinals;
+    }
+
     public Set<CascadePermission> getPermissions() {
         return getPermissions(null);
     }
@@ -151,6 +211,34 @@ public class PermissionsManager {
         // return false;
     }
 
+    /**
+     * Gets a cached permission decision for a member, evaluating it if there isn't one cached.
+     *
+     * @param generation The current generation of the guild's permissions.
+     * @param member     The member to get the decision for.
+     * @param channel    The channel the permission is being checked in, this can be null.
+     * @param permission The permission to get the decision for.
+     * @param evaluator  Evaluates the permission if there isn't a cached decision.
+     * @return The result of the permission check.
+     */
+    public Result getDecision(long generation, Member member, Channel channel, CascadePermission permission, Supplier<Result> evaluator) {
+        long userId = member.getUser().getIdLong();
+        Long userGeneration = userGenerations.getIfPresent(userId);
+        DecisionKey key = new DecisionKey(
+                member.getGuild().getIdLong(),
+                generation,
+                userId,
+                userGeneration == null ? 0 : userGeneration,
+                permission.getPermission(),
+                channel == null ? 0 : channel.getIdLong()
+        );
+        return decisionCache.get(key, k -> evaluator.get());
+    }
+
+    public Cache<DecisionKey, Result> getDecisionCache() {
+        return decisionCache;
+    }
+
     public SecurityLevel getUserSecurityLevel(long userId) {
         return securityLevelCache.get(userId);
     }
@@ -158,6 +246,21 @@ public class PermissionsManager {
     public void clearCacheForUser(long userId) {
         officialGuildRoleIDCache.refresh(userId);
         securityLevelCache.refresh(userId);
+        // The user's security level is checked in every guild so all of their decisions could have changed
+        userGenerations.put(userId, nextUserGeneration.incrementAndGet());
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    public static class DecisionKey {
+
+        private final long guildId;
+        private final long generation;
+        private final long userId;
+        private final long userGeneration;
+        private final String permission;
+        private final long channelId;
+
     }
 
 
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.permissions.objects;
+
+import org.cascadebot.cascadebot.permissions.CascadePermission;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of every registered permission for a member, indexed by the permission's ordinal.
+ */
+public class EffectivePermissions {
+
+    private final List<CascadePermission> permissions;
+    private final Map<String, Integer> ordinals;
+    private final Result[] results;
+    private final BitSet allowed;
+
+    public EffectivePermissions(List<CascadePermission> permissions, Map<String, Integer> ordinals, Result[] results) {
+        if (permissions.size() != results.length) {
+            throw new IllegalArgumentException("There must be one result for each permission!");
+        }
+        this.permissions = permissions;
+        this.ordinals = ordinals;
+        this.results = results;
+        this.allowed = new BitSet(results.length);
+        for (int i = 0; i < results.length; i++) {
+            if (results[i].isAllowed()) allowed.set(i);
+        }
+    }
+
+    public boolean isAllowed(CascadePermission permission) {
+        Integer ordinal = ordinals.get(permission.getPermission());
+        return ordinal != null && allowed.get(ordinal);
+    }
+
+    /**
+     * Gets the result for a permission, including the cause of the result.
+     *
+     * @param permission The permission to get the result for.
+     * @return The result for the permission or null if the permission isn't registered.
+     */
+    public Result getResult(CascadePermission permission) {
+        Integer ordinal = ordinals.get(permission.getPermission());
+        return ordinal == null ? null : results[ordinal];
+    }
+
+    public List<CascadePermission> getAllowedPermissions() {
+        List<CascadePermission> allowedPermissions = new ArrayList<>(allowed.cardinality());
+        for (int i = allowed.nextSetBit(0); i >= 0; i = allowed.nextSetBit(i + 1)) {
+            allowedPermissions.add(permissions.get(i));
+        }
+        return allowedPermissions;
+    }
+
+    /**
+     * Gets a copy of the allowed permissions as a bitset indexed by permission ordinal.
+     *
+     * @return The allowed permissions.
+     */
+    public BitSet getAllowed() {
+        return (BitSet) allowed.clone();
+    }
+
+}
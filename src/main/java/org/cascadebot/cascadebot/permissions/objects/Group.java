@@ -10,9 +10,16 @@ import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
-import lombok.Setter;
 import lombok.ToString;
 import org.apache.commons.lang3.RandomStringUtils;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.cascadebot.cascadebot.data.database.BsonCodecUtils;
+import org.cascadebot.cascadebot.utils.SizeUtils;
 
 import java.util.Set;
 
@@ -27,7 +34,6 @@ public class Group extends PermissionHolder {
     private String id = RandomStringUtils.random(5, "abcdefghijkmnopqrstuvwxyzACDEFHJKLMNPRSTUVWXYZ123467890");
 
     @Getter
-    @Setter
     private String name;
 
     private Set<Long> roleIds = Sets.newConcurrentHashSet();
@@ -36,6 +42,12 @@ public class Group extends PermissionHolder {
         this.name = name;
     }
 
+    public boolean rename(String name) {
+        if (name.equals(this.name)) return false;
+        this.name = name;
+        return true;
+    }
+
     public boolean linkRole(long roleId) {
         return roleIds.add(roleId);
     }
@@ -48,9 +60,63 @@ public class Group extends PermissionHolder {
         return Set.copyOf(roleIds);
     }
 
+    @Override
+    public long estimateSize() {
+        return super.estimateSize() + SizeUtils.ofString(id) + SizeUtils.ofString(name)
+                + (long) roleIds.size() * (SizeUtils.ENTRY_SIZE + SizeUtils.BOXED_LONG_SIZE);
+    }
+
     @Override
     HolderType getType() {
         return HolderType.GROUP;
     }
 
+    /**
+     * Encodes and decodes groups without reflection, used by the guild permissions codec.
+     */
+    public static class BsonCodec implements Codec<Group> {
+
+        @Override
+        public void encode(BsonWriter writer, Group group, EncoderContext encoderContext) {
+            writer.writeStartDocument();
+            BsonCodecUtils.writeString(writer, "id", group.id);
+            BsonCodecUtils.writeString(writer, "name", group.name);
+            BsonCodecUtils.writeLongs(writer, "roleIds", group.roleIds);
+            group.writePermissions(writer);
+            writer.writeEndDocument();
+        }
+
+        @Override
+        public Group decode(BsonReader reader, DecoderContext decoderContext) {
+            Group group = new Group();
+            reader.readStartDocument();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                switch (reader.readName()) {
+                    case "id":
+                        group.id = BsonCodecUtils.readString(reader);
+                        break;
+                    case "name":
+                        group.name = BsonCodecUtils.readString(reader);
+                        break;
+                    case "roleIds":
+                        BsonCodecUtils.readLongs(reader, group.roleIds);
+                        break;
+                    case "permissions":
+                        group.readPermissions(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.readEndDocument();
+            return group;
+        }
+
+        @Override
+        public Class<Group> getEncoderClass() {
+            return Group.class;
+        }
+
+    }
+
 }
@@ -1,10 +1,15 @@
 package org.cascadebot.cascadebot.permissions.objects;
 
 import com.google.common.collect.Sets;
+import de.bild.codec.annotations.Transient;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
+import org.bson.BsonReader;
+import org.bson.BsonWriter;
+import org.cascadebot.cascadebot.data.database.BsonCodecUtils;
 import org.cascadebot.cascadebot.permissions.CascadePermission;
 import org.cascadebot.cascadebot.permissions.PermissionNode;
+import org.cascadebot.cascadebot.utils.SizeUtils;
 
 import java.util.Set;
 
@@ -14,6 +19,12 @@ public abstract class PermissionHolder {
 
     private Set<String> permissions = Sets.newConcurrentHashSet();
 
+    // The permissions compiled into nodes, this is rebuilt whenever the permissions change
+    @Transient
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private volatile CompiledPermissions compiledPermissions;
+
     abstract HolderType getType();
 
     public Set<String> getPermissions() {
@@ -21,26 +32,94 @@ public abstract class PermissionHolder {
     }
 
     public boolean addPermission(String permission) {
-        return permissions.add(permission);
+        boolean added = permissions.add(permission);
+        if (added) invalidateCompiledPermissions();
+        return added;
     }
 
     public boolean removePermission(String permission) {
-        return permissions.remove(permission);
+        boolean removed = permissions.remove(permission);
+        if (removed) invalidateCompiledPermissions();
+        return removed;
+    }
+
+    /**
+     * Estimates the heap retained by this holder, including the compiled permission nodes.
+     *
+     * @return The estimated size in bytes.
+     */
+    public long estimateSize() {
+        // Each permission is roughly doubled by its compiled node
+        return SizeUtils.OBJECT_SIZE * 2 + SizeUtils.ofStrings(permissions) * 2;
     }
 
     public Result evaluatePermission(CascadePermission permission) {
-        for (String perm : getPermissions()) {
-            if (new PermissionNode(perm.substring(perm.startsWith("-") ? 1 : 0)).test(permission.getPermission())) {
-                if (perm.startsWith("-"))
-                    return Result.of(PermissionAction.DENY, this);
-                return Result.of(PermissionAction.ALLOW, this);
+        CompiledPermissions compiled = getCompiledPermissions();
+        String permissionString = permission.getPermission();
+        for (int i = 0; i < compiled.nodes.length; i++) {
+            if (compiled.nodes[i].test(permissionString)) {
+                return compiled.negated[i] ? compiled.deny : compiled.allow;
             }
         }
-        return Result.of(PermissionAction.NEUTRAL, this);
+        return compiled.neutral;
+    }
+
+    private CompiledPermissions getCompiledPermissions() {
+        CompiledPermissions compiled = compiledPermissions;
+        if (compiled == null) {
+            synchronized (this) {
+                compiled = compiledPermissions;
+                if (compiled == null) {
+                    compiled = new CompiledPermissions(this, permissions);
+                    compiledPermissions = compiled;
+                }
+            }
+        }
+        return compiled;
+    }
+
+    private synchronized void invalidateCompiledPermissions() {
+        compiledPermissions = null;
+    }
+
+    // Used by the codecs of the holders, which can't see the permissions directly
+    void writePermissions(BsonWriter writer) {
+        BsonCodecUtils.writeStrings(writer, "permissions", permissions);
+    }
+
+    void readPermissions(BsonReader reader) {
+        BsonCodecUtils.readStrings(reader, permissions);
+        invalidateCompiledPermissions();
     }
 
     enum HolderType {
         GROUP, USER
     }
 
+    private static class CompiledPermissions {
+
+        private final PermissionNode[] nodes;
+        private final boolean[] negated;
+
+        // Results don't change for a holder so they can be shared between evaluations
+        private final Result allow;
+        private final Result deny;
+        private final Result neutral;
+
+        private CompiledPermissions(PermissionHolder holder, Set<String> permissions) {
+            String[] permissionArray = permissions.toArray(String[]::new);
+            this.nodes = new PermissionNode[permissionArray.length];
+            this.negated = new boolean[permissionArray.length];
+            for (int i = 0; i < permissionArray.length; i++) {
+                String perm = permissionArray[i];
+                negated[i] = perm.startsWith("-");
+                nodes[i] = new PermissionNode(perm.substring(negated[i] ? 1 : 0));
+            }
+            this.allow = Result.of(PermissionAction.ALLOW, holder);
+            this.deny = Result.of(PermissionAction.DENY, holder);
+            this.neutral = Result.of(PermissionAction.NEUTRAL, holder);
+        }
+
+    }
+
 }
@@ -8,6 +8,14 @@ package org.cascadebot.cascadebot.permissions.objects;
 import com.google.common.collect.Sets;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.cascadebot.cascadebot.data.database.BsonCodecUtils;
+import org.cascadebot.cascadebot.utils.SizeUtils;
 
 import java.util.Set;
 
@@ -29,9 +37,54 @@ public class User extends PermissionHolder {
         return Set.copyOf(groups);
     }
 
+    @Override
+    public long estimateSize() {
+        return super.estimateSize() + SizeUtils.ofStrings(groups);
+    }
+
     @Override
     HolderType getType() {
         return HolderType.USER;
     }
 
+    /**
+     * Encodes and decodes users without reflection, used by the guild permissions codec.
+     */
+    public static class BsonCodec implements Codec<User> {
+
+        @Override
+        public void encode(BsonWriter writer, User user, EncoderContext encoderContext) {
+            writer.writeStartDocument();
+            BsonCodecUtils.writeStrings(writer, "groups", user.groups);
+            user.writePermissions(writer);
+            writer.writeEndDocument();
+        }
+
+        @Override
+        public User decode(BsonReader reader, DecoderContext decoderContext) {
+            User user = new User();
+            reader.readStartDocument();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                switch (reader.readName()) {
+                    case "groups":
+                        BsonCodecUtils.readStrings(reader, user.groups);
+                        break;
+                    case "permissions":
+                        user.readPermissions(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.readEndDocument();
+            return user;
+        }
+
+        @Override
+        public Class<User> getEncoderClass() {
+            return User.class;
+        }
+
+    }
+
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.utils;
+
+import org.cascadebot.cascadebot.CascadeBot;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs tasks one at a time in the order they were submitted, using the threads of a shared executor. Many serial
+ * executors can share the same executor, each task goes to the back of the line once it has run so one busy serial
+ * executor can't hold up the others.
+ * <p>
+ * Everything a task does happens-before the next task in the same serial executor runs, so state that is only
+ * changed by these tasks doesn't need any other synchronization.
+ */
+public class SerialExecutor implements Executor {
+
+    private final Executor executor;
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        schedule();
+    }
+
+    private void schedule() {
+        if (tasks.isEmpty() || !running.compareAndSet(false, true)) {
+            // Nothing to run, or the running task will schedule the next one once it has finished
+            return;
+        }
+        try {
+            executor.execute(this::runNext);
+        } catch (RejectedExecutionException e) {
+            // The executor is shutting down so anything left won't be run
+            running.set(false);
+        }
+    }
+
+    private void runNext() {
+        Runnable task = tasks.poll();
+        try {
+            if (task != null) task.run();
+        } catch (Exception e) {
+            CascadeBot.LOGGER.error("Uncaught exception in a serial task", e);
+        } finally {
+            running.set(false);
+            // A task could have been added while this one was running
+            schedule();
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.utils;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.Collection;
+
+/**
+ * Rough estimates of how much heap objects retain. These don't need to be exact, they are only used to compare the
+ * sizes of objects against each other and against a budget.
+ */
+@UtilityClass
+public class SizeUtils {
+
+    public static final int OBJECT_SIZE = 16;
+    // A node in a hash map or set, including its share of the table
+    public static final int ENTRY_SIZE = 40;
+    public static final int BOXED_LONG_SIZE = 16;
+
+    public static long ofString(String string) {
+        // Header, array header and the hash; most strings are latin-1 so they are compacted to one byte per char
+        return string == null ? 0 : 40 + string.length();
+    }
+
+    public static long ofStrings(Collection<String> strings) {
+        if (strings == null) return 0;
+        long size = 0;
+        for (String string : strings) {
+            size += ENTRY_SIZE + ofString(string);
+        }
+        return size;
+    }
+
+}
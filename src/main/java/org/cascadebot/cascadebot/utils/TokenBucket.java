@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket. Instead of storing a token count and refilling it, this stores the time at which the
+ * bucket will be full again (the generic cell rate algorithm), so a single compare-and-set is enough to take a token.
+ */
+public class TokenBucket {
+
+    private final long interval;
+    private final long burst;
+    private final AtomicLong fullAt;
+
+    /**
+     * @param capacity The maximum number of tokens the bucket can hold.
+     * @param period   The time it takes for an empty bucket to fill back up.
+     * @param unit     The unit of the period.
+     */
+    public TokenBucket(int capacity, long period, TimeUnit unit) {
+        this(capacity, period, unit, System.nanoTime());
+    }
+
+    TokenBucket(int capacity, long period, TimeUnit unit, long now) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive!");
+        this.interval = Math.max(1, unit.toNanos(period) / capacity);
+        this.burst = interval * capacity;
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * Tries to take a token from the bucket.
+     *
+     * @return Whether a token was taken. If this is false the bucket is empty.
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    boolean tryAcquire(long now) {
+        while (true) {
+            long current = fullAt.get();
+            // If the bucket is already full, taking a token makes it full again one interval from now
+            long next = (current - now < 0 ? now : current) + interval;
+            if (next - now > burst) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Puts back a token that was taken but not used. This must only be called once for each successful
+     * {@link #tryAcquire()}.
+     */
+    public void release() {
+        // If the bucket has filled up since, this only moves the time it was full further into the past
+        fullAt.addAndGet(-interval);
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.benchmarks;
+
+import org.cascadebot.cascadebot.commandmeta.CommandTokenizer;
+import org.cascadebot.shared.Regex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Compares {@link CommandTokenizer} with the regex and split based parsing the command listener used before.
+ * Run with the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandTokenizerBenchmark {
+
+    private static final String PREFIX = ";";
+    private static final Pattern MULTIQUOTE_REGEX = Pattern.compile("[\"'](?=[\"'])");
+
+    @Param({"2", "32", "512"})
+    private int words;
+
+    private String message;
+
+    @Setup
+    public void setup() {
+        StringBuilder builder = new StringBuilder(PREFIX).append("tag create name");
+        for (int i = 0; i < words; i++) {
+            // An open quote with plenty of spaces after it is the worst case for the old parser
+            builder.append(i % 8 == 0 ? " \"quoted  words" : " word").append(i % 8 == 7 ? "\"" : "");
+        }
+        message = builder.toString();
+    }
+
+    @Benchmark
+    public void tokenizer(Blackhole blackhole) {
+        CommandTokenizer.Tokens tokens = CommandTokenizer.tokenize(message, PREFIX.length(), false);
+        blackhole.consume(tokens.getTrigger());
+        blackhole.consume(tokens.getArgs());
+    }
+
+    @Benchmark
+    public void legacy(Blackhole blackhole) {
+        String normalised = Regex.MULTISPACE_REGEX.matcher(message).replaceAll(" ");
+        normalised = MULTIQUOTE_REGEX.matcher(normalised).replaceAll("");
+        String commandWithArgs = normalised.substring(PREFIX.length());
+        String trigger = commandWithArgs.split(" ")[0];
+        commandWithArgs = commandWithArgs.substring(trigger.length()).trim();
+        blackhole.consume(trigger);
+        blackhole.consume(legacySplitArgs(commandWithArgs));
+    }
+
+    private static String[] legacySplitArgs(String input) {
+        input = input.replace("'", "\"");
+        boolean inQuotes = false;
+        int splitFrom = 0;
+        var args = new ArrayList<String>();
+        for (int pos = 0; pos < input.length(); pos++) {
+            char charAtPos = input.charAt(pos);
+            if (charAtPos == ' ') {
+                int splitTo = pos;
+                if (inQuotes && (input.substring(pos).contains("\""))) {
+                    continue;
+                }
+                if (input.charAt(pos - 1) == '"') {
+                    splitTo = pos - 1;
+                }
+                args.add(input.substring(splitFrom, splitTo));
+                splitFrom = pos + 1;
+            } else if (pos == input.length() - 1) {
+                int splitTo = input.length();
+                if (input.charAt(pos) == '"') {
+                    splitTo = pos;
+                }
+                args.add(input.substring(splitFrom, splitTo));
+            } else if (charAtPos == '"') {
+                if (!inQuotes && (pos == 0 || input.charAt(pos - 1) == ' ')) {
+                    splitFrom += 1;
+                }
+                inQuotes = !inQuotes;
+            }
+        }
+        return args.toArray(String[]::new);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CommandTokenizerBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.benchmarks;
+
+import com.mongodb.MongoClientSettings;
+import de.bild.codec.PojoCodecProvider;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.io.BasicOutputBuffer;
+import org.cascadebot.cascadebot.data.Config;
+import org.cascadebot.cascadebot.data.database.DatabaseManager;
+import org.cascadebot.cascadebot.data.objects.GuildData;
+import org.cascadebot.cascadebot.data.objects.Tag;
+import org.cascadebot.cascadebot.permissions.objects.Group;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares encoding and decoding guild data with the hand written codecs against the reflection based polymorphia
+ * codec they replaced. Run with the main method from the test classpath, add {@code -prof gc} to the options to see
+ * allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GuildDataCodecBenchmark {
+
+    // The number of tags and groups in the guild, each group has this many permissions and roles as well
+    @Param({"10", "200"})
+    private int size;
+
+    private Codec<GuildData> codec;
+    private Codec<GuildData> pojoCodec;
+
+    private GuildData data;
+    private byte[] encoded;
+    private byte[] pojoEncoded;
+
+    @Setup
+    public void setup() throws IOException {
+        // Guild data uses the config for its defaults, the memory backend means no database is needed
+        File config = File.createTempFile("benchmark", ".yml");
+        config.deleteOnExit();
+        Files.writeString(config.toPath(), "bot:\n  id: 1\n  token: benchmark\nstorage:\n  backend: memory\nsecurity_levels:\n  developer: []\n");
+        Config.init(config);
+
+        codec = DatabaseManager.CODEC_REGISTRY.get(GuildData.class);
+        pojoCodec = CodecRegistries.fromRegistries(
+                MongoClientSettings.getDefaultCodecRegistry(),
+                CodecRegistries.fromProviders(PojoCodecProvider.builder().register(
+                        "org.cascadebot.cascadebot.data.objects",
+                        "org.cascadebot.cascadebot.permissions.objects",
+                        "org.cascadebot.shared"
+                ).build())
+        ).get(GuildData.class);
+
+        data = new GuildData(1);
+        for (int i = 0; i < size; i++) {
+            data.getSettings().addTag("tag" + i, new Tag("This is the content of tag " + i, "category" + (i % 5)));
+            Group group = data.getPermissions().createGroup("group" + i);
+            for (int j = 0; j < size; j++) {
+                data.getPermissions().addPermission(group, "cascade.module" + j + ".*");
+                data.getPermissions().linkRole(group, 100000000000000000L + j);
+            }
+        }
+        encoded = encode(codec);
+        pojoEncoded = encode(pojoCodec);
+    }
+
+    private byte[] encode(Codec<GuildData> codec) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        codec.encode(new BsonBinaryWriter(buffer), data, EncoderContext.builder().build());
+        return buffer.toByteArray();
+    }
+
+    private GuildData decode(Codec<GuildData> codec, byte[] bytes) {
+        return codec.decode(new BsonBinaryReader(ByteBuffer.wrap(bytes)), DecoderContext.builder().build());
+    }
+
+    @Benchmark
+    public byte[] encodeHandWritten() {
+        return encode(codec);
+    }
+
+    @Benchmark
+    public byte[] encodePojo() {
+        return encode(pojoCodec);
+    }
+
+    @Benchmark
+    public GuildData decodeHandWritten() {
+        return decode(codec, encoded);
+    }
+
+    @Benchmark
+    public GuildData decodePojo() {
+        return decode(pojoCodec, pojoEncoded);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(GuildDataCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.benchmarks;
+
+import org.cascadebot.cascadebot.permissions.CascadePermission;
+import org.cascadebot.cascadebot.permissions.PermissionNode;
+import org.cascadebot.cascadebot.permissions.objects.Group;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Compares evaluating a permission against a group using the precompiled {@link PermissionNode}s cached on the
+ * group with the old implementation, which built a new node and compiled a regex for every stored permission.
+ * Run with the main method from the test classpath, add {@code -prof gc} to the options to see allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermissionNodeBenchmark {
+
+    @Param({"5", "50"})
+    private int nodes;
+
+    private Group group;
+    private Set<String> permissions;
+    private CascadePermission permission;
+
+    @Setup
+    public void setup() {
+        group = new Group("benchmark");
+        for (int i = 0; i < nodes; i++) {
+            // None of these match so every node has to be checked
+            group.addPermission(i % 2 == 0 ? "cascade.module" + i + ".*" : "-cascade.*.sub" + i);
+        }
+        permissions = group.getPermissions();
+        permission = CascadePermission.of("queue.save.overwrite");
+    }
+
+    @Benchmark
+    public Object compiled() {
+        return group.evaluatePermission(permission);
+    }
+
+    @Benchmark
+    public Object legacy() {
+        for (String perm : permissions) {
+            if (legacyTest(perm.substring(perm.startsWith("-") ? 1 : 0), permission.getPermission())) {
+                return perm;
+            }
+        }
+        return null;
+    }
+
+    private static boolean legacyTest(String node, String permission) {
+        if (node.equals("*"))
+            return true;
+        String textNode = Arrays.stream(node.split("(?:^\\*(\\.))|(?:(?<=\\.)\\*(?=\\.))|(?:(?<=\\.)\\*$)"))
+                .map(Pattern::quote)
+                .collect(Collectors.joining(".+")) + (node.endsWith("*") ? ".+" : "");
+        return permission.matches(textNode);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PermissionNodeBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
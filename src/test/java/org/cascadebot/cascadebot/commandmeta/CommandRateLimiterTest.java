@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.commandmeta;
+
+import net.dv8tion.jda.core.entities.Member;
+import org.cascadebot.cascadebot.commandmeta.CommandRateLimiter.RateLimit;
+import org.cascadebot.cascadebot.permissions.CascadePermission;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandRateLimiterTest {
+
+    private static final long USER = 1;
+    private static final long OTHER_USER = 2;
+    private static final long BUSY_GUILD = 100;
+    private static final long QUIET_GUILD = 200;
+
+    private static final ICommandMain COMMAND = new TestCommand();
+
+    @Test
+    void guildRejectionDoesNotSpendUserTokens() {
+        // The limits are long enough that nothing refills during the test
+        CommandRateLimiter limiter = new CommandRateLimiter(new RateLimit(2, 600), new RateLimit(1, 600), new RateLimit(2, 600), Map.of());
+
+        assertTrue(limiter.tryAcquire(BUSY_GUILD, OTHER_USER, COMMAND));
+        // The busy guild is out of tokens, so these are rejected by the guild limit alone
+        for (int i = 0; i < 5; i++) {
+            assertFalse(limiter.tryAcquire(BUSY_GUILD, USER, COMMAND));
+        }
+
+        // The user still has their whole budget, for the command and overall
+        assertTrue(limiter.tryAcquire(QUIET_GUILD, USER, COMMAND));
+        assertTrue(limiter.tryAcquire(QUIET_GUILD + 1, USER, COMMAND));
+        assertFalse(limiter.tryAcquire(QUIET_GUILD + 2, USER, COMMAND));
+    }
+
+    private static class TestCommand implements ICommandMain {
+
+        @Override
+        public void onCommand(Member sender, CommandContext context) {
+        }
+
+        @Override
+        public String command() {
+            return "test";
+        }
+
+        @Override
+        public CascadePermission getPermission() {
+            return null;
+        }
+
+        @Override
+        public String description() {
+            return "A command that is never run";
+        }
+
+        @Override
+        public Module getModule() {
+            return Module.CORE;
+        }
+
+    }
+
+}
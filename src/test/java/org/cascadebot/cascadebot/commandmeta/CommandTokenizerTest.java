@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.commandmeta;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CommandTokenizerTest {
+
+    @Test
+    void tokenize() {
+        CommandTokenizer.Tokens tokens = CommandTokenizer.tokenize(";tag  create   test \"Hello  world\"", 1, false);
+        assertEquals("tag", tokens.getTrigger());
+        assertArrayEquals(new String[]{"create", "test", "Hello world"}, tokens.getArgs());
+
+        tokens = CommandTokenizer.tokenize(";help", 1, false);
+        assertEquals("help", tokens.getTrigger());
+        assertArrayEquals(new String[0], tokens.getArgs());
+
+        tokens = CommandTokenizer.tokenize(";say 'single quotes' \"\"double\"", 1, false);
+        assertEquals("say", tokens.getTrigger());
+        assertArrayEquals(new String[]{"single quotes", "double"}, tokens.getArgs());
+    }
+
+    @Test
+    void tokenizeTrimmed() {
+        CommandTokenizer.Tokens tokens = CommandTokenizer.tokenize("<@123>   queue  load test   ", 6, true);
+        assertEquals("queue", tokens.getTrigger());
+        assertArrayEquals(new String[]{"load", "test"}, tokens.getArgs());
+    }
+
+    @Test
+    void splitArgs() {
+        assertArrayEquals(new String[]{"Hello", "world test", "this", "is", "a", "test"},
+                CommandTokenizer.splitArgs("Hello \"world test\" this is a test\""));
+        assertArrayEquals(new String[]{" ", " "}, CommandTokenizer.splitArgs("\" \" \" \""));
+        assertArrayEquals(new String[]{"Hello", "World"}, CommandTokenizer.splitArgs("Hello 'World'"));
+        assertArrayEquals(new String[0], CommandTokenizer.splitArgs(""));
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.data.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DirtyTrackerTest {
+
+    @Test
+    void normaliseRemovesChildren() {
+        List<String> paths = DirtyTracker.normalise(List.of(
+                "guildSettings.tags.hello",
+                "guildSettings.tags",
+                "guildSettings.tagsOld",
+                "guildPermissions.users.1",
+                "guildPermissions.users.1",
+                "prefix"
+        ));
+        assertEquals(List.of("guildPermissions.users.1", "guildSettings.tags", "guildSettings.tagsOld", "prefix"), paths);
+    }
+
+    @Test
+    void childFallsBackForInvalidKeys() {
+        assertEquals("tags.hello", DirtyTracker.child("tags", "hello"));
+        assertEquals("tags", DirtyTracker.child("tags", "hello.world"));
+        assertEquals("tags", DirtyTracker.child("tags", "$hello"));
+        assertEquals("tags", DirtyTracker.child("tags", ""));
+    }
+
+    @Test
+    void drainEmptiesTracker() {
+        DirtyTracker tracker = new DirtyTracker();
+        tracker.markDirty("mode");
+        tracker.markDirty("groups");
+        assertTrue(tracker.isDirty());
+
+        List<String> drained = tracker.drain("guildPermissions");
+        assertEquals(2, drained.size());
+        assertTrue(drained.contains("guildPermissions.mode"));
+        assertTrue(drained.contains("guildPermissions.groups"));
+        assertFalse(tracker.isDirty());
+    }
+
+}
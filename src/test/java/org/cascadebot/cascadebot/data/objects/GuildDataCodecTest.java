@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.data.objects;
+
+import com.mongodb.MongoClientSettings;
+import de.bild.codec.PojoCodecProvider;
+import org.bson.BsonArray;
+import org.bson.BsonBoolean;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonInt32;
+import org.bson.BsonNull;
+import org.bson.BsonString;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.cascadebot.cascadebot.commandmeta.Module;
+import org.cascadebot.cascadebot.data.Config;
+import org.cascadebot.cascadebot.data.database.DatabaseManager;
+import org.cascadebot.cascadebot.permissions.objects.Group;
+import org.cascadebot.cascadebot.permissions.objects.User;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GuildDataCodecTest {
+
+    private static Codec<GuildData> guildDataCodec;
+
+    private final GuildSettingsCore.BsonCodec settingsCodec = new GuildSettingsCore.BsonCodec();
+    private final GuildPermissions.BsonCodec permissionsCodec = new GuildPermissions.BsonCodec();
+    private final Tag.BsonCodec tagCodec = new Tag.BsonCodec();
+    private final Group.BsonCodec groupCodec = new Group.BsonCodec();
+    private final User.BsonCodec userCodec = new User.BsonCodec();
+
+    @BeforeAll
+    static void setup() throws IOException {
+        // Guild data uses the config for its defaults, the memory backend means no database is needed
+        File config = File.createTempFile("codec-test", ".yml");
+        config.deleteOnExit();
+        Files.writeString(config.toPath(), "bot:\n  id: 1\n  token: test\nstorage:\n  backend: memory\nsecurity_levels:\n  developer: []\n");
+        Config.init(config);
+        guildDataCodec = DatabaseManager.CODEC_REGISTRY.get(GuildData.class);
+    }
+
+    @Test
+    void guildDataRoundTrip() {
+        GuildData data = new GuildData(123);
+        data.setPrefix("!");
+        data.enableFlag(Flag.BETA);
+        data.getSettings().addTag("hello", new Tag("Hello {user}", "greetings"));
+        Group group = data.getPermissions().createGroup("Moderators");
+        data.getPermissions().addPermission(group, "cascade.moderation.*");
+        data.getPermissions().linkRole(group, 100000000000000000L);
+
+        GuildData decoded = decode(guildDataCodec, encode(guildDataCodec, data));
+
+        assertEquals(123, decoded.getGuildID());
+        assertEquals(data.getStateLock(), decoded.getStateLock());
+        assertEquals(data.getCreationDate(), decoded.getCreationDate());
+        assertEquals("!", decoded.getPrefix());
+        assertEquals(Set.of(Flag.BETA), decoded.getEnabledFlags());
+        assertEquals("Hello {user}", decoded.getSettings().getTag("hello").getContent());
+        assertEquals("greetings", decoded.getSettings().getTag("hello").getCategory());
+        Group decodedGroup = decoded.getPermissions().getGroupById(group.getId());
+        assertEquals("Moderators", decodedGroup.getName());
+        assertEquals(Set.of("cascade.moderation.*"), decodedGroup.getPermissions());
+        assertEquals(Set.of(100000000000000000L), decodedGroup.getRoleIds());
+        // Only documents in the old format are marked as dirty when they're decoded
+        assertFalse(decoded.isDirty());
+    }
+
+    @Test
+    void snapshotCodecKeepsStateLock() {
+        GuildData data = new GuildData(123);
+        UUID stateLock = data.getStateLock();
+
+        GuildData decoded = decode(guildDataCodec, encode(DatabaseManager.SNAPSHOT_GUILD_CODEC, data));
+
+        assertEquals(stateLock, data.getStateLock());
+        assertEquals(stateLock, decoded.getStateLock());
+    }
+
+    @Test
+    void guildDataDefaults() {
+        GuildData decoded = decode(guildDataCodec, new BsonDocument("_id", new BsonInt32(5))
+                .append("dataFormat", new BsonInt32(2))
+                .append("prefix", BsonNull.VALUE)
+                .append("enabledFlags", new BsonArray(List.of(new BsonString("BETA"), new BsonString("NOT_A_FLAG")))));
+
+        assertEquals(5, decoded.getGuildID());
+        assertEquals(Config.INS.getDefaultPrefix(), decoded.getPrefix());
+        assertEquals(Set.of(Flag.BETA), decoded.getEnabledFlags());
+        assertTrue(decoded.getSettings().getTags().isEmpty());
+        assertTrue(decoded.getPermissions().getGroups().isEmpty());
+    }
+
+    @Test
+    void commandInfoIsKeptWithoutCommands() {
+        // The commands aren't loaded in tests, the same as when guilds are decoded while the bot is starting
+        BsonDocument info = new BsonDocument("enabled", BsonBoolean.FALSE)
+                .append("forceDefault", BsonBoolean.FALSE)
+                .append("command", new BsonString("p"))
+                .append("defaultCommand", new BsonString("play"))
+                .append("aliases", new BsonArray(List.of(new BsonString("listen"))));
+        BsonDocument document = new BsonDocument("_id", new BsonInt32(5))
+                .append("dataFormat", new BsonInt32(2))
+                .append("commandInfo", new BsonDocument("play", info));
+
+        BsonDocument encoded = encode(guildDataCodec, decode(guildDataCodec, document));
+
+        assertEquals(info, encoded.getDocument("commandInfo").getDocument("play"));
+    }
+
+    @Test
+    void legacyDocumentIsMarkedDirty() {
+        Codec<GuildData> pojoCodec = CodecRegistries.fromRegistries(
+                MongoClientSettings.getDefaultCodecRegistry(),
+                CodecRegistries.fromProviders(PojoCodecProvider.builder().register(
+                        "org.cascadebot.cascadebot.data.objects",
+                        "org.cascadebot.cascadebot.permissions.objects",
+                        "org.cascadebot.shared"
+                ).build())
+        ).get(GuildData.class);
+        GuildData data = new GuildData(123);
+        data.setPrefix("!");
+        data.getSettings().addTag("hello", new Tag("Hello", "greetings"));
+
+        BsonDocument legacy = encode(pojoCodec, data);
+        assertFalse(legacy.containsKey("dataFormat"));
+        GuildData decoded = decode(guildDataCodec, legacy);
+
+        assertEquals(123, decoded.getGuildID());
+        assertEquals("!", decoded.getPrefix());
+        assertEquals("Hello", decoded.getSettings().getTag("hello").getContent());
+        List<String> paths = decoded.drainDirtyPaths();
+        assertTrue(paths.containsAll(List.of("dataFormat", "creationDate", "commandInfo", "enabledFlags", "prefix",
+                "tags", "guildSettings", "guildPermissions", "stateLock")));
+        assertFalse(decoded.isDirty());
+    }
+
+    @Test
+    void settingsRoundTrip() {
+        GuildSettingsCore settings = new GuildSettingsCore();
+        settings.enableModule(Module.MUSIC);
+        settings.setPrefix("?");
+        settings.addTag("hello", new Tag("Hello", null));
+
+        GuildSettingsCore decoded = decode(settingsCodec, encode(settingsCodec, settings));
+
+        assertEquals(settings.getEnabledModules(), decoded.getEnabledModules());
+        assertEquals("?", decoded.getPrefix());
+        assertEquals("Hello", decoded.getTag("hello").getContent());
+        assertNull(decoded.getTag("hello").getCategory());
+        assertFalse(decoded.getDirtyTracker().isDirty());
+    }
+
+    @Test
+    void settingsDefaults() {
+        GuildSettingsCore defaults = new GuildSettingsCore();
+
+        GuildSettingsCore decoded = decode(settingsCodec, new BsonDocument());
+
+        assertEquals(defaults.isMentionPrefix(), decoded.isMentionPrefix());
+        assertEquals(defaults.isDeleteCommand(), decoded.isDeleteCommand());
+        assertEquals(defaults.isUseEmbedForMessages(), decoded.isUseEmbedForMessages());
+        assertEquals(defaults.isShowPermErrors(), decoded.isShowPermErrors());
+        assertEquals(defaults.isShowModuleErrors(), decoded.isShowModuleErrors());
+        assertEquals(defaults.isAdminsHaveAllPerms(), decoded.isAdminsHaveAllPerms());
+        assertEquals(defaults.isAllowTagCommands(), decoded.isAllowTagCommands());
+        assertEquals(defaults.getEnabledModules(), decoded.getEnabledModules());
+        assertEquals(defaults.getPrefix(), decoded.getPrefix());
+    }
+
+    @Test
+    void settingsSkipUnknownValues() {
+        GuildSettingsCore decoded = decode(settingsCodec, new BsonDocument("mentionPrefix", new BsonString("yes"))
+                .append("enabledModules", new BsonArray(List.of(new BsonString("MUSIC"), new BsonString("NOT_A_MODULE"), new BsonInt32(1))))
+                .append("prefix", BsonNull.VALUE));
+
+        assertEquals(new GuildSettingsCore().isMentionPrefix(), decoded.isMentionPrefix());
+        assertEquals(Set.of(Module.MUSIC), decoded.getEnabledModules());
+        assertEquals(Config.INS.getDefaultPrefix(), decoded.getPrefix());
+    }
+
+    @Test
+    void permissionsRoundTrip() {
+        GuildPermissions permissions = new GuildPermissions();
+        permissions.setMode(GuildPermissions.PermissionMode.HIERARCHICAL);
+        Group first = permissions.createGroup("First");
+        Group second = permissions.createGroup("Second");
+        permissions.addPermission(second, "-cascade.fun.*");
+
+        GuildPermissions decoded = decode(permissionsCodec, encode(permissionsCodec, permissions));
+
+        assertEquals(GuildPermissions.PermissionMode.HIERARCHICAL, decoded.getMode());
+        // Group order matters in hierarchical mode
+        assertEquals(List.of(first.getId(), second.getId()), List.of(decoded.getGroups().get(0).getId(), decoded.getGroups().get(1).getId()));
+        assertEquals(Set.of("-cascade.fun.*"), decoded.getGroups().get(1).getPermissions());
+    }
+
+    @Test
+    void permissionsUsersKeyedById() {
+        BsonDocument user = new BsonDocument("groups", new BsonArray(List.of(new BsonString("abcde"))))
+                .append("permissions", new BsonArray(List.of(new BsonString("cascade.music.*"))));
+        BsonDocument document = new BsonDocument("mode", new BsonString("NOT_A_MODE"))
+                .append("groups", new BsonArray())
+                .append("users", new BsonDocument("123456789012345678", user).append("notAnId", user));
+
+        GuildPermissions decoded = decode(permissionsCodec, document);
+        BsonDocument encoded = encode(permissionsCodec, decoded);
+
+        assertEquals(new GuildPermissions().getMode(), decoded.getMode());
+        assertEquals(Set.of("123456789012345678"), encoded.getDocument("users").keySet());
+        assertEquals(user, encoded.getDocument("users").getDocument("123456789012345678"));
+    }
+
+    @Test
+    void tagRoundTrip() {
+        Tag decoded = decode(tagCodec, encode(tagCodec, new Tag(null, null)));
+
+        assertNull(decoded.getContent());
+        assertNull(decoded.getCategory());
+
+        Tag tag = decode(tagCodec, encode(tagCodec, new Tag("content", "category")));
+        assertEquals("content", tag.getContent());
+        assertEquals("category", tag.getCategory());
+    }
+
+    @Test
+    void groupRoundTrip() {
+        Group group = new Group(null);
+        group.addPermission("cascade.*");
+        group.linkRole(1);
+        group.linkRole(100000000000000000L);
+
+        Group decoded = decode(groupCodec, encode(groupCodec, group));
+
+        assertEquals(group.getId(), decoded.getId());
+        assertNull(decoded.getName());
+        assertEquals(Set.of("cascade.*"), decoded.getPermissions());
+        assertEquals(Set.of(1L, 100000000000000000L), decoded.getRoleIds());
+        // Role IDs that were stored as 32 bit integers are still read
+        Group small = decode(groupCodec, new BsonDocument("id", new BsonString("abcde"))
+                .append("roleIds", new BsonArray(List.of(new BsonInt32(7)))));
+        assertEquals(Set.of(7L), small.getRoleIds());
+    }
+
+    @Test
+    void userRoundTrip() {
+        User user = new User();
+        user.addGroup(new Group("Group"));
+        user.addPermission("-cascade.music.*");
+
+        User decoded = decode(userCodec, encode(userCodec, user));
+
+        assertEquals(user.getGroupIds(), decoded.getGroupIds());
+        assertEquals(Set.of("-cascade.music.*"), decoded.getPermissions());
+    }
+
+    private static <T> BsonDocument encode(Codec<T> codec, T value) {
+        BsonDocument document = new BsonDocument();
+        codec.encode(new BsonDocumentWriter(document), value, EncoderContext.builder().build());
+        return document;
+    }
+
+    private static <T> T decode(Codec<T> codec, BsonDocument document) {
+        return codec.decode(new BsonDocumentReader(document), DecoderContext.builder().build());
+    }
+
+}
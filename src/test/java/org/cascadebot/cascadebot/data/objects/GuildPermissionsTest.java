@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.data.objects;
+
+import net.dv8tion.jda.core.Permission;
+import net.dv8tion.jda.core.entities.Channel;
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.Role;
+import net.dv8tion.jda.core.entities.TextChannel;
+import org.cascadebot.cascadebot.permissions.CascadePermission;
+import org.cascadebot.cascadebot.permissions.objects.EffectivePermissions;
+import org.cascadebot.cascadebot.permissions.objects.Group;
+import org.cascadebot.cascadebot.permissions.objects.Result;
+import org.cascadebot.cascadebot.permissions.objects.User;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GuildPermissionsTest {
+
+    // In the same order the permissions manager registers them, sorted by permission
+    private static final List<CascadePermission> PERMISSIONS = List.of(
+            CascadePermission.of("Play music", "music.play", true),
+            CascadePermission.of("Skip music", "music.skip", false),
+            CascadePermission.of("Set command prefix", "prefix.set", false, Permission.MANAGE_SERVER),
+            CascadePermission.of("Overwrite guild playlist", "queue.save.overwrite", false),
+            CascadePermission.of("Force skip a song", "skip.force", false, Permission.MANAGE_CHANNEL),
+            CascadePermission.of("Create tags", "tag.create", true),
+            CascadePermission.of("Delete tags", "tag.delete", false)
+    );
+
+    private static final Map<String, Integer> ORDINALS = new HashMap<>();
+
+    static {
+        for (int i = 0; i < PERMISSIONS.size(); i++) {
+            ORDINALS.put(PERMISSIONS.get(i).getPermission(), i);
+        }
+    }
+
+    private static final long STAFF_USER = 1;
+    private static final long MUTED_USER = 2;
+    private static final long PLAIN_USER = 3;
+    private static final long MUTED_ROLE = 200;
+    private static final long DJ_ROLE = 300;
+
+    private static final Channel TEXT_CHANNEL = stub(TextChannel.class, (method, args) -> 400L);
+
+    @Test
+    void bulkMatchesSingleChecksInBothModes() {
+        for (GuildPermissions.PermissionMode mode : GuildPermissions.PermissionMode.values()) {
+            GuildPermissions permissions = createPermissions();
+            permissions.setMode(mode);
+            for (Member member : createMembers(permissions)) {
+                assertBulkMatchesSingleChecks(permissions, member, null);
+                assertBulkMatchesSingleChecks(permissions, member, TEXT_CHANNEL);
+            }
+        }
+    }
+
+    @Test
+    void bulkMatchesSingleChecksAfterChanges() {
+        GuildPermissions permissions = createPermissions();
+        List<Member> members = createMembers(permissions);
+        Group dj = permissions.getGroupsByName("DJ").get(0);
+
+        permissions.removePermission(dj, "cascade.*.overwrite");
+        permissions.addPermission(dj, "-cascade.tag.create");
+        permissions.unlinkRole(permissions.getGroupsByName("Muted").get(0), MUTED_ROLE);
+        permissions.moveGroup(dj, 0);
+        for (Member member : members) {
+            assertBulkMatchesSingleChecks(permissions, member, null);
+        }
+    }
+
+    @Test
+    void negatedNodesAndWildcards() {
+        GuildPermissions permissions = createPermissions();
+        List<Member> members = createMembers(permissions);
+
+        // Staff have every permission through the wildcard apart from the one negated for the user
+        EffectivePermissions staff = permissions.evaluatePermissions(members.get(0), null, PERMISSIONS, ORDINALS);
+        assertTrue(staff.isAllowed(permission("tag.delete")));
+        assertTrue(staff.isAllowed(permission("queue.save.overwrite")));
+        assertFalse(staff.isAllowed(permission("prefix.set")));
+
+        // Muted users are denied every tag permission, even the default ones, and the user permissions can't undo that
+        EffectivePermissions muted = permissions.evaluatePermissions(members.get(1), null, PERMISSIONS, ORDINALS);
+        assertFalse(muted.isAllowed(permission("tag.create")));
+        assertFalse(muted.isAllowed(permission("tag.delete")));
+        assertTrue(muted.isAllowed(permission("music.play")));
+        assertFalse(muted.isAllowed(permission("music.skip")));
+
+        // Users without any groups only get the default permissions
+        EffectivePermissions plain = permissions.evaluatePermissions(members.get(2), null, PERMISSIONS, ORDINALS);
+        assertTrue(plain.isAllowed(permission("music.play")));
+        assertTrue(plain.isAllowed(permission("tag.create")));
+        assertFalse(plain.isAllowed(permission("music.skip")));
+        assertFalse(plain.isAllowed(permission("tag.delete")));
+    }
+
+    @Test
+    void checkingPermissionsDoesNotAddUsers() {
+        GuildPermissions permissions = createPermissions();
+        Member plain = createMembers(permissions).get(2);
+        long size = permissions.estimateSize();
+        permissions.getDirtyTracker().drain(null);
+
+        permissions.evaluatePermissions(plain, null, PERMISSIONS, ORDINALS);
+        permissions.evaluatePermission(plain, null, permission("music.play"));
+        assertEquals(Long.valueOf(size), Long.valueOf(permissions.estimateSize()));
+        assertFalse(permissions.getDirtyTracker().isDirty());
+    }
+
+    @Test
+    void unregisteredPermissionsAreNotAllowed() {
+        GuildPermissions permissions = createPermissions();
+        EffectivePermissions effective = permissions.evaluatePermissions(createMembers(permissions).get(0), null, PERMISSIONS, ORDINALS);
+        CascadePermission unregistered = CascadePermission.of("Not registered", "not.registered");
+        assertFalse(effective.isAllowed(unregistered));
+        assertNull(effective.getResult(unregistered));
+    }
+
+    private static void assertBulkMatchesSingleChecks(GuildPermissions permissions, Member member, Channel channel) {
+        EffectivePermissions effective = permissions.evaluatePermissions(member, channel, PERMISSIONS, ORDINALS);
+        BitSet expectedAllowed = new BitSet();
+        List<CascadePermission> expectedPermissions = new ArrayList<>();
+        for (int i = 0; i < PERMISSIONS.size(); i++) {
+            CascadePermission permission = PERMISSIONS.get(i);
+            Result single = permissions.evaluatePermission(member, channel, permission);
+            assertEquals(single, effective.getResult(permission), permission.getPermission());
+            assertEquals(single.isAllowed(), effective.isAllowed(permission), permission.getPermission());
+            if (single.isAllowed()) {
+                expectedAllowed.set(i);
+                expectedPermissions.add(permission);
+            }
+        }
+        assertEquals(expectedAllowed, effective.getAllowed());
+        assertEquals(expectedPermissions, effective.getAllowedPermissions());
+    }
+
+    private static GuildPermissions createPermissions() {
+        GuildPermissions permissions = new GuildPermissions();
+
+        // The order of a holder's nodes isn't defined, so none of these overlap within a single holder
+        Group staff = permissions.createGroup("Staff");
+        permissions.addPermission(staff, "cascade.*");
+
+        Group muted = permissions.createGroup("Muted");
+        permissions.addPermission(muted, "-cascade.tag.*");
+        permissions.linkRole(muted, MUTED_ROLE);
+
+        Group dj = permissions.createGroup("DJ");
+        permissions.addPermission(dj, "cascade.music.*");
+        permissions.addPermission(dj, "cascade.*.overwrite");
+        permissions.linkRole(dj, DJ_ROLE);
+        return permissions;
+    }
+
+    // The staff, muted and plain members in that order, with their user permissions and direct groups set up
+    private static List<Member> createMembers(GuildPermissions permissions) {
+        Member staff = member(STAFF_USER, Set.of(), DJ_ROLE);
+        Member muted = member(MUTED_USER, Set.of(Permission.MANAGE_SERVER), MUTED_ROLE, DJ_ROLE);
+        Member plain = member(PLAIN_USER, Set.of(Permission.MANAGE_CHANNEL));
+
+        User staffUser = permissions.getPermissionUser(staff);
+        permissions.addUserGroup(staffUser, permissions.getGroupsByName("Staff").get(0));
+        permissions.addPermission(staffUser, "-cascade.prefix.set");
+        User mutedUser = permissions.getPermissionUser(muted);
+        permissions.addPermission(mutedUser, "cascade.tag.delete");
+        permissions.addPermission(mutedUser, "-cascade.music.skip");
+        return List.of(staff, muted, plain);
+    }
+
+    private static CascadePermission permission(String permission) {
+        return PERMISSIONS.get(ORDINALS.get("cascade." + permission));
+    }
+
+    // JDA doesn't have any test implementations, so only what the permission checks use is stubbed
+    private static Member member(long userId, Set<Permission> discordPermissions, long... roleIds) {
+        net.dv8tion.jda.core.entities.User user = stub(net.dv8tion.jda.core.entities.User.class, (method, args) -> userId);
+        List<Role> roles = new ArrayList<>();
+        for (long roleId : roleIds) {
+            roles.add(stub(Role.class, (method, args) -> roleId));
+        }
+        return stub(Member.class, (method, args) -> {
+            switch (method) {
+                case "getUser":
+                    return user;
+                case "getRoles":
+                    return roles;
+                case "isOwner":
+                    return false;
+                case "hasPermission":
+                    // The permissions are always the last argument, either as varargs or a collection
+                    Object last = args[args.length - 1];
+                    Collection<?> required = last instanceof Permission[] ? Arrays.asList((Permission[]) last) : (Collection<?>) last;
+                    return discordPermissions.containsAll(required);
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, BiFunction<String, Object[], Object> handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return type.getSimpleName();
+                default:
+                    return handler.apply(method.getName(), args);
+            }
+        });
+    }
+
+}
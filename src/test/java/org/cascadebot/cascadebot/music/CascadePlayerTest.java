@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.music;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import com.sedmelluq.discord.lavaplayer.track.BaseAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.playback.LocalAudioTrackExecutor;
+import lavalink.client.player.LavaplayerPlayerWrapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CascadePlayerTest {
+
+    private static final AudioPlayerManager PLAYER_MANAGER = new DefaultAudioPlayerManager();
+
+    // Far away from any real guild ID so the test players can be removed afterwards
+    private static final long FIRST_GUILD = 1000;
+    private static final int GUILDS = 4;
+    private static final int ADDERS = 8;
+    private static final int ADDS_PER_ADDER = 400;
+
+    @AfterEach
+    void removePlayers() {
+        for (long guild = FIRST_GUILD; guild < FIRST_GUILD + GUILDS; guild++) {
+            MusicHandler.getPlayers().remove(guild);
+        }
+    }
+
+    @Test
+    void parallelAddsAndTrackEndsLoseNothing() throws Exception {
+        Map<Long, FakePlayer> fakePlayers = new ConcurrentHashMap<>();
+        AtomicInteger created = new AtomicInteger();
+        LongFunction<CascadePlayer> playerCreator = id -> {
+            created.incrementAndGet();
+            FakePlayer fakePlayer = new FakePlayer();
+            fakePlayers.put(id, fakePlayer);
+            return new CascadePlayer(id, fakePlayer);
+        };
+
+        // The tracks that each adder added to each guild, and the tracks each guild finished playing, in order
+        Map<Long, List<TestTrack>> added = new ConcurrentHashMap<>();
+        Map<Long, List<TestTrack>> played = new ConcurrentHashMap<>();
+        Map<Long, Set<CascadePlayer>> seenPlayers = new ConcurrentHashMap<>();
+        for (long guild = FIRST_GUILD; guild < FIRST_GUILD + GUILDS; guild++) {
+            added.put(guild, Collections.synchronizedList(new ArrayList<>()));
+            played.put(guild, Collections.synchronizedList(new ArrayList<>()));
+            seenPlayers.put(guild, ConcurrentHashMap.newKeySet());
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(ADDERS + GUILDS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicBoolean finishing = new AtomicBoolean(true);
+            List<Future<?>> adders = new ArrayList<>();
+            for (int adder = 0; adder < ADDERS; adder++) {
+                int adderId = adder;
+                adders.add(pool.submit(() -> {
+                    start.await();
+                    int index = 0;
+                    for (int i = 0; i < ADDS_PER_ADDER; i++) {
+                        long guild = FIRST_GUILD + (i + adderId) % GUILDS;
+                        CascadePlayer player = MusicHandler.getPlayer(guild, playerCreator);
+                        seenPlayers.get(guild).add(player);
+                        // Some adds are several tracks at once, like a playlist
+                        List<AudioTrack> tracks = new ArrayList<>();
+                        for (int j = 0; j < (i % 10 == 0 ? 3 : 1); j++) {
+                            TestTrack track = new TestTrack(adderId, index++);
+                            tracks.add(track);
+                            added.get(guild).add(track);
+                        }
+                        player.addTracks(tracks);
+                    }
+                    return null;
+                }));
+            }
+
+            for (long guild = FIRST_GUILD; guild < FIRST_GUILD + GUILDS; guild++) {
+                long guildId = guild;
+                pool.submit(() -> {
+                    start.await();
+                    // Ends the playing track whenever there is one, like lavaplayer does when a track finishes
+                    while (finishing.get()) {
+                        FakePlayer fakePlayer = fakePlayers.get(guildId);
+                        AudioTrack track = fakePlayer == null ? null : fakePlayer.finish();
+                        if (track == null) {
+                            Thread.yield();
+                            continue;
+                        }
+                        played.get(guildId).add((TestTrack) track);
+                        MusicHandler.getPlayers().get(guildId).onTrackEnd(track);
+                    }
+                    return null;
+                });
+            }
+
+            start.countDown();
+            for (Future<?> adder : adders) {
+                adder.get(30, TimeUnit.SECONDS);
+            }
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+            while (!allPlayed(added, played) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            finishing.set(false);
+
+            assertEquals(GUILDS, created.get());
+            for (long guild = FIRST_GUILD; guild < FIRST_GUILD + GUILDS; guild++) {
+                // Every add for a guild went to the same player
+                assertEquals(1, seenPlayers.get(guild).size());
+                assertSame(seenPlayers.get(guild).iterator().next(), MusicHandler.getPlayers().get(guild));
+                assertEquals(0, fakePlayers.get(guild).replaced.get());
+                assertEquals(0, MusicHandler.getPlayers().get(guild).getQueueSize());
+
+                List<TestTrack> guildPlayed = new ArrayList<>(played.get(guild));
+                assertEquals(added.get(guild).size(), guildPlayed.size());
+                assertEquals(Set.copyOf(added.get(guild)), Set.copyOf(guildPlayed));
+                // Each adder's tracks are played in the order they were added
+                int[] lastIndex = new int[ADDERS];
+                Arrays.fill(lastIndex, -1);
+                for (TestTrack track : guildPlayed) {
+                    assertTrue(track.index > lastIndex[track.adder]);
+                    lastIndex[track.adder] = track.index;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static boolean allPlayed(Map<Long, List<TestTrack>> added, Map<Long, List<TestTrack>> played) {
+        for (Map.Entry<Long, List<TestTrack>> entry : added.entrySet()) {
+            if (played.get(entry.getKey()).size() < entry.getValue().size()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * A player that doesn't play anything, tracks keep playing until the test finishes them.
+     */
+    private static class FakePlayer extends LavaplayerPlayerWrapper {
+
+        private final AtomicReference<AudioTrack> playing = new AtomicReference<>();
+        // How many times a track was started while another one was still playing, which would lose that track
+        private final AtomicInteger replaced = new AtomicInteger();
+
+        private FakePlayer() {
+            super(PLAYER_MANAGER.createPlayer());
+        }
+
+        @Override
+        public AudioTrack getPlayingTrack() {
+            return playing.get();
+        }
+
+        @Override
+        public void playTrack(AudioTrack track) {
+            if (playing.getAndSet(track) != null) replaced.incrementAndGet();
+        }
+
+        @Override
+        public void stopTrack() {
+            playing.set(null);
+        }
+
+        private AudioTrack finish() {
+            return playing.getAndSet(null);
+        }
+
+    }
+
+    private static class TestTrack extends BaseAudioTrack {
+
+        private final int adder;
+        private final int index;
+
+        private TestTrack(int adder, int index) {
+            super(new AudioTrackInfo("Track " + index, "Adder " + adder, 1000, adder + ":" + index, false, null));
+            this.adder = adder;
+            this.index = index;
+        }
+
+        @Override
+        public void process(LocalAudioTrackExecutor executor) {
+            // Never played for real
+        }
+
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.music;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TrackQueueTest {
+
+    @Test
+    void queueOrder() {
+        TrackQueue<Long> queue = new TrackQueue<>(Long::longValue);
+        queue.add(1L);
+        queue.add(2L);
+        queue.add(3L);
+
+        assertEquals(3, queue.size());
+        assertEquals(6, queue.getTotalDuration());
+        assertEquals(Long.valueOf(1), queue.peek());
+        assertEquals(Long.valueOf(1), queue.remove());
+        assertEquals(Long.valueOf(2), queue.poll());
+        assertEquals(Long.valueOf(3), queue.poll());
+        assertNull(queue.poll());
+        assertEquals(0, queue.getTotalDuration());
+    }
+
+    @Test
+    void indexedChanges() {
+        Random random = new Random(42);
+        TrackQueue<Long> queue = new TrackQueue<>(Long::longValue);
+        List<Long> expected = new ArrayList<>();
+
+        for (int i = 0; i < 20000; i++) {
+            int operation = random.nextInt(4);
+            if (expected.isEmpty() || operation < 2) {
+                int index = random.nextInt(expected.size() + 1);
+                long duration = random.nextInt(600000);
+                queue.add(index, duration);
+                expected.add(index, duration);
+            } else if (operation == 2) {
+                int index = random.nextInt(expected.size());
+                assertEquals(expected.remove(index), queue.remove(index));
+            } else {
+                int from = random.nextInt(expected.size());
+                int to = random.nextInt(expected.size());
+                queue.move(from, to);
+                expected.add(to, expected.remove(from));
+            }
+            assertEquals(expected.size(), queue.size());
+            assertEquals(expected.stream().mapToLong(Long::longValue).sum(), queue.getTotalDuration());
+        }
+
+        assertEquals(expected, new ArrayList<>(queue));
+        for (int i = 0; i < expected.size(); i += 37) {
+            assertEquals(expected.get(i), queue.get(i));
+        }
+    }
+
+    @Test
+    void ranges() {
+        TrackQueue<Long> queue = new TrackQueue<>(Long::longValue);
+        for (long i = 0; i < 25; i++) {
+            queue.add(i);
+        }
+
+        assertEquals(List.of(10L, 11L, 12L), queue.getRange(10, 13));
+        // The end of the range is limited to the size of the queue
+        assertEquals(List.of(20L, 21L, 22L, 23L, 24L), queue.getRange(20, 30));
+        assertEquals(List.of(), queue.getRange(25, 35));
+        assertThrows(IndexOutOfBoundsException.class, () -> queue.getRange(26, 30));
+    }
+
+    @Test
+    void shuffleKeepsTracks() {
+        TrackQueue<Long> queue = new TrackQueue<>(Long::longValue);
+        List<Long> expected = new ArrayList<>();
+        for (long i = 0; i < 1000; i++) {
+            queue.add(i);
+            expected.add(i);
+        }
+
+        queue.shuffle(new Random(42));
+
+        List<Long> shuffled = new ArrayList<>(queue);
+        Collections.sort(shuffled);
+        assertEquals(expected, shuffled);
+        assertEquals(expected.stream().mapToLong(Long::longValue).sum(), queue.getTotalDuration());
+        // The order is still consistent with indexed access after shuffling
+        Iterator<Long> iterator = queue.iterator();
+        for (int i = 0; i < queue.size(); i++) {
+            assertEquals(queue.get(i), iterator.next());
+        }
+    }
+
+    @Test
+    void iteratorRemove() {
+        TrackQueue<Long> queue = new TrackQueue<>(Long::longValue);
+        for (long i = 0; i < 100; i++) {
+            queue.add(i);
+        }
+
+        queue.removeIf(track -> track % 2 == 0);
+
+        assertEquals(50, queue.size());
+        assertEquals(Long.valueOf(1), queue.peek());
+        assertEquals(Long.valueOf(99), queue.get(49));
+    }
+
+    @Test
+    void totalDurationDoesNotOverflow() {
+        TrackQueue<Long> queue = new TrackQueue<>(Long::longValue);
+        // Streams have a duration of Long.MAX_VALUE
+        queue.add(Long.MAX_VALUE);
+        queue.add(1000L);
+
+        assertEquals(Long.MAX_VALUE, queue.getTotalDuration());
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.permissions;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PermissionNodeTest {
+
+    private static final List<String> NODES = List.of(
+            "*", "*.*", "*.", "cascade.*", "cascade.*.info", "*.info", "cascade.music.*", "cascade.*.*",
+            "cascade.queue.save.overwrite", "cascade.queue*", "cascade.*.*.overwrite", "ShutdownHandler.*", ""
+    );
+
+    private static final List<String> PERMISSIONS = List.of(
+            "", "cascade", "cascade.", "cascade.info", "cascade.user.info", "cascade.music", "cascade.music.play",
+            "cascade.queue", "cascade.queue.save", "cascade.queue.save.overwrite", "cascade.queue*.x", "info",
+            ".info", "a.info", "ShutdownHandler.stop()", "ShutdownHandler.stop()\nmore", "cascade.\n.info"
+    );
+
+    @Test
+    void wildcards() {
+        assertTrue(new PermissionNode("*").test("anything"));
+        assertTrue(new PermissionNode("cascade.*").test("cascade.music.play"));
+        assertFalse(new PermissionNode("cascade.*").test("cascade."));
+        assertTrue(new PermissionNode("cascade.*.info").test("cascade.user.info"));
+        assertFalse(new PermissionNode("cascade.*.info").test("cascade.info"));
+        assertTrue(new PermissionNode("*.info").test("cascade.info"));
+        assertFalse(new PermissionNode("cascade.music").test("cascade.music.play"));
+    }
+
+    @Test
+    void matchesRegexImplementation() {
+        for (String node : NODES) {
+            PermissionNode permissionNode = new PermissionNode(node);
+            for (String permission : PERMISSIONS) {
+                assertEquals(regexTest(node, permission), permissionNode.test(permission), node + " against " + permission);
+            }
+        }
+    }
+
+    // The original implementation which compiled a regex on every call
+    static boolean regexTest(String node, String permission) {
+        if (node.equals("*"))
+            return true;
+        String textNode = Arrays.stream(node.split("(?:^\\*(\\.))|(?:(?<=\\.)\\*(?=\\.))|(?:(?<=\\.)\\*$)"))
+                .map(Pattern::quote)
+                .collect(Collectors.joining(".+")) + (node.endsWith("*") ? ".+" : "");
+        return permission.matches(textNode);
+    }
+
+}
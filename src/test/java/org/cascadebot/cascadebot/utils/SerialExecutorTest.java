@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SerialExecutorTest {
+
+    private static final int LANES = 8;
+    private static final int SUBMITTERS = 8;
+    private static final int TASKS_PER_SUBMITTER = 5000;
+
+    @Test
+    void tasksNeverOverlapAndNoneAreLost() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        ExecutorService submitters = Executors.newFixedThreadPool(SUBMITTERS);
+        try {
+            List<SerialExecutor> lanes = new ArrayList<>();
+            int[] counts = new int[LANES];
+            AtomicInteger[] running = new AtomicInteger[LANES];
+            AtomicInteger overlaps = new AtomicInteger();
+            for (int i = 0; i < LANES; i++) {
+                lanes.add(new SerialExecutor(pool));
+                running[i] = new AtomicInteger();
+            }
+
+            CountDownLatch done = new CountDownLatch(LANES * SUBMITTERS * TASKS_PER_SUBMITTER);
+            for (int submitter = 0; submitter < SUBMITTERS; submitter++) {
+                submitters.execute(() -> {
+                    for (int task = 0; task < TASKS_PER_SUBMITTER; task++) {
+                        for (int lane = 0; lane < LANES; lane++) {
+                            int index = lane;
+                            lanes.get(lane).execute(() -> {
+                                if (running[index].incrementAndGet() != 1) overlaps.incrementAndGet();
+                                // Deliberately not atomic, the serial executor is what keeps this safe
+                                counts[index]++;
+                                running[index].decrementAndGet();
+                                done.countDown();
+                            });
+                        }
+                    }
+                });
+            }
+
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+            assertEquals(0, overlaps.get());
+            for (int count : counts) {
+                assertEquals(SUBMITTERS * TASKS_PER_SUBMITTER, count);
+            }
+        } finally {
+            submitters.shutdownNow();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void tasksRunInOrder() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            SerialExecutor executor = new SerialExecutor(pool);
+            List<Integer> order = new ArrayList<>();
+            CountDownLatch done = new CountDownLatch(1000);
+            for (int i = 0; i < 1000; i++) {
+                int task = i;
+                executor.execute(() -> {
+                    order.add(task);
+                    done.countDown();
+                });
+            }
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(Integer.valueOf(i), order.get(i));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2019 CascadeBot. All rights reserved.
+ * Licensed under the MIT license.
+ */
+
+package org.cascadebot.cascadebot.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void burstThenRefill() {
+        long now = 1000 * SECOND;
+        TokenBucket bucket = new TokenBucket(3, 3, TimeUnit.SECONDS, now);
+
+        assertTrue(bucket.tryAcquire(now));
+        assertTrue(bucket.tryAcquire(now));
+        assertTrue(bucket.tryAcquire(now));
+        assertFalse(bucket.tryAcquire(now));
+
+        // One token comes back every second
+        assertTrue(bucket.tryAcquire(now + SECOND));
+        assertFalse(bucket.tryAcquire(now + SECOND));
+
+        // Tokens don't build up past the capacity
+        long later = now + 100 * SECOND;
+        assertTrue(bucket.tryAcquire(later));
+        assertTrue(bucket.tryAcquire(later));
+        assertTrue(bucket.tryAcquire(later));
+        assertFalse(bucket.tryAcquire(later));
+    }
+
+    @Test
+    void releasedTokensCanBeTakenAgain() {
+        long now = 1000 * SECOND;
+        TokenBucket bucket = new TokenBucket(2, 2, TimeUnit.SECONDS, now);
+
+        assertTrue(bucket.tryAcquire(now));
+        assertTrue(bucket.tryAcquire(now));
+        bucket.release();
+        assertTrue(bucket.tryAcquire(now));
+        assertFalse(bucket.tryAcquire(now));
+    }
+
+    @Test
+    void negativeClock() {
+        // System.nanoTime can be negative so the bucket has to cope with that
+        long now = -50 * SECOND;
+        TokenBucket bucket = new TokenBucket(1, 1, TimeUnit.SECONDS, now);
+
+        assertTrue(bucket.tryAcquire(now));
+        assertFalse(bucket.tryAcquire(now));
+        assertTrue(bucket.tryAcquire(now + SECOND));
+    }
+
+}